@@ -0,0 +1,236 @@
+package Timecard;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import companydata.DataLayer;
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * CompanyServicesBenchmark measures the CompanyServices endpoints end to end, from the resource method
+ * through the pool, caches, indexes and serialization, against the in-memory companydata stand-in seeded
+ * with departments employees and timecard history of each employee (one per weekday before the
+ * current week). Run with "-prof gc" to see the allocation rate of each endpoint.
+ *
+ * The write benchmarks leave the data as they found it: an inserted Timecard or Employee is deleted
+ * again in the same invocation, and an updated Timecard moves back and forth between two days.
+ *
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompanyServicesBenchmark {
+
+	// The company CompanyServices writes employees to
+	static final String COMPANY = "dxk3754";
+
+	@Param("10")
+	int departments;
+
+	@Param("200")
+	int employees;
+
+	@Param("60")
+	int historyDays;
+
+	private CompanyServices services;
+	private int[] empIds;
+	private int[] deptIds;
+	private int[] updateIds;
+	private boolean[] movedToFirst;
+	private int next;
+	private long serial;
+
+	// Three weekdays of the last week: inserts go to the first, updates move between the other two
+	private LocalDate insertDay;
+	private LocalDate updateDay;
+	private LocalDate otherUpdateDay;
+
+	@Setup
+	public void setUp(){
+		DataLayer.reset();
+		DataLayer dl = new DataLayer("benchmark");
+		insertDay = weekdayBefore(LocalDate.now());
+		updateDay = weekdayBefore(insertDay);
+		otherUpdateDay = weekdayBefore(updateDay);
+
+		deptIds = new int[departments];
+		for(int d = 0; d < departments; d++){
+			deptIds[d] = dl.insertDepartment(new Department(COMPANY, "Department " + d, "bench-d" + d, "Rochester")).getId();
+		}
+		empIds = new int[employees];
+		updateIds = new int[employees];
+		movedToFirst = new boolean[employees];
+		for(int e = 0; e < employees; e++){
+			// The first employee of each department manages the rest of it
+			int mngId = e < departments ? 0 : empIds[e % departments];
+			empIds[e] = dl.insertEmployee(new Employee("Employee " + e, "bench-e" + e, Date.valueOf(otherUpdateDay.minusYears(1)),
+					"Engineer", 50000.0, deptIds[e % departments], mngId)).getId();
+			LocalDate day = otherUpdateDay.minusDays(7);
+			for(int h = 0; h < historyDays; h++){
+				day = weekdayBefore(day);
+				dl.insertTimecard(new Timecard(timestamp(day, 9), timestamp(day, 17), empIds[e]));
+			}
+			updateIds[e] = dl.insertTimecard(new Timecard(timestamp(otherUpdateDay, 9), timestamp(otherUpdateDay, 17),
+					empIds[e])).getId();
+		}
+		services = new CompanyServices();
+	}
+
+	@Benchmark
+	public String getDepartments() throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		services.getDepartments(response, CapturedResponse.UNCONDITIONAL, COMPANY, null, null);
+		return ok(response.body());
+	}
+
+	@Benchmark
+	public String getEmployees() throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		services.getEmployees(response, CapturedResponse.UNCONDITIONAL, COMPANY, null, null);
+		return ok(response.body());
+	}
+
+	@Benchmark
+	public String getTimecards() throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		services.getTimecards(response, CapturedResponse.UNCONDITIONAL, empIds[nextEmployee()], null, null, null, null);
+		return ok(response.body());
+	}
+
+	// insertTimecard followed by deleteTimecard of the new record
+	@Benchmark
+	public String insertTimecard() throws Exception{
+		int empId = empIds[nextEmployee()];
+		CapturedResponse response = new CapturedResponse();
+		services.insertTimecard(response, new JSONObject()
+				.put("emp_id", empId)
+				.put("start_time", timestamp(insertDay, 9).toString().substring(0, 19))
+				.put("end_time", timestamp(insertDay, 17).toString().substring(0, 19))
+				.toString());
+		String body = ok(response.body());
+		CapturedResponse deleted = new CapturedResponse();
+		services.deleteTimecard(deleted, new JSONObject(body).getInt("timecard_id"));
+		ok(deleted.body());
+		return body;
+	}
+
+	@Benchmark
+	public String updateTimecard() throws Exception{
+		int e = nextEmployee();
+		// The same start day counts as taken, so the Timecard alternates between two days
+		LocalDate day = movedToFirst[e] ? otherUpdateDay : updateDay;
+		movedToFirst[e] = !movedToFirst[e];
+		CapturedResponse response = new CapturedResponse();
+		services.updateTimecard(response, updateIds[e], empIds[e], timestamp(day, 8).toString().substring(0, 19),
+				timestamp(day, 16).toString().substring(0, 19));
+		return ok(response.body());
+	}
+
+	// insertEmployee followed by deleteEmployee of the new record
+	@Benchmark
+	public String insertEmployee() throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		services.insertEmployee(response, new JSONObject()
+				.put("emp_name", "New Hire")
+				.put("emp_no", "bench-new" + serial++)
+				.put("hire_date", insertDay.toString())
+				.put("job", "Engineer")
+				.put("salary", 55000.0)
+				.put("dept_id", deptIds[0])
+				.put("mng_id", empIds[0])
+				.toString());
+		String body = ok(response.body());
+		CapturedResponse deleted = new CapturedResponse();
+		services.deleteEmployee(deleted, new JSONObject(body).getInt("emp_id"));
+		ok(deleted.body());
+		return body;
+	}
+
+	@Benchmark
+	public String deleteDepartment(DoomedDepartment doomed) throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		services.deleteDepartment(response, COMPANY, doomed.deptId);
+		return ok(response.body());
+	}
+
+	/**
+	 * A fresh Department with its own Employees and their Timecard history for every deleteDepartment call.
+	 * Level.Invocation adds timer overhead to each call, which is negligible next to the cascade it measures.
+	 *
+	 */
+	@State(Scope.Thread)
+	public static class DoomedDepartment {
+
+		@Param("10")
+		int cascadeEmployees;
+
+		int deptId;
+		private long serial;
+
+		@Setup(Level.Invocation)
+		public void setUp(CompanyServicesBenchmark benchmark){
+			DataLayer dl = new DataLayer("benchmark");
+			long n = serial++;
+			deptId = dl.insertDepartment(new Department(COMPANY, "Doomed " + n, "bench-doomed" + n, "Rochester")).getId();
+			for(int e = 0; e < cascadeEmployees; e++){
+				int empId = dl.insertEmployee(new Employee("Doomed " + e, "bench-doomed" + n + "-" + e,
+						Date.valueOf(benchmark.otherUpdateDay.minusYears(1)), "Engineer", 50000.0, deptId, 0)).getId();
+				LocalDate day = benchmark.otherUpdateDay.minusDays(7);
+				for(int h = 0; h < benchmark.historyDays; h++){
+					day = weekdayBefore(day);
+					dl.insertTimecard(new Timecard(timestamp(day, 9), timestamp(day, 17), empId));
+				}
+			}
+		}
+	}
+
+	private int nextEmployee(){
+		int e = next;
+		next = (e + 1) % empIds.length;
+		return e;
+	}
+
+	// Fail the run instead of measuring an error path
+	private static String ok(String body){
+		if(body.startsWith("{\"error\"")){
+			throw new IllegalStateException(body);
+		}
+		return body;
+	}
+
+	private static LocalDate weekdayBefore(LocalDate day){
+		LocalDate before = day.minusDays(1);
+		while(before.getDayOfWeek() == DayOfWeek.SATURDAY || before.getDayOfWeek() == DayOfWeek.SUNDAY){
+			before = before.minusDays(1);
+		}
+		return before;
+	}
+
+	private static Timestamp timestamp(LocalDate day, int hour){
+		return Timestamp.valueOf(day.atTime(hour, 0));
+	}
+}
@@ -0,0 +1,122 @@
+package Timecard;
+
+import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TimecardRulesBenchmark compares the timecard validation CompanyServices used to run (Calendar,
+ * SimpleDateFormat("E") and lowercased day names) with TimecardRules on local epoch seconds.
+ * Run with "-prof gc" to see the allocation rate of each variant.
+ *
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimecardRulesBenchmark {
+
+	private final TimecardRules rules = TimecardRules.SERVER;
+
+	private Date startDate;
+	private Date endDate;
+	private long startLocal;
+	private long endLocal;
+
+	@Setup
+	public void setUp(){
+		// The most recent weekday before today, 09:00 to 17:00, passes every rule
+		LocalDate day = LocalDate.now().minusDays(1);
+		while(day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY){
+			day = day.minusDays(1);
+		}
+		LocalDateTime start = day.atTime(9, 0);
+		LocalDateTime end = day.atTime(17, 0);
+		ZoneId zone = ZoneId.systemDefault();
+		startDate = Date.from(start.atZone(zone).toInstant());
+		endDate = Date.from(end.atZone(zone).toInstant());
+		startLocal = rules.toLocalSeconds(startDate.getTime());
+		endLocal = rules.toLocalSeconds(endDate.getTime());
+	}
+
+	@Benchmark
+	public String legacyCalendar(){
+		return legacyCheck(startDate, endDate);
+	}
+
+	@Benchmark
+	public String rulesFromDate(){
+		long start = rules.toLocalSeconds(startDate.getTime());
+		long end = rules.toLocalSeconds(endDate.getTime());
+		return rules.checkTimecard(start, end, rules.nowLocal());
+	}
+
+	@Benchmark
+	public String rulesOnLocalSeconds(){
+		return rules.checkTimecard(startLocal, endLocal, rules.nowLocal());
+	}
+
+	// The validation insertTimecard/updateTimecard performed before TimecardRules, minus the store lookups
+	private static String legacyCheck(Date start_time, Date end_time){
+		Date current_time = new Date();
+		SimpleDateFormat simpleDateformat = new SimpleDateFormat("E");
+		String day_of_startTime = simpleDateformat.format(start_time).toLowerCase();
+		String day_of_endTime = simpleDateformat.format(end_time).toLowerCase();
+
+		Calendar cal_start = Calendar.getInstance();
+		cal_start.setTime(start_time);
+		int start_hour = cal_start.get(Calendar.HOUR_OF_DAY);
+		int start_mins = cal_start.get(Calendar.MINUTE);
+		int start_sec = cal_start.get(Calendar.SECOND);
+
+		Calendar cal_end = Calendar.getInstance();
+		cal_end.setTime(end_time);
+		int end_hour = cal_end.get(Calendar.HOUR_OF_DAY);
+		int end_mins = cal_end.get(Calendar.MINUTE);
+		int end_sec = cal_end.get(Calendar.SECOND);
+
+		long days_diff = TimeUnit.DAYS.convert((current_time.getTime()-start_time.getTime()), TimeUnit.MILLISECONDS);
+		if(days_diff>7){
+			return TimecardRules.START_TOO_OLD;
+		}
+		if((end_time.getTime()-start_time.getTime())<3600000
+				|| cal_end.get(Calendar.DATE) != cal_start.get(Calendar.DATE)
+				|| cal_end.get(Calendar.MONTH) != cal_start.get(Calendar.MONTH)
+				|| cal_end.get(Calendar.YEAR) != cal_start.get(Calendar.YEAR)){
+			return TimecardRules.SHORT_SPAN;
+		}
+		if(start_time.compareTo(current_time)>0){
+			return TimecardRules.FUTURE_START;
+		}
+		if(day_of_startTime.equals("sat") || day_of_startTime.equals("sun")
+				|| day_of_endTime.equals("sat") || day_of_endTime.equals("sun")){
+			return TimecardRules.WEEKEND;
+		}
+		if((start_hour < 6) ||
+		   (start_hour >= 18 && !(start_hour == 18 && start_mins == 0 && start_sec == 0)) ||
+		   (end_hour < 6) ||
+		   (end_hour >= 18 && !(end_hour == 18 && end_mins == 0 && end_sec == 0))){
+			return TimecardRules.OUTSIDE_HOURS;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,179 @@
+package companydata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataLayer class is an in-memory stand-in for the companydata DataLayer, so the CompanyServices
+ * benchmarks run without a database. Every connection sees the same tables. Records come back in id
+ * order, as copies, so callers can modify them the way they modify rows read from the database.
+ * Timecards are indexed by employee, like the emp_id foreign key index of the real schema.
+ *
+ */
+
+public class DataLayer {
+
+	private static final ConcurrentSkipListMap<Integer, Department> DEPARTMENTS = new ConcurrentSkipListMap<Integer, Department>();
+	private static final ConcurrentSkipListMap<Integer, Employee> EMPLOYEES = new ConcurrentSkipListMap<Integer, Employee>();
+	private static final ConcurrentSkipListMap<Integer, Timecard> TIMECARDS = new ConcurrentSkipListMap<Integer, Timecard>();
+	private static final ConcurrentHashMap<Integer, Set<Integer>> TIMECARDS_BY_EMPLOYEE = new ConcurrentHashMap<Integer, Set<Integer>>();
+	private static final AtomicInteger IDS = new AtomicInteger();
+
+	public DataLayer(String environment){
+	}
+
+	/**
+	 * Empty every table
+	 *
+	 */
+	public static void reset(){
+		DEPARTMENTS.clear();
+		EMPLOYEES.clear();
+		TIMECARDS.clear();
+		TIMECARDS_BY_EMPLOYEE.clear();
+	}
+
+	public void close(){
+	}
+
+	public int deleteCompany(String company){
+		int rows = 0;
+		for(Department dept: DEPARTMENTS.values()){
+			if(dept.getCompany().equals(company)){
+				for(Employee emp: EMPLOYEES.values()){
+					if(emp.getDeptId() == dept.getId()){
+						rows += deleteTimecards(emp.getId()) + deleteEmployee(emp.getId());
+					}
+				}
+				rows += DEPARTMENTS.remove(dept.getId()) == null ? 0 : 1;
+			}
+		}
+		return rows;
+	}
+
+	public Department getDepartment(String company, int deptId){
+		Department dept = DEPARTMENTS.get(deptId);
+		return dept == null || !dept.getCompany().equals(company) ? null : dept.copy();
+	}
+
+	public List<Department> getAllDepartment(String company){
+		List<Department> list = new ArrayList<Department>();
+		for(Department dept: DEPARTMENTS.values()){
+			if(dept.getCompany().equals(company)){
+				list.add(dept.copy());
+			}
+		}
+		return list;
+	}
+
+	public Department insertDepartment(Department department){
+		department.setId(IDS.incrementAndGet());
+		DEPARTMENTS.put(department.getId(), department.copy());
+		return department;
+	}
+
+	public Department updateDepartment(Department department){
+		return DEPARTMENTS.replace(department.getId(), department.copy()) == null ? null : department;
+	}
+
+	public int deleteDepartment(String company, int deptId){
+		return getDepartment(company, deptId) != null && DEPARTMENTS.remove(deptId) != null ? 1 : 0;
+	}
+
+	public Employee getEmployee(int empId){
+		Employee emp = EMPLOYEES.get(empId);
+		return emp == null ? null : emp.copy();
+	}
+
+	public List<Employee> getAllEmployee(String company){
+		List<Employee> list = new ArrayList<Employee>();
+		for(Employee emp: EMPLOYEES.values()){
+			Department dept = DEPARTMENTS.get(emp.getDeptId());
+			if(dept != null && dept.getCompany().equals(company)){
+				list.add(emp.copy());
+			}
+		}
+		return list;
+	}
+
+	public Employee insertEmployee(Employee employee){
+		employee.setId(IDS.incrementAndGet());
+		EMPLOYEES.put(employee.getId(), employee.copy());
+		return employee;
+	}
+
+	public Employee updateEmployee(Employee employee){
+		return EMPLOYEES.replace(employee.getId(), employee.copy()) == null ? null : employee;
+	}
+
+	public int deleteEmployee(int empId){
+		return EMPLOYEES.remove(empId) == null ? 0 : 1;
+	}
+
+	public Timecard getTimecard(int timecardId){
+		Timecard time = TIMECARDS.get(timecardId);
+		return time == null ? null : time.copy();
+	}
+
+	public List<Timecard> getAllTimecard(int empId){
+		List<Timecard> list = new ArrayList<Timecard>();
+		Set<Integer> ids = TIMECARDS_BY_EMPLOYEE.get(empId);
+		if(ids != null){
+			for(Integer id: ids){
+				Timecard time = TIMECARDS.get(id);
+				if(time != null){
+					list.add(time.copy());
+				}
+			}
+		}
+		return list;
+	}
+
+	public Timecard insertTimecard(Timecard timecard){
+		timecard.setId(IDS.incrementAndGet());
+		TIMECARDS.put(timecard.getId(), timecard.copy());
+		index(timecard.getEmpId()).add(timecard.getId());
+		return timecard;
+	}
+
+	public Timecard updateTimecard(Timecard timecard){
+		Timecard previous = TIMECARDS.replace(timecard.getId(), timecard.copy());
+		if(previous == null){
+			return null;
+		}
+		if(previous.getEmpId() != timecard.getEmpId()){
+			index(previous.getEmpId()).remove(timecard.getId());
+			index(timecard.getEmpId()).add(timecard.getId());
+		}
+		return timecard;
+	}
+
+	public int deleteTimecard(int timecardId){
+		Timecard time = TIMECARDS.remove(timecardId);
+		if(time == null){
+			return 0;
+		}
+		index(time.getEmpId()).remove(timecardId);
+		return 1;
+	}
+
+	private int deleteTimecards(int empId){
+		Set<Integer> ids = TIMECARDS_BY_EMPLOYEE.remove(empId);
+		int rows = 0;
+		if(ids != null){
+			for(Integer id: ids){
+				rows += TIMECARDS.remove(id) == null ? 0 : 1;
+			}
+		}
+		return rows;
+	}
+
+	private static Set<Integer> index(int empId){
+		return TIMECARDS_BY_EMPLOYEE.computeIfAbsent(empId, id -> new ConcurrentSkipListSet<Integer>());
+	}
+}
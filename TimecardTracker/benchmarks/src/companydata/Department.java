@@ -0,0 +1,72 @@
+package companydata;
+
+/**
+ * Department class is the benchmark stand-in for the companydata Department record, with the same
+ * constructors and accessors.
+ *
+ */
+
+public class Department {
+
+	private int id;
+	private String company;
+	private String deptName;
+	private String deptNo;
+	private String location;
+
+	public Department(String company, String deptName, String deptNo, String location){
+		this.company = company;
+		this.deptName = deptName;
+		this.deptNo = deptNo;
+		this.location = location;
+	}
+
+	public Department(int id, String company, String deptName, String deptNo, String location){
+		this(company, deptName, deptNo, location);
+		this.id = id;
+	}
+
+	public int getId(){
+		return id;
+	}
+
+	public void setId(int id){
+		this.id = id;
+	}
+
+	public String getCompany(){
+		return company;
+	}
+
+	public void setCompany(String company){
+		this.company = company;
+	}
+
+	public String getDeptName(){
+		return deptName;
+	}
+
+	public void setDeptName(String deptName){
+		this.deptName = deptName;
+	}
+
+	public String getDeptNo(){
+		return deptNo;
+	}
+
+	public void setDeptNo(String deptNo){
+		this.deptNo = deptNo;
+	}
+
+	public String getLocation(){
+		return location;
+	}
+
+	public void setLocation(String location){
+		this.location = location;
+	}
+
+	Department copy(){
+		return new Department(id, company, deptName, deptNo, location);
+	}
+}
@@ -0,0 +1,105 @@
+package companydata;
+
+import java.sql.Date;
+
+/**
+ * Employee class is the benchmark stand-in for the companydata Employee record, with the same
+ * constructors and accessors.
+ *
+ */
+
+public class Employee {
+
+	private int id;
+	private String empName;
+	private String empNo;
+	private Date hireDate;
+	private String job;
+	private Double salary;
+	private int deptId;
+	private int mngId;
+
+	public Employee(String empName, String empNo, Date hireDate, String job, Double salary, int deptId, int mngId){
+		this.empName = empName;
+		this.empNo = empNo;
+		this.hireDate = hireDate;
+		this.job = job;
+		this.salary = salary;
+		this.deptId = deptId;
+		this.mngId = mngId;
+	}
+
+	public Employee(int id, String empName, String empNo, Date hireDate, String job, Double salary, int deptId,
+			int mngId){
+		this(empName, empNo, hireDate, job, salary, deptId, mngId);
+		this.id = id;
+	}
+
+	public int getId(){
+		return id;
+	}
+
+	public void setId(int id){
+		this.id = id;
+	}
+
+	public String getEmpName(){
+		return empName;
+	}
+
+	public void setEmpName(String empName){
+		this.empName = empName;
+	}
+
+	public String getEmpNo(){
+		return empNo;
+	}
+
+	public void setEmpNo(String empNo){
+		this.empNo = empNo;
+	}
+
+	public Date getHireDate(){
+		return hireDate;
+	}
+
+	public void setHireDate(Date hireDate){
+		this.hireDate = hireDate;
+	}
+
+	public String getJob(){
+		return job;
+	}
+
+	public void setJob(String job){
+		this.job = job;
+	}
+
+	public Double getSalary(){
+		return salary;
+	}
+
+	public void setSalary(Double salary){
+		this.salary = salary;
+	}
+
+	public int getDeptId(){
+		return deptId;
+	}
+
+	public void setDeptId(int deptId){
+		this.deptId = deptId;
+	}
+
+	public int getMngId(){
+		return mngId;
+	}
+
+	public void setMngId(int mngId){
+		this.mngId = mngId;
+	}
+
+	Employee copy(){
+		return new Employee(id, empName, empNo, hireDate, job, salary, deptId, mngId);
+	}
+}
@@ -0,0 +1,64 @@
+package companydata;
+
+import java.sql.Timestamp;
+
+/**
+ * Timecard class is the benchmark stand-in for the companydata Timecard record, with the same
+ * constructors and accessors.
+ *
+ */
+
+public class Timecard {
+
+	private int id;
+	private Timestamp startTime;
+	private Timestamp endTime;
+	private int empId;
+
+	public Timecard(Timestamp startTime, Timestamp endTime, int empId){
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.empId = empId;
+	}
+
+	public Timecard(int id, Timestamp startTime, Timestamp endTime, int empId){
+		this(startTime, endTime, empId);
+		this.id = id;
+	}
+
+	public int getId(){
+		return id;
+	}
+
+	public void setId(int id){
+		this.id = id;
+	}
+
+	public Timestamp getStartTime(){
+		return startTime;
+	}
+
+	public void setStartTime(Timestamp startTime){
+		this.startTime = startTime;
+	}
+
+	public Timestamp getEndTime(){
+		return endTime;
+	}
+
+	public void setEndTime(Timestamp endTime){
+		this.endTime = endTime;
+	}
+
+	public int getEmpId(){
+		return empId;
+	}
+
+	public void setEmpId(int empId){
+		this.empId = empId;
+	}
+
+	Timecard copy(){
+		return new Timecard(id, startTime, endTime, empId);
+	}
+}
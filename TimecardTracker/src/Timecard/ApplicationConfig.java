@@ -6,16 +6,20 @@ import java.util.Set;
 @javax.ws.rs.ApplicationPath("resources")
 public class ApplicationConfig extends Application{
   
+	// One shared CompanyServices instance serves every request; it keeps no per-request fields
+	private final Set<Object> singletons = getRestResourceSingletons();
+	
 	@Override
-	public Set<Class<?>> getClasses(){
-		return getRestResourceClasses();
+	public Set<Object> getSingletons(){
+		return singletons;
 	}
 	
-	private Set<Class<?>>getRestResourceClasses(){
-		Set<Class<?>> resources = 
-				new java.util.HashSet<Class<?>>();
+	private Set<Object>getRestResourceSingletons(){
+		Set<Object> resources = 
+				new java.util.HashSet<Object>();
 		
-		resources.add(Timecard.CompanyServices.class);
+		resources.add(new Timecard.CompanyServices());
+		resources.add(new Timecard.MetricsFilter());
 		return resources;
 	}
 }
@@ -0,0 +1,305 @@
+package Timecard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * ArchiveSegment class is one read-only file of sealed Timecards, mapped into memory and read in place:
+ * lookups read the mapped file directly and copy nothing to the heap but the values they return.
+ *
+ * The file holds a header, the entries sorted by emp_id and start, and the timecard_ids sorted with the
+ * number of their entry for lookups by id. A sparse index of every SPARSE_EVERY-th entry's emp_id and
+ * start, the only part kept on the heap, leads a range query to its first entry.
+ *
+ * Layout, big-endian: header of HEADER bytes (magic, version, entry count, CRC32 of the rest of the
+ * file, lowest and highest timecard_id, earliest and latest start); entries of ENTRY bytes (emp_id,
+ * start in epoch seconds, duration in seconds, timecard_id); pairs of ID bytes (timecard_id, entry).
+ *
+ */
+
+final class ArchiveSegment {
+
+	/**
+	 * Receives archived Timecards
+	 *
+	 */
+	interface Visitor {
+		void visit(int timecardId, int empId, long startSecond, long endSecond);
+	}
+
+	static final int SPARSE_EVERY = 64;
+
+	private static final int MAGIC = 0x54434131;
+	private static final int VERSION = 1;
+	private static final int HEADER = 40;
+	private static final int ENTRY = 20;
+	private static final int ID = 8;
+
+	final Path file;
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int minId;
+	private final int maxId;
+	private final long minStart;
+	private final long maxStart;
+	private final int idsAt;
+
+	// emp_id and start of entries 0, SPARSE_EVERY, 2 * SPARSE_EVERY, ...
+	private final int[] sparseEmpIds;
+	private final long[] sparseStarts;
+
+	private ArchiveSegment(Path file) throws IOException{
+		this.file = file;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+			throw new IOException("Not a timecard archive segment: " + file);
+		}
+		this.count = buffer.getInt(8);
+		this.minId = buffer.getInt(16);
+		this.maxId = buffer.getInt(20);
+		this.minStart = buffer.getLong(24);
+		this.maxStart = buffer.getLong(32);
+		this.idsAt = HEADER + count * ENTRY;
+		if(count < 0 || buffer.capacity() != (long) idsAt + (long) count * ID){
+			throw new IOException("Truncated timecard archive segment: " + file);
+		}
+		ByteBuffer body = buffer.duplicate();
+		body.position(HEADER);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		if((int) crc.getValue() != buffer.getInt(12)){
+			throw new IOException("Corrupt timecard archive segment: " + file);
+		}
+		int sparse = (count + SPARSE_EVERY - 1) / SPARSE_EVERY;
+		this.sparseEmpIds = new int[sparse];
+		this.sparseStarts = new long[sparse];
+		for(int i = 0; i < sparse; i++){
+			int at = entryAt(i * SPARSE_EVERY);
+			sparseEmpIds[i] = buffer.getInt(at);
+			sparseStarts[i] = buffer.getLong(at + 4);
+		}
+	}
+
+	/**
+	 * Map a segment file
+	 * @param file
+	 * @return the segment
+	 * @throws IOException when the file is not a complete, intact segment
+	 *
+	 */
+	static ArchiveSegment open(Path file) throws IOException{
+		return new ArchiveSegment(file);
+	}
+
+	int count(){
+		return count;
+	}
+
+	long bytes(){
+		return buffer.capacity();
+	}
+
+	/**
+	 * Read one Timecard
+	 * @param timecardId
+	 * @param visitor: called once when the Timecard is here
+	 * @return whether it is here
+	 *
+	 */
+	boolean find(int timecardId, Visitor visitor){
+		if(count == 0 || timecardId < minId || timecardId > maxId){
+			return false;
+		}
+		int low = 0;
+		int high = count - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			int id = buffer.getInt(idsAt + mid * ID);
+			if(id < timecardId){
+				low = mid + 1;
+			}else if(id > timecardId){
+				high = mid - 1;
+			}else{
+				visit(buffer.getInt(idsAt + mid * ID + 4), visitor);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Read the Timecards of an employee starting within a range, in start order
+	 * @param empId
+	 * @param fromSecond: first start included, epoch seconds
+	 * @param toSecond: last start included, epoch seconds
+	 * @param visitor
+	 *
+	 */
+	void forEach(int empId, long fromSecond, long toSecond, Visitor visitor){
+		if(count == 0 || toSecond < minStart || fromSecond > maxStart){
+			return;
+		}
+		// Last sparse entry before (empId, fromSecond); the range cannot start earlier
+		int low = 0;
+		int high = sparseEmpIds.length - 1;
+		int block = 0;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			if(sparseEmpIds[mid] < empId || sparseEmpIds[mid] == empId && sparseStarts[mid] < fromSecond){
+				block = mid;
+				low = mid + 1;
+			}else{
+				high = mid - 1;
+			}
+		}
+		for(int i = block * SPARSE_EVERY; i < count; i++){
+			int at = entryAt(i);
+			int entryEmpId = buffer.getInt(at);
+			if(entryEmpId < empId){
+				continue;
+			}
+			long start = buffer.getLong(at + 4);
+			if(entryEmpId > empId || start > toSecond){
+				return;
+			}
+			if(start >= fromSecond){
+				visitor.visit(buffer.getInt(at + 16), empId, start, start + buffer.getInt(at + 12));
+			}
+		}
+	}
+
+	private void visit(int entry, Visitor visitor){
+		int at = entryAt(entry);
+		long start = buffer.getLong(at + 4);
+		visitor.visit(buffer.getInt(at + 16), buffer.getInt(at), start, start + buffer.getInt(at + 12));
+	}
+
+	private static int entryAt(int entry){
+		return HEADER + entry * ENTRY;
+	}
+
+	/**
+	 * Writes a new segment to a temporary file and publishes it under its name once complete, so a
+	 * segment file is never seen half written
+	 *
+	 */
+	static final class Writer implements Closeable {
+
+		private final Path file;
+		private final Path temporary;
+		private final FileChannel channel;
+		private final ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+		private final CRC32 crc = new CRC32();
+
+		// timecard_id << 32 | entry of every entry, sorted into the id section at the end
+		private long[] ids = new long[1024];
+		private int count;
+		private int lastEmpId = Integer.MIN_VALUE;
+		private long lastStart = Long.MIN_VALUE;
+		private long minStart = Long.MAX_VALUE;
+		private long maxStart = Long.MIN_VALUE;
+		private boolean published;
+
+		Writer(Path file) throws IOException{
+			this.file = file;
+			this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			channel.position(HEADER);
+		}
+
+		int count(){
+			return count;
+		}
+
+		/**
+		 * Add a Timecard; Timecards must come in emp_id order and, per employee, in start order
+		 * @param timecardId: positive
+		 * @param empId
+		 * @param startSecond: epoch seconds
+		 * @param endSecond: epoch seconds
+		 * @throws IOException
+		 *
+		 */
+		void add(int timecardId, int empId, long startSecond, long endSecond) throws IOException{
+			if(empId < lastEmpId || empId == lastEmpId && startSecond < lastStart){
+				throw new IllegalArgumentException("Archived timecards must be added in emp_id and start order.");
+			}
+			long duration = endSecond - startSecond;
+			if(duration < Integer.MIN_VALUE || duration > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("Timecard " + timecardId + " is too long to archive.");
+			}
+			if(chunk.remaining() < ENTRY){
+				flush();
+			}
+			chunk.putInt(empId).putLong(startSecond).putInt((int) duration).putInt(timecardId);
+			if(count == ids.length){
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			ids[count] = (long) timecardId << 32 | count;
+			count++;
+			lastEmpId = empId;
+			lastStart = startSecond;
+			minStart = Math.min(minStart, startSecond);
+			maxStart = Math.max(maxStart, startSecond);
+		}
+
+		/**
+		 * Complete the file, force it to disk and publish it
+		 * @return the mapped segment
+		 * @throws IOException
+		 *
+		 */
+		ArchiveSegment publish() throws IOException{
+			Arrays.sort(ids, 0, count);
+			for(int i = 0; i < count; i++){
+				if(chunk.remaining() < ID){
+					flush();
+				}
+				chunk.putInt((int) (ids[i] >>> 32)).putInt((int) ids[i]);
+			}
+			flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt((int) crc.getValue());
+			header.putInt(count == 0 ? 0 : (int) (ids[0] >>> 32)).putInt(count == 0 ? 0 : (int) (ids[count - 1] >>> 32));
+			header.putLong(minStart).putLong(maxStart);
+			header.flip();
+			while(header.hasRemaining()){
+				channel.write(header, header.position());
+			}
+			channel.force(true);
+			channel.close();
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			published = true;
+			return open(file);
+		}
+
+		@Override
+		public void close() throws IOException{
+			if(!published){
+				channel.close();
+				Files.deleteIfExists(temporary);
+			}
+		}
+
+		private void flush() throws IOException{
+			chunk.flip();
+			crc.update(chunk.duplicate());
+			while(chunk.hasRemaining()){
+				channel.write(chunk);
+			}
+			chunk.clear();
+		}
+	}
+}
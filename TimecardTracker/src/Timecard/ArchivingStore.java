@@ -0,0 +1,195 @@
+package Timecard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * ArchivingStore class puts the TimecardArchive back in front of the primary store, so callers see the
+ * Timecards of closed days as if they had never left it. Reads ask the primary store first and add the
+ * archived Timecards it does not hold; archived Timecards cannot be updated, updateTimecard returns null for
+ * them, and deleting them leaves a tombstone in the archive. Departments and Employees are passed through.
+ *
+ */
+
+final class ArchivingStore implements CompanyStore {
+
+	private final CompanyStore store;
+	private final TimecardArchive archive;
+
+	ArchivingStore(CompanyStore store, TimecardArchive archive){
+		this.store = store;
+		this.archive = archive;
+	}
+
+	@Override
+	public int deleteCompany(String company){
+		return archive.guarded(() -> {
+			List<Employee> employees = store.getAllEmployee(company);
+			int[] empIds = new int[employees.size()];
+			for(int i = 0; i < empIds.length; i++){
+				empIds[i] = employees.get(i).getId();
+			}
+			int rows = store.deleteCompany(company);
+			return rows + archive.deleteEmployees(empIds);
+		});
+	}
+
+	@Override
+	public Department getDepartment(String company, int deptId){
+		return store.getDepartment(company, deptId);
+	}
+
+	@Override
+	public List<Department> getAllDepartment(String company){
+		return store.getAllDepartment(company);
+	}
+
+	@Override
+	public Department insertDepartment(Department department){
+		return store.insertDepartment(department);
+	}
+
+	@Override
+	public Department updateDepartment(Department department){
+		return store.updateDepartment(department);
+	}
+
+	@Override
+	public int deleteDepartment(String company, int deptId){
+		return store.deleteDepartment(company, deptId);
+	}
+
+	@Override
+	public Employee getEmployee(int empId){
+		return store.getEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> getAllEmployee(String company){
+		return store.getAllEmployee(company);
+	}
+
+	@Override
+	public Employee insertEmployee(Employee employee){
+		return store.insertEmployee(employee);
+	}
+
+	@Override
+	public Employee updateEmployee(Employee employee){
+		return store.updateEmployee(employee);
+	}
+
+	@Override
+	public int deleteEmployee(int empId){
+		return store.deleteEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> insertEmployees(List<Employee> employees){
+		return store.insertEmployees(employees);
+	}
+
+	@Override
+	public Timecard getTimecard(int timecardId){
+		Timecard time = store.getTimecard(timecardId);
+		return time != null ? time : archive.get(timecardId);
+	}
+
+	@Override
+	public List<Timecard> getAllTimecard(int empId){
+		List<Timecard> live = store.getAllTimecard(empId);
+		IntLongHashMap seen = new IntLongHashMap(live.size());
+		for(Timecard time: live){
+			seen.put(time.getId(), 0L);
+		}
+		List<Timecard> all = new ArrayList<Timecard>(live);
+		// Sealing publishes a segment before it deletes from the primary store, so a Timecard can be in both
+		archive.forEach(empId, (id, emp, start, end) -> {
+			if(!seen.containsKey(id)){
+				all.add(TimecardArchive.timecard(id, emp, start, end));
+			}
+		});
+		return all;
+	}
+
+	@Override
+	public void forEachTimecard(int empId, TimecardVisitor visitor){
+		IntLongHashMap seen = new IntLongHashMap();
+		store.forEachTimecard(empId, (id, startMillis, endMillis) -> {
+			seen.put(id, 0L);
+			visitor.visit(id, startMillis, endMillis);
+		});
+		archive.forEach(empId, (id, emp, start, end) -> {
+			if(!seen.containsKey(id)){
+				visitor.visit(id, start * 1000L, end * 1000L);
+			}
+		});
+	}
+
+	@Override
+	public List<Timecard> getTimecards(int[] timecardIds){
+		List<Timecard> live = store.getTimecards(timecardIds);
+		if(live.size() == timecardIds.length){
+			return live;
+		}
+		IntObjectHashMap<Timecard> found = new IntObjectHashMap<Timecard>(timecardIds.length);
+		for(Timecard time: live){
+			found.put(time.getId(), time);
+		}
+		List<Timecard> all = new ArrayList<Timecard>(timecardIds.length);
+		for(int timecardId: timecardIds){
+			Timecard time = found.get(timecardId);
+			if(time == null){
+				time = archive.get(timecardId);
+			}
+			if(time != null){
+				all.add(time);
+			}
+		}
+		return all;
+	}
+
+	@Override
+	public Timecard insertTimecard(Timecard timecard){
+		return store.insertTimecard(timecard);
+	}
+
+	@Override
+	public Timecard updateTimecard(Timecard timecard){
+		return archive.guarded(() -> {
+			return archive.contains(timecard.getId()) ? null : store.updateTimecard(timecard);
+		});
+	}
+
+	@Override
+	public int deleteTimecard(int timecardId){
+		return archive.guarded(() -> {
+			int rows = store.deleteTimecard(timecardId);
+			return rows > 0 ? rows : archive.delete(timecardId);
+		});
+	}
+
+	@Override
+	public List<Timecard> insertTimecards(List<Timecard> timecards){
+		return store.insertTimecards(timecards);
+	}
+
+	@Override
+	public int deleteTimecardsOfEmployees(int[] empIds){
+		return archive.guarded(() -> store.deleteTimecardsOfEmployees(empIds) + archive.deleteEmployees(empIds));
+	}
+
+	@Override
+	public int deleteEmployees(int[] empIds){
+		return store.deleteEmployees(empIds);
+	}
+
+	@Override
+	public void close(){
+		store.close();
+	}
+}
@@ -0,0 +1,65 @@
+package Timecard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * BatchReader class reads the body of a bulk endpoint: either a JSON array or newline-delimited JSON
+ * with one value per line. Values are handed to a parser one at a time, so only the parsed entries are
+ * kept, never the whole document tree.
+ *
+ */
+
+final class BatchReader {
+
+	/**
+	 * Turns one value of the batch into an entry
+	 *
+	 */
+	interface EntryParser<E> {
+		E parse(int index, JsonElement value);
+	}
+
+	private BatchReader(){
+	}
+
+	/**
+	 * Read all entries of a batch
+	 * @param body
+	 * @param maxEntries
+	 * @param noun: what the entries are, for the size error message
+	 * @param parser
+	 * @return the entries in body order
+	 * @throws IOException when the body is not valid JSON
+	 * @throws IllegalArgumentException when the body holds more than maxEntries values
+	 *
+	 */
+	static <E> List<E> read(Reader body, int maxEntries, String noun, EntryParser<E> parser) throws IOException{
+		JsonReader in = new JsonReader(body);
+		// Lenient mode accepts several top-level values, which is what NDJSON is
+		in.setLenient(true);
+		JsonParser values = new JsonParser();
+		List<E> entries = new ArrayList<E>();
+		boolean array = in.peek() == JsonToken.BEGIN_ARRAY;
+		if(array){
+			in.beginArray();
+		}
+		while(array ? in.hasNext() : in.peek() != JsonToken.END_DOCUMENT){
+			if(entries.size() == maxEntries){
+				throw new IllegalArgumentException("batch should not have more than " + maxEntries + " " + noun + ".");
+			}
+			entries.add(parser.parse(entries.size(), values.parse(in)));
+		}
+		if(array){
+			in.endArray();
+		}
+		return entries;
+	}
+}
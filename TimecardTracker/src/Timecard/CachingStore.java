@@ -0,0 +1,199 @@
+package Timecard;
+
+import java.util.List;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * CachingStore class serves getDepartment and getEmployee from caches shared by all pooled sessions and
+ * drops a cached record whenever a write through any session updates or deletes it. Endpoints modify the
+ * records they read, so callers always get their own copy, never the cached instance.
+ *
+ */
+
+final class CachingStore implements CompanyStore {
+
+	private final CompanyStore store;
+	private final LookupCache<Department> departments;
+	private final LookupCache<Employee> employees;
+
+	CachingStore(CompanyStore store, LookupCache<Department> departments, LookupCache<Employee> employees){
+		this.store = store;
+		this.departments = departments;
+		this.employees = employees;
+	}
+
+	@Override
+	public int deleteCompany(String company){
+		try{
+			return store.deleteCompany(company);
+		}
+		finally{
+			departments.clear();
+			employees.clear();
+		}
+	}
+
+	@Override
+	public Department getDepartment(String company, int deptId){
+		Department dept = departments.get(deptId, id -> store.getDepartment(company, id));
+		if(dept != null && !dept.getCompany().equals(company)){
+			// Cached for another company; let the store decide
+			return store.getDepartment(company, deptId);
+		}
+		return copy(dept);
+	}
+
+	@Override
+	public List<Department> getAllDepartment(String company){
+		return store.getAllDepartment(company);
+	}
+
+	@Override
+	public Department insertDepartment(Department department){
+		return store.insertDepartment(department);
+	}
+
+	@Override
+	public Department updateDepartment(Department department){
+		try{
+			return store.updateDepartment(department);
+		}
+		finally{
+			departments.invalidate(department.getId());
+		}
+	}
+
+	@Override
+	public int deleteDepartment(String company, int deptId){
+		try{
+			return store.deleteDepartment(company, deptId);
+		}
+		finally{
+			departments.invalidate(deptId);
+		}
+	}
+
+	@Override
+	public Employee getEmployee(int empId){
+		return copy(employees.get(empId, store::getEmployee));
+	}
+
+	@Override
+	public List<Employee> getAllEmployee(String company){
+		return store.getAllEmployee(company);
+	}
+
+	@Override
+	public Employee insertEmployee(Employee employee){
+		return store.insertEmployee(employee);
+	}
+
+	@Override
+	public Employee updateEmployee(Employee employee){
+		try{
+			return store.updateEmployee(employee);
+		}
+		finally{
+			employees.invalidate(employee.getId());
+		}
+	}
+
+	@Override
+	public int deleteEmployee(int empId){
+		try{
+			return store.deleteEmployee(empId);
+		}
+		finally{
+			employees.invalidate(empId);
+		}
+	}
+
+	@Override
+	public List<Employee> insertEmployees(List<Employee> list){
+		return store.insertEmployees(list);
+	}
+
+	@Override
+	public Timecard getTimecard(int timecardId){
+		return store.getTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> getAllTimecard(int empId){
+		return store.getAllTimecard(empId);
+	}
+
+	@Override
+	public void forEachTimecard(int empId, TimecardVisitor visitor){
+		store.forEachTimecard(empId, visitor);
+	}
+
+	@Override
+	public List<Timecard> getTimecards(int[] timecardIds){
+		return store.getTimecards(timecardIds);
+	}
+
+	@Override
+	public Timecard insertTimecard(Timecard timecard){
+		return store.insertTimecard(timecard);
+	}
+
+	@Override
+	public Timecard updateTimecard(Timecard timecard){
+		return store.updateTimecard(timecard);
+	}
+
+	@Override
+	public int deleteTimecard(int timecardId){
+		return store.deleteTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> insertTimecards(List<Timecard> timecards){
+		return store.insertTimecards(timecards);
+	}
+
+	@Override
+	public int deleteTimecardsOfEmployees(int[] empIds){
+		return store.deleteTimecardsOfEmployees(empIds);
+	}
+
+	@Override
+	public int deleteEmployees(int[] empIds){
+		try{
+			return store.deleteEmployees(empIds);
+		}
+		finally{
+			for(int empId: empIds){
+				employees.invalidate(empId);
+			}
+		}
+	}
+
+	@Override
+	public void close(){
+		store.close();
+	}
+
+	private static Department copy(Department dept){
+		if(dept == null){
+			return null;
+		}
+		Department copy = new Department(dept.getCompany(), dept.getDeptName(), dept.getDeptNo(), dept.getLocation());
+		copy.setId(dept.getId());
+		return copy;
+	}
+
+	private static Employee copy(Employee emp){
+		if(emp == null){
+			return null;
+		}
+		Employee copy = new Employee(emp.getEmpName(), emp.getEmpNo(), emp.getHireDate(), emp.getJob(), emp.getSalary(),
+				emp.getDeptId(), emp.getMngId());
+		copy.setId(emp.getId());
+		return copy;
+	}
+}
@@ -1,25 +1,41 @@
 package Timecard;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 
 import javax.ws.rs.core.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.*;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import companydata.*;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 
 /**
  * CompanyServices class exposes Restful APIs with 4 HTTP methods: GET, POST, PUT, and DELETE of 
  * department, company, and time-tracker functionality
+ * 
+ * The resource runs as a singleton, so every endpoint keeps its DataLayer session and other request
+ * state in local variables and only shares thread-safe static helpers
+ * 
+ * Endpoints which reach the DataLayer suspend the request and run on the RequestExecutor, so container
+ * threads are free while they wait for a pooled session or the database
  *   
  * @author Dwiz Kumar
  * 
@@ -28,10 +44,120 @@ import com.google.gson.GsonBuilder;
 @Path("CompanyServices")
 public class CompanyServices {
 
-	DataLayer dl = null;
-    private static final String environment = "development";	
+    // "development" for the companydata database, or "embedded" / "embedded:<directory>" for the EmbeddedDatabase
+    private static final String environment = System.getProperty("timecard.environment", "development");
     private static final String companyId = "dxk3754";
-    
+
+    // Department and Employee lookups by id, shared by all sessions and dropped by their writes
+    private static final LookupCache<Department> DEPARTMENTS = new LookupCache<Department>();
+    private static final LookupCache<Employee> EMPLOYEES = new LookupCache<Employee>();
+
+    // Timecards of closed days, sealed into read-only segments when timecard.archive.dir is set; null otherwise
+    private static final TimecardArchive ARCHIVE = TimecardArchive.configured(TimecardRules.SERVER, CompanyServices::openStore, companyId);
+
+    // Shared by all requests; a session counts as healthy when a cheap lookup goes through
+    private static final DataLayerPool POOL = new DataLayerPool(() -> {
+    	// Metered below the caches, so the DataLayer metrics leave out cache hits
+    	CompanyStore store = new MeteredStore(openStore());
+    	return new CachingStore(ARCHIVE == null ? store : new ArchivingStore(store, ARCHIVE), DEPARTMENTS, EMPLOYEES);
+    }, session -> {
+    	session.getDepartment(companyId, 0);
+    	return true;
+    });
+
+    // dept_no and emp_no uniqueness per company, loaded once and maintained by the write endpoints
+    private static final UniqueKeyIndex DEPT_NOS = new UniqueKeyIndex((session, company) -> {
+    	Map<String, Integer> keys = new HashMap<String, Integer>();
+    	for(Department d: session.getAllDepartment(company)){
+    		keys.put(d.getDeptNo(), d.getId());
+    	}
+    	return keys;
+    });
+    private static final UniqueKeyIndex EMP_NOS = new UniqueKeyIndex((session, company) -> {
+    	Map<String, Integer> keys = new HashMap<String, Integer>();
+    	for(Employee e: session.getAllEmployee(company)){
+    		keys.put(e.getEmpNo(), e.getId());
+    	}
+    	return keys;
+    });
+
+    // Manager and direct reports of every employee per company, maintained by the employee writes
+    private static final ReportingIndex REPORTS = new ReportingIndex();
+
+    // Start days of each employee's timecards for the one-timecard-per-day rule
+    private static final TimecardDayIndex DAYS = new TimecardDayIndex();
+
+    // Versions of the GET responses for conditional requests, bumped by every write endpoint
+    private static final ResourceVersions VERSIONS = new ResourceVersions();
+
+    // Timecard and hire_date rules in the server time zone
+    private static final TimecardRules RULES = TimecardRules.SERVER;
+
+    // Hours per employee and ISO week, kept current by the timecard writes
+    private static final WeeklyHoursRollup WEEKS = new WeeklyHoursRollup(RULES);
+
+    /**
+     * Pool statistics: Method returns saturation and borrow wait-time figures of the DataLayer pool
+     * @return current pool statistics
+     *
+     */
+
+	@Path("pool")
+	@GET
+	@Produces("application/json")
+	public Response getPoolStats(){
+		return Response.ok(POOL.stats().toString()).build();
+	}
+	
+	
+    /**
+     * Cache statistics: Method returns size, hit, miss and eviction counts of the Department and Employee caches
+     * @return current cache statistics
+     *
+     */
+
+	@Path("cache")
+	@GET
+	@Produces("application/json")
+	public Response getCacheStats(){
+		JSONObject json = new JSONObject();
+		json.put("departments", DEPARTMENTS.stats());
+		json.put("employees", EMPLOYEES.stats());
+		return Response.ok(json.toString()).build();
+	}
+	
+	
+    /**
+     * Metrics: Method returns request and DataLayer latency histograms, DataLayer calls per request, error
+     * counts by message and the pool and cache statistics (and the embedded database's and the timecard archive's,
+     * when in use), in the Prometheus text format
+     * @return current metrics
+     *
+     */
+
+	@Path("metrics")
+	@GET
+	@Produces("text/plain; version=0.0.4")
+	public Response getMetrics(){
+		Map<String, JSONObject> gauges = new LinkedHashMap<String, JSONObject>();
+		gauges.put("pool", POOL.stats());
+		gauges.put("cache_departments", DEPARTMENTS.stats());
+		gauges.put("cache_employees", EMPLOYEES.stats());
+		if(EmbeddedDatabase.isEmbedded(environment)){
+			try{
+				gauges.put("embedded", EmbeddedDatabase.open(environment).stats());
+			}
+			catch(IOException e){
+				// Not loadable, so there is nothing to report
+			}
+		}
+		if(ARCHIVE != null){
+			gauges.put("archive", ARCHIVE.stats());
+		}
+		return Response.ok(Metrics.prometheus(gauges)).build();
+	}
+
+
     /**
      * Delete company: Method deletes all Department, Employee, Timecard records of requested company 
      * @param company
@@ -43,30 +169,42 @@ public class CompanyServices {
 	@Path("company")
 	@DELETE
 	@Produces("application/json")
-	public Response deleteCompany(
+	public void deleteCompany(@Suspended AsyncResponse async,
 			@DefaultValue(companyId) @QueryParam("company") String company){
+		RequestExecutor.submit(async, () -> {
 	 
-		try{
-			dl = new DataLayer(environment);	
-			if(company.trim().isEmpty()){
-			   return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}else{
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();	
+				if(company.trim().isEmpty()){
+				   return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}else{
 				
-			    int rowsDeleted = dl.deleteCompany(company);
-			    if(rowsDeleted >= 1){
-			        return Response.ok("{\"success\": \"companyName's information deleted.\"}").build();
-			    }else{
-			    	return Response.ok("{\"error\": \"companyName's does not exist.\"}").build();
-			    }
+				    long started = System.nanoTime();
+				    int rowsDeleted = dl.deleteCompany(company);
+				    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+				    DEPT_NOS.clear(company);
+				    EMP_NOS.clear(company);
+				    REPORTS.clear(company);
+				    DAYS.clear();
+				    WEEKS.clear();
+				    VERSIONS.bumpAll();
+				    if(rowsDeleted >= 1){
+				        return Response.ok("{\"success\": \"companyName's information deleted.\", \"elapsed_ms\": "+ elapsed +"}").build();
+				    }else{
+				    	return Response.ok("{\"error\": \"companyName's does not exist.\"}").build();
+				    }
+				}
 			}
-		}
-		catch(Exception e){
-			  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
-	}  
+			catch(Exception e){
+				  failed(dl, e);
+				  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
 	
 	
 	/**
@@ -80,37 +218,50 @@ public class CompanyServices {
 	@Path("department")
 	@GET
 	@Produces("application/json")
-	public Response getDepartment(
+	public void getDepartment(@Suspended AsyncResponse async, @Context Request request,
 			@DefaultValue(companyId) @QueryParam("company") String company,
 			@QueryParam("dept_id") int dept_id){
-		try{
-			dl = new DataLayer(environment);	
-			if(company.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.departments(company));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
 			}
-			if(dept_id == 0){
-			  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();
-			}else{
-			    Department dept = dl.getDepartment(company, dept_id);
-			    if(dept == null){
-			    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-			    }
-			    Gson gson = new Gson();
-			    return Response.ok(gson.toJson(dept, Department.class)).build();
-			}		
-  		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();	
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(dept_id == 0){
+				  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();
+				}else{
+				    Department dept = dl.getDepartment(company, dept_id);
+				    if(dept == null){
+				    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				    }
+				    Gson gson = JsonSerializers.DEPARTMENT;
+				    return Response.ok(gson.toJson(dept, Department.class)).tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}		
+	  		}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
 	/**
-	 * Get all Departments: Method returns all departments for the requested company
+	 * Get all Departments: Method returns all departments for the requested company. With limit or cursor
+	 * the Departments come in id order, one page at a time, as {"items": [...], "next_cursor": id}
 	 * @param company
+	 * @param limit: page size, capped by the server
+	 * @param cursor: next_cursor of the previous page
 	 * @return the requested list of Departments
 	 * 
 	 */
@@ -118,27 +269,47 @@ public class CompanyServices {
 	@Path("departments")
 	@GET
 	@Produces("application/json")
-	public Response getDepartments(
-			@DefaultValue(companyId) @QueryParam("company") String company){
-		try{
-			dl = new DataLayer(environment);
-			if(company.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}else{
-			    List<Department> depts = dl.getAllDepartment(company);
-			    if(depts.isEmpty()){
-			    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-			    }
-				Gson gson = new Gson();
-				return Response.ok(gson.toJson(depts)).build();
+	public void getDepartments(@Suspended AsyncResponse async, @Context Request request,
+			@DefaultValue(companyId) @QueryParam("company") String company,
+			@QueryParam("limit") Integer limit,
+			@QueryParam("cursor") Integer cursor){
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.departments(company));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				String pageError = KeysetPage.validate(limit, cursor);
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}else if(pageError != null){
+				  return Response.ok("{\"error\": \"" + pageError + "\"}").build();
+				}else{
+				    List<Department> depts = dl.getAllDepartment(company);
+				    if(depts.isEmpty()){
+				    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				    }
+				    if(limit != null || cursor != null){
+				    	KeysetPage<Department> page = page(depts, Department::getId, limit, cursor);
+				    	return Response.ok(JsonSerializers.streamPage(JsonSerializers.DEPARTMENT, Department.class, page))
+				    			.tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				    }
+					return Response.ok(JsonSerializers.streamArray(JsonSerializers.DEPARTMENT, Department.class, depts))
+							.tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
@@ -154,44 +325,57 @@ public class CompanyServices {
 	@POST
 	@Produces("application/json")
 	@Consumes("application/json")
-	public Response insertDepartment(String jsonReq){
-		try{
-			dl = new DataLayer(environment);
-			Gson gson = new Gson();
-			Department department = gson.fromJson(jsonReq, Department.class);
-			// Empty check for all requested field
-			if(department.getCompany().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}
-			if(department.getDeptName().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"dept_name should not be empty.\"}").build();	
-			}
-			if(department.getDeptNo().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"dept_no should not be empty.\"}").build();	
-			}
-			if(department.getLocation().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"location should not be empty.\"}").build();	
-			}else{
+	public void insertDepartment(@Suspended AsyncResponse async, String jsonReq){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				Gson gson = JsonSerializers.DEPARTMENT;
+				Department department = gson.fromJson(jsonReq, Department.class);
+				// Empty check for all requested field
+				if(department.getCompany().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(department.getDeptName().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"dept_name should not be empty.\"}").build();	
+				}
+				if(department.getDeptNo().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"dept_no should not be empty.\"}").build();	
+				}
+				if(department.getLocation().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"location should not be empty.\"}").build();	
+				}else{
 			     
-				List<Department> getAllDept = dl.getAllDepartment(department.getCompany());
-				for(Department d: getAllDept){
-					// check for the duplicate dept no.
-					if(d.getDeptNo().equals(department.getDeptNo())){
+					// check for the duplicate dept no. and hold it until the insert went through
+					UniqueKeyIndex.Scope deptNos = DEPT_NOS.scope(dl, department.getCompany());
+					if(!deptNos.reserve(department.getDeptNo())){
 						return Response.ok("{\"error\": \"Duplicate  dept no. found\"}").build();
 					}
-				}
-				Department dept = new Department(department.getCompany(),department.getDeptName(),department.getDeptNo(),department.getLocation());	
-			    dept = dl.insertDepartment(dept);
-			    String json = gson.toJson(dept, Department.class);
-			    return Response.ok(json).build();
-			} 
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+					Department dept = null;
+					try{
+						dept = new Department(department.getCompany(),department.getDeptName(),department.getDeptNo(),department.getLocation());	
+					    dept = dl.insertDepartment(dept);
+					}
+					finally{
+						if(dept != null && dept.getId() != 0){
+							deptNos.commit(department.getDeptNo(), dept.getId());
+							VERSIONS.bump(ResourceVersions.departments(department.getCompany()));
+						}else{
+							deptNos.release(department.getDeptNo());
+						}
+					}
+				    String json = gson.toJson(dept, Department.class);
+				    return Response.ok(json).build();
+				} 
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
@@ -210,60 +394,77 @@ public class CompanyServices {
 	@PUT
 	@Produces("application/json")
 	@Consumes("application/x-www-form-urlencoded")
-	public Response updateDepartment(@FormParam("dept_id") int dept_id,
+	public void updateDepartment(@Suspended AsyncResponse async, @FormParam("dept_id") int dept_id,
 			@FormParam("company") String company,
 			@FormParam("dept_name") String dept_name,
 			@FormParam("dept_no") String dept_no,
 			@FormParam("location") String location){
-		try{
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
 
-			dl = new DataLayer(environment);
-			Gson gson = new Gson();
-			if(dept_id == 0){
-			  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
-			}
-			if(company.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}
-			if(dept_name.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"dept_name should not be empty.\"}").build();	
-			}
-			if(dept_no.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"dept_no should not be empty.\"}").build();	
-			}
-			if(location.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"location should not be empty.\"}").build();	
-			}else{
+				dl = POOL.borrow();
+				Gson gson = JsonSerializers.DEPARTMENT;
+				if(dept_id == 0){
+				  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
+				}
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(dept_name.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"dept_name should not be empty.\"}").build();	
+				}
+				if(dept_no.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"dept_no should not be empty.\"}").build();	
+				}
+				if(location.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"location should not be empty.\"}").build();	
+				}else{
 			    
-				Department department = dl.getDepartment(company, dept_id);
-				List<Department> getAllDept = dl.getAllDepartment(company);
+					Department department = dl.getDepartment(company, dept_id);
+					UniqueKeyIndex.Scope deptNos = DEPT_NOS.scope(dl, company);
 				
-				for(Department d: getAllDept){
 					// check for the duplicate dept no.
-					if(d.getDeptNo().equals(dept_no)){
+					if(deptNos.contains(dept_no)){
+						return Response.ok("{\"error\": \"Duplicate  dept no. found\"}").build();
+					}
+					if(department == null){
+						return Response.ok("{\"error\": \"No matching dept_id found\"}").build();
+					}
+					if(!deptNos.reserve(dept_no)){
 						return Response.ok("{\"error\": \"Duplicate  dept no. found\"}").build();
 					}
-				}
-				if(department == null){
-					return Response.ok("{\"error\": \"No matching dept_id found\"}").build();
-				}
 		
-				department.setCompany(company);
-				department.setDeptName(dept_name);
-				department.setDeptNo(dept_no);
-				department.setLocation(location);
+					department.setCompany(company);
+					department.setDeptName(dept_name);
+					department.setDeptNo(dept_no);
+					department.setLocation(location);
 				
-				department = dl.updateDepartment(department);
-			    String json = gson.toJson(department, Department.class);
-			    return Response.ok(json).build();
+					boolean updated = false;
+					try{
+						department = dl.updateDepartment(department);
+						updated = department != null;
+					}
+					finally{
+						if(updated){
+							deptNos.commit(dept_no, dept_id);
+							VERSIONS.bump(ResourceVersions.departments(company));
+						}else{
+							deptNos.release(dept_no);
+						}
+					}
+				    String json = gson.toJson(department, Department.class);
+				    return Response.ok(json).build();
+				}
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
@@ -278,50 +479,71 @@ public class CompanyServices {
 	@Path("department")
 	@DELETE
 	@Produces("application/json")
-	public Response deleteDepartment(
+	public void deleteDepartment(@Suspended AsyncResponse async,
 		@DefaultValue(companyId) @QueryParam("company") String company,
 		@QueryParam("dept_id") int dept_id){
+		RequestExecutor.submit(async, () -> {
 		 
-		try{
-			dl = new DataLayer(environment);	
-			if(company.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}
-			if(dept_id == 0){
-				  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
-			}else{
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();	
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(dept_id == 0){
+					  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
+				}else{
 			     
-				List<Employee> emps = dl.getAllEmployee(company);
-				if(!emps.isEmpty()){
+					long started = System.nanoTime();
+					List<Employee> emps = dl.getAllEmployee(company);
+					// Collect all Employees for the requested dept_id
+					int[] empIds = new int[emps.size()];
+					int count = 0;
 					for(Employee emp :emps){
-						// Delete all Employees for the requested dept_id
 					   if(emp.getDeptId() == dept_id){	
-							List<Timecard> times = dl.getAllTimecard(emp.getId());
-							// Delete all Timecards
-							if(!times.isEmpty()){
-								for(Timecard time: times){
-								   dl.deleteTimecard(time.getId());
-								}
-							}
-							dl.deleteEmployee(emp.getId());
+						   empIds[count++] = emp.getId();
 					   }
 					}
+					empIds = Arrays.copyOf(empIds, count);
+				
+					// Delete all their Timecards, then the Employees, as two set-based operations
+					int timecardsDeleted;
+					int employeesDeleted;
+					try{
+						timecardsDeleted = dl.deleteTimecardsOfEmployees(empIds);
+						employeesDeleted = dl.deleteEmployees(empIds);
+					}
+					finally{
+						// Reloaded on next use, so also right after a cascade which stopped part way
+						DAYS.removeEmployees(empIds);
+						WEEKS.removeEmployees(empIds);
+					}
+					for(int empId: empIds){
+						EMP_NOS.remove(company, empId);
+					}
+					REPORTS.removeEmployees(company, empIds);
+					// Delete Department
+					int rowsDeleted = dl.deleteDepartment(company, dept_id);
+					VERSIONS.bump(ResourceVersions.departments(company), ResourceVersions.EMPLOYEES, ResourceVersions.TIMECARDS);
+					long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+				    if(rowsDeleted >= 1){
+				    	DEPT_NOS.remove(company, dept_id);
+				        return Response.ok("{\"success\": \"Department "+ dept_id +" from "+ company +" deleted.\", "
+				        		+ "\"employees_deleted\": "+ employeesDeleted +", \"timecards_deleted\": "+ timecardsDeleted +", "
+				        		+ "\"elapsed_ms\": "+ elapsed +"}").build();
+				    }else{
+				    	return Response.ok("{\"error\": \"Department "+ dept_id +" from "+ company +" does not exist.\"}").build();
+				    }
 				}
-				// Delete Department
-				int rowsDeleted = dl.deleteDepartment(company, dept_id);
-			    if(rowsDeleted >= 1){
-			        return Response.ok("{\"success\": \"Department "+ dept_id +" from "+ company +" deleted.\"}").build();
-			    }else{
-			    	return Response.ok("{\"error\": \"Department "+ dept_id +" from "+ company +" does not exist.\"}").build();
-			    }
 			}
-		}
-		catch(Exception e){
-			  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			catch(Exception e){
+				  failed(dl, e);
+				  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
@@ -335,37 +557,50 @@ public class CompanyServices {
 	@Path("employee")
 	@GET
 	@Produces("application/json")
-	public Response getEmployee(
+	public void getEmployee(@Suspended AsyncResponse async, @Context Request request,
 	    	@QueryParam("emp_id") int emp_id){
-		try{
-			dl = new DataLayer(environment);
-			if(emp_id == 0){
-			  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
-			}else{			
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.EMPLOYEES, ResourceVersions.employee(emp_id));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
+			}
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}else{			
 					
-			    Employee emp = dl.getEmployee(emp_id);
+				    Employee emp = dl.getEmployee(emp_id);
 			    
-			    if(emp == null){
-			    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-			    }
-			    // set the date format to yyyy-MM-dd
-			    Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd").create();
-			    return Response.ok(gson.toJson(emp)).build();
+				    if(emp == null){
+				    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				    }
+				    // set the date format to yyyy-MM-dd
+				    Gson gson = JsonSerializers.EMPLOYEE;
+				    return Response.ok(gson.toJson(emp)).tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 		
 	
 	/**
-	 * Get all Employees: Method returns a list of employees for the specific company 
+	 * Get all Employees: Method returns a list of employees for the specific company. With limit or cursor
+	 * the Employees come in id order, one page at a time, as {"items": [...], "next_cursor": id}
 	 * @param company
+	 * @param limit: page size, capped by the server
+	 * @param cursor: next_cursor of the previous page
 	 * @return requested lists of Employees
 	 * 
 	 */
@@ -373,29 +608,103 @@ public class CompanyServices {
 	@Path("employees")
 	@GET
 	@Produces("application/json")
-	public Response getEmployees(
-			@DefaultValue(companyId) @QueryParam("company") String company){
-		try{
-			dl = new DataLayer(environment);
-			if(company.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
-			}else{
-			    List<Employee> emps = dl.getAllEmployee(company);
+	public void getEmployees(@Suspended AsyncResponse async, @Context Request request,
+			@DefaultValue(companyId) @QueryParam("company") String company,
+			@QueryParam("limit") Integer limit,
+			@QueryParam("cursor") Integer cursor){
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.EMPLOYEES, ResourceVersions.employees(company));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
+			}
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				String pageError = KeysetPage.validate(limit, cursor);
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}else if(pageError != null){
+				  return Response.ok("{\"error\": \"" + pageError + "\"}").build();
+				}else{
+				    List<Employee> emps = dl.getAllEmployee(company);
 			    
-			    if(emps.isEmpty()){
-			    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-			    }
-			    // set the date format to yyyy-MM-dd
-			    Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd").create();
-			    return Response.ok(gson.toJson(emps)).build();
+				    if(emps.isEmpty()){
+				    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				    }
+				    if(limit != null || cursor != null){
+				    	KeysetPage<Employee> page = page(emps, Employee::getId, limit, cursor);
+				    	return Response.ok(JsonSerializers.streamPage(JsonSerializers.EMPLOYEE, Employee.class, page))
+				    			.tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				    }
+				    // stream the array with the yyyy-MM-dd date format
+				    return Response.ok(JsonSerializers.streamArray(JsonSerializers.EMPLOYEE, Employee.class, emps))
+				    		.tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Get reports: Method returns the Employees under a manager, level by level, from the in-memory
+	 * reporting tree
+	 * @param company
+	 * @param emp_id: the manager
+	 * @param depth: levels to walk down, 1 for direct reports only
+	 * @return emp_id, mng_id and level of every Employee in the subtree
+	 * 
+	 */
+	
+	@Path("employee/reports")
+	@GET
+	@Produces("application/json")
+	public void getReports(@Suspended AsyncResponse async, @Context Request request,
+			@DefaultValue(companyId) @QueryParam("company") String company,
+			@QueryParam("emp_id") int emp_id,
+			@DefaultValue("1") @QueryParam("depth") int depth){
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.EMPLOYEES, ResourceVersions.employees(company));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
+			}
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				if(depth < 1){
+				  return Response.ok("{\"error\": \"depth should be at least 1.\"}").build();	
+				}else{
+				    JSONObject reports = REPORTS.chart(dl, company).reports(emp_id, depth);
+				    if(reports == null){
+				    	return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				    }
+				    return Response.ok(reports.toString()).tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
@@ -410,86 +719,143 @@ public class CompanyServices {
 	@POST
 	@Produces("application/json")
 	@Consumes("application/json")
-	public Response insertEmployee(String jsonReq){
-		try{
+	public void insertEmployee(@Suspended AsyncResponse async, String jsonReq){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
 			
-			dl = new DataLayer(environment);
-			JSONObject jsonObject = new JSONObject(jsonReq);
-			String hireDate = jsonObject.getString("hire_date");
+				dl = POOL.borrow();
+				JSONObject jsonObject = new JSONObject(jsonReq);
+				String hireDate = jsonObject.getString("hire_date");
 			
-			// Using regular expression to match the format
-			if(hireDate.trim().isEmpty() || !hireDate.matches("\\d{4}-\\d{2}-\\d{2}")){
-				return Response.ok("{\"error\": \"hire_date should be in yyyy-MM-dd format.\"}").build(); 	
-			}
+				// Validate the format and parse hire_date in one pass
+				long hire_day = TimestampParser.parseDate(hireDate);
+				if(hire_day == TimestampParser.INVALID){
+					return Response.ok("{\"error\": \"hire_date should be in yyyy-MM-dd format.\"}").build(); 	
+				}
 			
-			Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd").create();
-			Employee employee = gson.fromJson(jsonReq, Employee.class);
+				Gson gson = JsonSerializers.EMPLOYEE;
+				Employee employee = new Employee(jsonObject.optString("emp_name"), jsonObject.optString("emp_no"),
+						TimecardRules.toSqlDate(hire_day), jsonObject.optString("job"), jsonObject.optDouble("salary", 0.0),
+						jsonObject.optInt("dept_id"), jsonObject.optInt("mng_id"));
 			
-			// Validate for empty values
-			if(employee.getEmpName().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"emp_name should not be empty.\"}").build();	
+				// Validate for empty values
+				if(employee.getEmpName().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"emp_name should not be empty.\"}").build();	
+				}
+				if(employee.getEmpNo().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"emp_no should not be empty.\"}").build();	
+				}
+				if(employee.getJob().trim().isEmpty()){
+				  return Response.ok("{\"error\": \"job should not be empty.\"}").build();	
+				}
+				if(employee.getSalary() == 0.0){
+				  return Response.ok("{\"error\": \"salary should not be empty.\"}").build();	
+				}
+				if(employee.getDeptId() == 0){
+				  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
+				}else{
+				
+					Department getDept;
+					Employee getEmp;
+					UniqueKeyIndex.Scope empNos;
+					ReportingIndex.Chart chart;
+					// Look up the department and manager on extra sessions while this one loads the indexes
+					try(ParallelLookups lookups = new ParallelLookups(POOL, dl)){
+						ParallelLookups.Lookup<Department> dept = lookups.submit(s -> s.getDepartment(companyId, employee.getDeptId()));
+						ParallelLookups.Lookup<Employee> mng = lookups.submit(s -> s.getEmployee(employee.getMngId()));
+						empNos = EMP_NOS.scope(dl, companyId);
+						chart = REPORTS.chart(dl, companyId);
+						getDept = dept.get();
+				    	if(getDept == null){
+				    	   return Response.ok("{\"error\": \"No matching dept_Id found\"}").build();
+				    	}
+				    	getEmp = mng.get();
+					}
+		    	
+			    	// Match mng_Id only if Employee list is not empty and mng_Id not equal to 0
+			    	if(!empNos.isEmpty()){
+			    	  if(getEmp == null && employee.getMngId() != 0)	
+			    	      return Response.ok("{\"error\": \"No matching employee found for mng_Id\"}").build();
+			    	  // Check duplicate emp_no
+			    	  if(empNos.contains(employee.getEmpNo())){
+			    		  return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
+			    	  }
+			    	}	
+			    	// validate hire_date should be less than or equal to the current_date and a weekday
+			    	String violation = RULES.checkHireDate(hire_day, RULES.today());
+			    	if(violation != null){
+			    		return Response.ok("{\"error\": \"" + violation + "\"}").build();
+			    	}else{
+			    		if(!empNos.reserve(employee.getEmpNo())){
+			    			return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
+			    		}
+						Employee emp = null;
+						try{
+							emp = new Employee(employee.getEmpName(),employee.getEmpNo(),employee.getHireDate(),employee.getJob(),employee.getSalary(),employee.getDeptId(),employee.getMngId());
+							emp = dl.insertEmployee(emp);
+						}
+						finally{
+							if(emp != null && emp.getId() != 0){
+								empNos.commit(employee.getEmpNo(), emp.getId());
+								chart.put(emp.getId(), employee.getMngId());
+								VERSIONS.bump(ResourceVersions.employees(companyId));
+							}else{
+								empNos.release(employee.getEmpNo());
+							}
+						}
+						return Response.ok(gson.toJson(emp)).build();
+			    	}
+				}
 			}
-			if(employee.getEmpNo().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"emp_no should not be empty.\"}").build();	
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
 			}
-			if(employee.getJob().trim().isEmpty()){
-			  return Response.ok("{\"error\": \"job should not be empty.\"}").build();	
+			finally{
+				POOL.release(dl);
 			}
-			if(employee.getSalary() == 0.0){
-			  return Response.ok("{\"error\": \"salary should not be empty.\"}").build();	
+		});
+	}
+	
+
+	/**
+	 * Insert Employees in bulk: Method loads the departments and emp_no keys once, validates every Employee
+	 * with the rules of the single insert and inserts the accepted ones, managers before their reports
+	 * @param body: a JSON array of Employees, or one per line; mng_emp_no may name a manager of the same batch
+	 * @return inserted and failed counts and the emp_id or error of every entry, by index
+	 * 
+	 */
+	
+	@Path("employees/batch")
+	@POST
+	@Produces("application/json")
+	@Consumes({"application/json", "application/x-ndjson"})
+	public void insertEmployees(@Suspended AsyncResponse async, InputStream body){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				EmployeeBatch batch = EmployeeBatch.read(new InputStreamReader(body, StandardCharsets.UTF_8));
+				dl = POOL.borrow();
+				try{
+					batch.insert(dl, companyId, EMP_NOS, REPORTS, RULES);
+				}
+				finally{
+					VERSIONS.bump(ResourceVersions.employees(companyId));
+				}
+				return Response.ok(batch.results()).build();
 			}
-			if(employee.getDeptId() == 0){
-			  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
-			}else{
-				
-				Department getDept = dl.getDepartment(companyId, employee.getDeptId());
-		    	Employee getEmp = dl.getEmployee(employee.getMngId());
-		    	Date hire_date = employee.getHireDate();
-		    	Date current_date = new Date();
-		    	
-		    	// Set the date format to 'E' to retrieve day like Sat, Mon etc.
-		    	SimpleDateFormat simpleDateformat = new SimpleDateFormat("E");
-		    	String day_of_date = simpleDateformat.format(hire_date).toLowerCase();
-		    	List<Employee> allEmp = dl.getAllEmployee(companyId);
-		    	
-		    	
-		    	if(getDept == null){
-		    	   return Response.ok("{\"error\": \"No matching dept_Id found\"}").build();
-		    	}
-		    	// Match mng_Id only if Employee list is not empty and mng_Id not equal to 0
-		    	if(!allEmp.isEmpty()){
-		    	  if(getEmp == null && employee.getMngId() != 0)	
-		    	      return Response.ok("{\"error\": \"No matching employee found for mng_Id\"}").build();
-		    	  // Check duplicate emp_no
-		    	  for(Employee e: allEmp){
-		    		  if(e.getEmpNo().equals(employee.getEmpNo())){
-		    			  return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
-		    		  }
-		    	  }
-		    	}	
-		    	// validate hire_date should be less than or equal to the current_date
-		    	if(hire_date.compareTo(current_date)>0){
-		    	   return Response.ok("{\"error\": \"hire_date should not be a future date\"}").build();	
-		    	}
-		    	// hire_date should be a weekday
-		    	if(day_of_date.equals("sat") || day_of_date.equals("sun")){
-		    		return Response.ok("{\"error\": \"hire_date should not be a saturday or sunday\"}").build();
-		    	}else{
-					Employee emp = new Employee(employee.getEmpName(),employee.getEmpNo(),new java.sql.Date(hire_date.getTime()),employee.getJob(),employee.getSalary(),employee.getDeptId(),employee.getMngId());
-					emp = dl.insertEmployee(emp);
-					return Response.ok(gson.toJson(emp)).build();
-		    	}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
-
+	
 	/**
 	 * Update an Employee: Method updates the existing employee record and returns the updated Employee
 	 * @param emp_id
@@ -507,7 +873,7 @@ public class CompanyServices {
 	@PUT
 	@Produces("application/json")
 	@Consumes("application/x-www-form-urlencoded")
-	public Response updateEmployee(@FormParam("emp_id") int emp_id,
+	public void updateEmployee(@Suspended AsyncResponse async, @FormParam("emp_id") int emp_id,
 			@FormParam("emp_name") String emp_name,
 			@FormParam("emp_no") String emp_no,
 			@FormParam("hire_date") String hire_date,
@@ -515,97 +881,134 @@ public class CompanyServices {
 			@FormParam("salary") double salary,
 			@FormParam("dept_id") int dept_id,
 			@FormParam("mng_id") int mng_id){
-		try{
-			dl = new DataLayer(environment);
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
 			
-			if(emp_id == 0){
-			  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
-			}
-			if(emp_name.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"emp_name should not be empty.\"}").build();	
-			}
-			if(emp_no.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"emp_no should not be empty.\"}").build();	
-			}
-			// Using regular expression to validate hire_date
-			if(hire_date.trim().isEmpty() || !hire_date.matches("\\d{4}-\\d{2}-\\d{2}")){
-			  return Response.ok("{\"error\": \"hire_date should be in yyyy-MM-dd.\"}").build();	
-			}
-			if(job.trim().isEmpty()){
-			  return Response.ok("{\"error\": \"job should not be empty.\"}").build();	
-			}
-			if(salary == 0.0){
-			  return Response.ok("{\"error\": \"salary should not be empty.\"}").build();	
-			}
-			if(dept_id == 0){
-			  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
-			}
-			if(emp_id == mng_id){
-			  return Response.ok("{\"error\": \"mng_id should be different than the emp_id.\"}").build();	
-			}else{
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				if(emp_name.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"emp_name should not be empty.\"}").build();	
+				}
+				if(emp_no.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"emp_no should not be empty.\"}").build();	
+				}
+				// Validate and parse hire_date in one pass
+				long hire_day = TimestampParser.parseDate(hire_date);
+				if(hire_day == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"hire_date should be in yyyy-MM-dd.\"}").build();	
+				}
+				if(job.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"job should not be empty.\"}").build();	
+				}
+				if(salary == 0.0){
+				  return Response.ok("{\"error\": \"salary should not be empty.\"}").build();	
+				}
+				if(dept_id == 0){
+				  return Response.ok("{\"error\": \"dept_id should not be empty.\"}").build();	
+				}
+				if(emp_id == mng_id){
+				  return Response.ok("{\"error\": \"mng_id should be different than the emp_id.\"}").build();	
+				}else{
 				
-		    	Department getDept = dl.getDepartment(companyId, dept_id);
-		    	Employee getEmp = dl.getEmployee(mng_id);
-		    	Employee getEmp1 = dl.getEmployee(emp_id);
-		    	Date hireDate = new SimpleDateFormat("yyyy-MM-dd").parse(hire_date);
-		    	Date current_date = new Date();
-		    	SimpleDateFormat simpleDateformat = new SimpleDateFormat("E");
-		    	String day_of_date = simpleDateformat.format(hireDate).toLowerCase();
-		    	List<Employee> allEmp = dl.getAllEmployee(companyId);
+			    	Department getDept;
+			    	Employee getEmp;
+			    	Employee getEmp1;
+			    	UniqueKeyIndex.Scope empNos;
+			    	ReportingIndex.Chart chart;
+			    	// Look up the department, manager and employee on extra sessions while this one loads the indexes
+			    	try(ParallelLookups lookups = new ParallelLookups(POOL, dl)){
+			    		ParallelLookups.Lookup<Department> dept = lookups.submit(s -> s.getDepartment(companyId, dept_id));
+			    		ParallelLookups.Lookup<Employee> mng = lookups.submit(s -> s.getEmployee(mng_id));
+			    		ParallelLookups.Lookup<Employee> emp = lookups.submit(s -> s.getEmployee(emp_id));
+			    		empNos = EMP_NOS.scope(dl, companyId);
+			    		chart = REPORTS.chart(dl, companyId);
+			    		getDept = dept.get();
+			    		if(getDept == null){
+			    			return Response.ok("{\"error\": \"No matching dept_Id found\"}").build();
+			    		}
+			    		getEmp = mng.get();
+			    		getEmp1 = emp.get();
+			    	}
+			    	boolean charted = chart.contains(emp_id);
+			    	int previousMng = chart.managerOf(emp_id);
 		    	
-		    	// No need as the POST operation checks for the duplicate 
-		    	/*for(Employee e: allEmp){
-					if(e.getId() == emp_id){
-						return Response.ok("{\"error\": \"Duplicate  emp_Id found\"}").build();
-					}
-				}*/
-		    	if(getDept == null){
-		    	   return Response.ok("{\"error\": \"No matching dept_Id found\"}").build();
-		    	}
+			    	// No need as the POST operation checks for the duplicate 
+			    	/*for(Employee e: allEmp){
+						if(e.getId() == emp_id){
+							return Response.ok("{\"error\": \"Duplicate  emp_Id found\"}").build();
+						}
+					}*/
 		    	
-		    	// Check for matching mng_Id and emp_Id for non-empty Employee list 
-		    	if(!allEmp.isEmpty()){
-		    	  if(getEmp == null && mng_id != 0)	
-		    	     return Response.ok("{\"error\": \"No matching employee found for mng_Id\"}").build();
-		    	  if(getEmp1 == null)	
-			    	 return Response.ok("{\"error\": \"No matching employee found for emp_Id\"}").build();
-		    	  for(Employee e: allEmp){
-		    		  if(e.getEmpNo().equals(emp_no)){
-		    			  return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
-		    		  }
-		    	  }
-		    	}
-		    	// Validate hire_date by comparing it with the current_date
-		    	if(hireDate.compareTo(current_date)>0){
-		    	   return Response.ok("{\"error\": \"hire_date should not be a future date\"}").build();	
-		    	}
-		    	// hire_date should be a weekday 
-		    	if(day_of_date.equals("sat") || day_of_date.equals("sun")){
-		    		return Response.ok("{\"error\": \"hire_date should not be a saturday or sunday\"}").build();
-		    	}
-		    	else{
+			    	// The employee must exist before its emp_no is reserved or its manager moved
+			    	if(getEmp1 == null){
+			    		return Response.ok("{\"error\": \"No matching employee found for emp_Id\"}").build();
+			    	}
+			    	// Check for matching mng_Id for non-empty Employee list 
+			    	if(!empNos.isEmpty()){
+			    	  if(getEmp == null && mng_id != 0)	
+			    	     return Response.ok("{\"error\": \"No matching employee found for mng_Id\"}").build();
+			    	  if(empNos.contains(emp_no)){
+			    		  return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
+			    	  }
+			    	}
+			    	// Validate hire_date by comparing it with the current_date; it should be a weekday
+			    	String violation = RULES.checkHireDate(hire_day, RULES.today());
+			    	if(violation != null){
+			    		return Response.ok("{\"error\": \"" + violation + "\"}").build();
+			    	}
+			    	else if(!empNos.reserve(emp_no)){
+			    		return Response.ok("{\"error\": \"Duplicate emp_no found\"}").build();
+			    	}
+			    	// Claim the new manager before the write so two updates can not close a loop between them
+			    	else if(!chart.move(emp_id, mng_id)){
+			    		empNos.release(emp_no);
+			    		return Response.ok("{\"error\": \"mng_id should not report to the emp_id.\"}").build();
+			    	}
+			    	else{
 						
-		    		getEmp1.setEmpName(emp_name);
-		    		getEmp1.setEmpNo(emp_no);
-		    		getEmp1.setHireDate(new java.sql.Date(hireDate.getTime()));
-		    		getEmp1.setJob(job);
-		    		getEmp1.setSalary(salary);
-		    		getEmp1.setDeptId(dept_id);
-		    		getEmp1.setMngId(mng_id);
-		    		getEmp1 = dl.updateEmployee(getEmp1);
+			    		getEmp1.setEmpName(emp_name);
+			    		getEmp1.setEmpNo(emp_no);
+			    		getEmp1.setHireDate(TimecardRules.toSqlDate(hire_day));
+			    		getEmp1.setJob(job);
+			    		getEmp1.setSalary(salary);
+			    		getEmp1.setDeptId(dept_id);
+			    		getEmp1.setMngId(mng_id);
+			    		boolean updated = false;
+			    		try{
+			    			getEmp1 = dl.updateEmployee(getEmp1);
+			    			updated = getEmp1 != null;
+			    		}
+			    		finally{
+			    			if(updated){
+			    				empNos.commit(emp_no, emp_id);
+			    				VERSIONS.bump(ResourceVersions.employees(companyId), ResourceVersions.employee(emp_id));
+			    			}else{
+			    				empNos.release(emp_no);
+			    				if(charted){
+			    					chart.put(emp_id, previousMng);
+			    				}else{
+			    					chart.remove(emp_id);
+			    				}
+			    			}
+			    		}
 		    		
-					// Set the response date format to yyyy-MM-dd
-					Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd").create();
-					return Response.ok(gson.toJson(getEmp1)).build();
-			    }
-			}	
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+						// Set the response date format to yyyy-MM-dd
+						Gson gson = JsonSerializers.EMPLOYEE;
+						return Response.ok(gson.toJson(getEmp1)).build();
+				    }
+				}	
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 
 
@@ -620,38 +1023,52 @@ public class CompanyServices {
 	@Path("employee")
 	@DELETE
 	@Produces("application/json")
-	public Response deleteEmployee(@QueryParam("emp_id") int emp_id){
+	public void deleteEmployee(@Suspended AsyncResponse async, @QueryParam("emp_id") int emp_id){
+		RequestExecutor.submit(async, () -> {
 			 
-		try{
-			dl = new DataLayer(environment);
-			if(emp_id == 0){
-			  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
-			}
-			else{
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				else{
 			  
-			  List<Timecard> timecards = dl.getAllTimecard(emp_id);
+				  long started = System.nanoTime();
 			  
-			  // Delete all Timecards 
-			  if(!timecards.isEmpty()){
-				  for(Timecard timecard: timecards){
-					 dl.deleteTimecard(timecard.getId());
+				  // Delete all Timecards 
+				  int timecardsDeleted;
+				  try{
+					  timecardsDeleted = dl.deleteTimecardsOfEmployees(new int[]{emp_id});
 				  }
-			  }
-			  // Delete Employee
-			  int rowsDeleted = dl.deleteEmployee(emp_id);
-			  if(rowsDeleted >= 1){
-			      return Response.ok("{\"success\": \"Employee "+ emp_id +" deleted.\"}").build();
-			  }else{
-			      return Response.ok("{\"error\": \"Employee "+ emp_id +" does not exist.\"}").build();
-			  }
-			} 
-		}
-		catch(Exception e){
-			  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+				  finally{
+					  // Reloaded on next use, so also right after a delete which stopped part way
+					  DAYS.removeEmployees(new int[]{emp_id});
+					  WEEKS.removeEmployees(new int[]{emp_id});
+				  }
+				  // Delete Employee
+				  int rowsDeleted = dl.deleteEmployee(emp_id);
+				  VERSIONS.bump(ResourceVersions.employees(companyId), ResourceVersions.employee(emp_id),
+						  ResourceVersions.timecards(emp_id), ResourceVersions.TIMECARDS);
+				  long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+				  if(rowsDeleted >= 1){
+					  EMP_NOS.remove(companyId, emp_id);
+					  REPORTS.removeEmployees(companyId, new int[]{emp_id});
+				      return Response.ok("{\"success\": \"Employee "+ emp_id +" deleted.\", "
+				    		  + "\"timecards_deleted\": "+ timecardsDeleted +", \"elapsed_ms\": "+ elapsed +"}").build();
+				  }else{
+				      return Response.ok("{\"error\": \"Employee "+ emp_id +" does not exist.\"}").build();
+				  }
+				} 
+			}
+			catch(Exception e){
+				  failed(dl, e);
+				  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 
 
@@ -665,33 +1082,49 @@ public class CompanyServices {
 	@Path("timecard")
 	@GET
 	@Produces("application/json")
-	public Response getTimecard(@QueryParam("timecard_id") int timecard_id){
-		try{
-    		dl = new DataLayer(environment);
-			if(timecard_id == 0){
-			  return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
-			}
-			else{
-	 		  Timecard time = dl.getTimecard(timecard_id);
-	 		  if(time == null){
-	 			 return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-	 		  }
-	 		  Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
-			  return Response.ok(gson.toJson(time)).build();
+	public void getTimecard(@Suspended AsyncResponse async, @Context Request request, @QueryParam("timecard_id") int timecard_id){
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.TIMECARDS, ResourceVersions.timecard(timecard_id));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			CompanyStore dl = null;
+			try{
+	    		dl = POOL.borrow();
+				if(timecard_id == 0){
+				  return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
+				}
+				else{
+		 		  Timecard time = dl.getTimecard(timecard_id);
+		 		  if(time == null){
+		 			 return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+		 		  }
+		 		  Gson gson = JsonSerializers.TIMECARD;
+				  return Response.ok(gson.toJson(time)).tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 	
 	
 	/**
-	 * Get all Timecards: Method returns a list of Timecards for the existing Employee id 
+	 * Get all Timecards: Method returns a list of Timecards for the existing Employee id. With limit or cursor
+	 * the Timecards come in id order, one page at a time, as {"items": [...], "next_cursor": id}. With from
+	 * or to only the Timecards starting on those days are read, found through the start day index
 	 * @param emp_id
+	 * @param from: first start day, yyyy-MM-dd
+	 * @param to: last start day, yyyy-MM-dd, inclusive
+	 * @param limit: page size, capped by the server
+	 * @param cursor: next_cursor of the previous page
 	 * @return requested list of Timecards
 	 * 
 	 */
@@ -699,31 +1132,274 @@ public class CompanyServices {
 	@Path("timecards")
 	@GET
 	@Produces("application/json")
-	public Response getTimecards(@QueryParam("emp_id") int emp_id){
-		try{
-			dl = new DataLayer(environment);
-			if(emp_id == 0){
-			  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+	public void getTimecards(@Suspended AsyncResponse async, @Context Request request, @QueryParam("emp_id") int emp_id,
+			@QueryParam("from") String from,
+			@QueryParam("to") String to,
+			@QueryParam("limit") Integer limit,
+			@QueryParam("cursor") Integer cursor){
+		RequestExecutor.submit(async, () -> {
+			// Answer from the version alone when the client's copy is current
+			ResourceVersions.Stamp stamp = VERSIONS.current(ResourceVersions.TIMECARDS, ResourceVersions.timecards(emp_id));
+			Response notModified = notModified(request, stamp);
+			if(notModified != null){
+				return notModified;
 			}
-			else{
-			  List<Timecard> times = dl.getAllTimecard(emp_id);
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				String pageError = KeysetPage.validate(limit, cursor);
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				else if(pageError != null){
+				  return Response.ok("{\"error\": \"" + pageError + "\"}").build();
+				}
+				// Open ends of the range stay within the int days the index keys on
+				long fromDay = from == null ? Integer.MIN_VALUE : TimestampParser.parseDate(from);
+				long toDay = to == null ? Integer.MAX_VALUE - 1 : TimestampParser.parseDate(to);
+				if(fromDay == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"from should be in yyyy-MM-dd format.\"}").build();
+				}
+				if(toDay == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"to should be in yyyy-MM-dd format.\"}").build();
+				}
+				if(toDay < fromDay){
+				  return Response.ok("{\"error\": \"to should not be before from.\"}").build();
+				}
+				else{
+				  List<Timecard> times;
+				  if(from == null && to == null){
+					  times = dl.getAllTimecard(emp_id);
+				  }else{
+					  times = dl.getTimecards(DAYS.days(dl, emp_id).between(fromDay, toDay));
+				  }
 			  
-			  if(times.isEmpty()){
-				  return Response.ok("{\"error\": \"No record found for the request.\"}").build();
-			  }
-			  Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
-			  return Response.ok(gson.toJson(times)).build();
+				  if(times.isEmpty()){
+					  return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				  }
+				  if(limit != null || cursor != null){
+					  KeysetPage<Timecard> page = page(times, Timecard::getId, limit, cursor);
+					  return Response.ok(JsonSerializers.streamPage(JsonSerializers.TIMECARD, Timecard.class, page))
+							  .tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				  }
+				  return Response.ok(JsonSerializers.streamArray(JsonSerializers.TIMECARD, Timecard.class, times))
+						  .tag(stamp.tag).lastModified(stamp.lastModified()).build();
+				}
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
  
 
+	/**
+	 * Get Timesheet: Method returns the hours worked per Employee and per Department of a company over a date
+	 * range, counting the Timecards which start on those days
+	 * @param company
+	 * @param from: first day, yyyy-MM-dd
+	 * @param to: last day, yyyy-MM-dd, inclusive
+	 * @return timecard counts and total, regular (up to 8 per day) and overtime hours of the company, of every
+	 * Department and of every Employee
+	 * 
+	 */
+	
+	@Path("timesheet")
+	@GET
+	@Produces("application/json")
+	public void getTimesheet(@Suspended AsyncResponse async,
+			@DefaultValue(companyId) @QueryParam("company") String company,
+			@QueryParam("from") String from,
+			@QueryParam("to") String to){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				long fromDay = TimestampParser.parseDate(from);
+				long toDay = TimestampParser.parseDate(to);
+				if(company.trim().isEmpty()){
+				  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
+				}
+				if(fromDay == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"from should be in yyyy-MM-dd format.\"}").build();
+				}
+				if(toDay == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"to should be in yyyy-MM-dd format.\"}").build();
+				}
+				if(toDay < fromDay){
+				  return Response.ok("{\"error\": \"to should not be before from.\"}").build();
+				}
+				if(toDay - fromDay >= Timesheet.MAX_DAYS){
+				  return Response.ok("{\"error\": \"from and to should be at most " + Timesheet.MAX_DAYS + " days apart.\"}").build();
+				}
+				dl = POOL.borrow();
+				Timesheet sheet = Timesheet.compute(POOL, dl, company, fromDay, toDay, DAYS, RULES);
+				if(sheet == null){
+				  return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				}
+				return Response.ok(sheet.write()).build();
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Export timecards: Method streams every Timecard of a company, optionally limited to those starting in a
+	 * date range, as CSV or newline-delimited JSON, gzip-compressed when the client accepts it
+	 * @param company
+	 * @param from: first day, yyyy-MM-dd, optional
+	 * @param to: last day, yyyy-MM-dd, inclusive, optional
+	 * @param format: csv or ndjson
+	 * @param acceptEncoding
+	 * @return the Timecards ordered by emp_id, as an attachment
+	 * 
+	 */
+	
+	@Path("company/timecards/export")
+	@GET
+	public void exportTimecards(@Suspended AsyncResponse async,
+			@DefaultValue(companyId) @QueryParam("company") String company,
+			@QueryParam("from") String from,
+			@QueryParam("to") String to,
+			@DefaultValue("csv") @QueryParam("format") String format,
+			@HeaderParam("Accept-Encoding") String acceptEncoding){
+		RequestExecutor.submit(async, () -> {
+			Long fromDay = from == null ? null : TimestampParser.parseDate(from);
+			Long toDay = to == null ? null : TimestampParser.parseDate(to);
+			TimecardExport.Format kind = null;
+			for(TimecardExport.Format f: TimecardExport.Format.values()){
+				if(f.name().equalsIgnoreCase(format)){
+					kind = f;
+				}
+			}
+			if(company.trim().isEmpty()){
+			  return exportError("company should not be empty.");
+			}
+			if(fromDay != null && fromDay == TimestampParser.INVALID){
+			  return exportError("from should be in yyyy-MM-dd format.");
+			}
+			if(toDay != null && toDay == TimestampParser.INVALID){
+			  return exportError("to should be in yyyy-MM-dd format.");
+			}
+			if(fromDay != null && toDay != null && toDay < fromDay){
+			  return exportError("to should not be before from.");
+			}
+			if(kind == null){
+			  return exportError("format should be csv or ndjson.");
+			}
+			boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+			// The session is borrowed while the body is written, so nothing is held past a failed request
+			Response.ResponseBuilder response = Response.ok(new TimecardExport(POOL, DAYS, company, fromDay, toDay, kind, gzip))
+					.type(kind.mediaType)
+					.header("Content-Disposition", "attachment; filename=\"timecards-" + company.replaceAll("[^A-Za-z0-9_.-]", "_")
+							+ "." + kind.name().toLowerCase() + "\"")
+					.header("Vary", "Accept-Encoding");
+			if(gzip){
+			  response.header("Content-Encoding", "gzip");
+			}
+			return response.build();
+		});
+	}
+	
+	private static Response exportError(String message){
+		return Response.ok("{\"error\": \"" + message + "\"}", MediaType.APPLICATION_JSON).build();
+	}
+	
+	
+	/**
+	 * Get weekly hours: Method returns the hours an Employee worked in the ISO week of a date, from the
+	 * incrementally maintained weekly rollup
+	 * @param emp_id
+	 * @param date: any day of the week, yyyy-MM-dd
+	 * @return week label, Monday of the week, Timecard count and hours
+	 * 
+	 */
+	
+	@Path("hours/weekly")
+	@GET
+	@Produces("application/json")
+	public void getWeeklyHours(@Suspended AsyncResponse async, @QueryParam("emp_id") int emp_id, @QueryParam("date") String date){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				long day = TimestampParser.parseDate(date);
+				if(emp_id == 0){
+				  return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				if(day == TimestampParser.INVALID){
+				  return Response.ok("{\"error\": \"date should be in yyyy-MM-dd format.\"}").build();
+				}
+				dl = POOL.borrow();
+				if(dl.getEmployee(emp_id) == null){
+				  return Response.ok("{\"error\": \"No record found for the request.\"}").build();
+				}
+				int week = WeeklyHoursRollup.week(day);
+				WeeklyHoursRollup.Weeks weeks = WEEKS.weeks(dl, emp_id);
+				JSONObject json = new JSONObject();
+				json.put("emp_id", emp_id);
+				json.put("week", WeeklyHoursRollup.label(week));
+				json.put("week_start", WeeklyHoursRollup.weekStart(week).toString());
+				json.put("timecards", weeks.timecards(week));
+				json.put("hours", Timesheet.hours(weeks.seconds(week)));
+				return Response.ok(json.toString()).build();
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Verify weekly hours: Method recomputes the weekly rollup of the company's loaded Employees from their
+	 * stored Timecards and reports every week that drifted
+	 * @param company
+	 * @return number of Employees checked and the drifted weeks
+	 * 
+	 */
+	
+	@Path("hours/weekly/verify")
+	@GET
+	@Produces("application/json")
+	public void verifyWeeklyHours(@Suspended AsyncResponse async, @DefaultValue(companyId) @QueryParam("company") String company){
+		RequestExecutor.submit(async, () -> {
+			return checkWeeklyHours(company, false);
+		});
+	}
+	
+	
+	/**
+	 * Rebuild weekly hours: Method recomputes the weekly rollup like the verification and replaces the
+	 * totals of every Employee that drifted
+	 * @param company
+	 * @return number of Employees checked and the repaired weeks
+	 * 
+	 */
+	
+	@Path("hours/weekly/rebuild")
+	@POST
+	@Produces("application/json")
+	public void rebuildWeeklyHours(@Suspended AsyncResponse async, @DefaultValue(companyId) @QueryParam("company") String company){
+		RequestExecutor.submit(async, () -> {
+			return checkWeeklyHours(company, true);
+		});
+	}
+	
+	
 	/**
 	 * Insert a Timecard: Method inserts a new record for a Timecard and returns the inserted Timecard  
 	 * @param jsonReq: emp_id, start_time, end_time
@@ -735,123 +1411,124 @@ public class CompanyServices {
 	@POST
 	@Produces("application/json")
 	@Consumes("application/json")
-	public Response insertTimecard(String jsonReq){
-		try{
-			dl = new DataLayer(environment);
-			JSONObject jsonObject = new JSONObject(jsonReq);
-			String startVal = jsonObject.getString("start_time");
-			String endVal = jsonObject.getString("end_time");
+	public void insertTimecard(@Suspended AsyncResponse async, String jsonReq){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				JSONObject jsonObject = new JSONObject(jsonReq);
+				String startVal = jsonObject.getString("start_time");
+				String endVal = jsonObject.getString("end_time");
 			
-			if(startVal.trim().isEmpty() || !startVal.matches("\\d{4}-\\d{2}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2}")){
-				return Response.ok("{\"error\": \"start_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build(); 	
-			}
-			if(endVal.trim().isEmpty() || !endVal.matches("\\d{4}-\\d{2}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2}")){
-				return Response.ok("{\"error\": \"end_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build(); 	
+				// Validate the format and parse start_time and end_time to local epoch seconds in one pass
+				long start = TimestampParser.parseDateTime(startVal);
+				if(start == TimestampParser.INVALID){
+					return Response.ok("{\"error\": \"start_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build(); 	
+				}
+				long end = TimestampParser.parseDateTime(endVal);
+				if(end == TimestampParser.INVALID){
+					return Response.ok("{\"error\": \"end_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build(); 	
+				}
+				Gson gson = JsonSerializers.TIMECARD;
+				int empId = jsonObject.optInt("emp_id");
+				if(empId == 0){
+				    return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				else{
+					// Look up the employee on an extra session while this one gets the start days of its Timecards
+					long start_day = TimecardRules.epochDay(start);
+					Employee getEmp;
+					TimecardDayIndex.Days days;
+					try(ParallelLookups lookups = new ParallelLookups(POOL, dl)){
+						ParallelLookups.Lookup<Employee> emp = lookups.submit(s -> s.getEmployee(empId));
+						days = DAYS.days(dl, empId);
+				    	
+				    	// Match the duplicate date
+				    	if(days.contains(start_day)){
+				    		  return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
+				    	}
+						getEmp = emp.get();
+					}
+		    	
+				    if(getEmp == null){
+			    	   return Response.ok("{\"error\": \"No matching emp_Id found\"}").build();
+			    	}
+				    // check the week window, 1 hour same-day span, future start, weekend and 6AM to 6PM rules
+				    String violation = RULES.checkTimecard(start, end, RULES.nowLocal());
+				    if(violation != null){
+				   		return Response.ok("{\"error\": \"" + violation + "\"}").build();
+				   	}
+				   	else{
+				   		if(!days.claim(start_day)){
+				   			return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
+				   		}
+				   		Timecard time = null;
+				   		try{
+					   		Timestamp startTime = TimecardRules.toTimestamp(start);
+					   		Timestamp endTime = TimecardRules.toTimestamp(end);
+						    time = new Timecard(startTime,endTime, empId);
+							time = dl.insertTimecard(time);
+				   		}
+				   		finally{
+				   			if(time != null && time.getId() != 0){
+				   				days.commit(time.getId(), start_day);
+				   				WEEKS.put(dl, time.getId(), empId, start, end);
+				   				VERSIONS.bump(ResourceVersions.timecards(empId));
+				   			}else{
+				   				days.unclaim(start_day);
+				   			}
+				   		}
+					    return Response.ok(gson.toJson(time)).build();
+			    	}
+				}
 			}
-			Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
-			Timecard timecard = gson.fromJson(jsonReq, Timecard.class);
-			if(timecard.getEmpId() == 0){
-			    return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
 			}
-			else{
-				Employee getEmp = dl.getEmployee(timecard.getEmpId());
-		    	
-				// Initialize start_time, end_time, and current_time
-				Date start_time = timecard.getStartTime();
-		    	Date end_time = timecard.getEndTime();
-		    	Date current_time = new Date();
-		    	
-		    	// Get list of Timecards
-		    	List<Timecard> times = dl.getAllTimecard(timecard.getEmpId());
-		    	
-		    	 	
-		    	SimpleDateFormat simpleDateformat = new SimpleDateFormat("E");
-		    	
-		    	String day_of_startTime = simpleDateformat.format(start_time).toLowerCase();
-		    	String day_of_endTime = simpleDateformat.format(end_time).toLowerCase();
-		    	
-		    	// Extract hour, minute,and second from start_time and end_time 
-		    	Calendar cal_start = Calendar.getInstance();
-		    	cal_start.setTime(start_time);
-		    	int start_hour = cal_start.get(Calendar.HOUR_OF_DAY);
-		    	int start_mins = cal_start.get(Calendar.MINUTE);
-		    	int start_sec = cal_start.get(Calendar.SECOND);
-		    	
-		    	Calendar cal_end = Calendar.getInstance();
-		    	cal_end.setTime(end_time);
-		    	int end_hour = cal_end.get(Calendar.HOUR_OF_DAY);
-		    	int end_mins = cal_end.get(Calendar.MINUTE);
-		    	int end_sec = cal_end.get(Calendar.SECOND);
-		    	
-		    	Calendar cal_cur = Calendar.getInstance();
-		    	
-		    	// Match the duplicate date
-		    	for(Timecard time: times){
-		    		cal_cur.setTime(time.getStartTime());
-		    		int cur_startDate = cal_cur.get(Calendar.DATE);
-		    		int cur_startMonth = cal_cur.get(Calendar.MONTH);
-		    		int cur_startYear = cal_cur.get(Calendar.YEAR);
-		    		
-		    		if((cur_startDate == cal_start.get(Calendar.DATE)) && 
-		    		   (cur_startMonth == cal_start.get(Calendar.MONTH)) && 
-		    		   (cur_startYear == cal_start.get(Calendar.YEAR))){
-		    			  return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
-		    		}
-		    	}
-		    	
-		    	// Get the millisecond difference of the start date and current date 
-			    long days_diff = TimeUnit.DAYS.convert((current_time.getTime()-start_time.getTime()), TimeUnit.MILLISECONDS);	
-		    	
-			    if(getEmp == null){
-		    	   return Response.ok("{\"error\": \"No matching emp_Id found\"}").build();
-		    	}
-			    // check that start date should not be more than a week older 
-		    	if(days_diff>7){
-		    	   return Response.ok("{\"error\": \"start_time should be upto a week older than current date\"}").build();	
-			   	}
-		    	// check that end_time should be at least an hour greater than start date and should be on same date 
-		    	if((end_time.getTime()-start_time.getTime())<3600000 
-		    			|| cal_end.get(Calendar.DATE) != cal_start.get(Calendar.DATE)
-		    			|| cal_end.get(Calendar.MONTH) != cal_start.get(Calendar.MONTH)
-		    			|| cal_end.get(Calendar.YEAR) != cal_start.get(Calendar.YEAR)){
-		    	   
-		    		return Response.ok("{\"error\": \"end_time should be atleast 1 hour greater than the start_time on same day\"}").build();	
-		    	}
-		    	//Future date validation
-		    	if(start_time.compareTo(current_time)>0){
-			    	   return Response.ok("{\"error\": \"start_time should not be a future date\"}").build();	
-			    }
-			   	if(day_of_startTime.equals("sat") || 
-			   	   day_of_startTime.equals("sun") || 
-			   	   day_of_endTime.equals("sat") || 
-			   	   day_of_endTime.equals("sun") ){
-			   		
-			   		return Response.ok("{\"error\": \"start_time and end_time should not be a saturday or sunday\"}").build();
-			   	}
-			   	// check that start_time and end_time are in between 6AM to 6PM
-			   	if((start_hour < 6) || 
-			   	   (start_hour >= 18 && !(start_hour == 18 && start_mins == 0 && start_sec == 0)) || 
-			   	   (end_hour < 6) || 
-			   	   (end_hour >= 18 && !(end_hour == 18 && end_mins == 0 && end_sec == 0))){
-			   		return Response.ok("{\"error\": \"start_time and end_time should be in between 06:00:00 and 18:00:00 inclusive\"}").build();
-			   	}
-			   	else{
-			   		Timestamp startTime = new Timestamp(start_time.getTime());
-			   		Timestamp endTime = new Timestamp(end_time.getTime());
-				    Timecard time = new Timecard(startTime,endTime, timecard.getEmpId());
-					time = dl.insertTimecard(time);
-				    return Response.ok(gson.toJson(time)).build();
-		    	}
+			finally{
+				POOL.release(dl);
 			}
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+		});
 	}
 
+	/**
+	 * Insert Timecards in bulk: Method validates every Timecard with the rules of the single insert and
+	 * inserts the accepted ones in batches
+	 * @param body: a JSON array of {emp_id, start_time, end_time}, or one such object per line
+	 * @return inserted and failed counts and the timecard_id or error of every entry, by index
+	 * 
+	 */
+	
+	@Path("timecards/batch")
+	@POST
+	@Produces("application/json")
+	@Consumes({"application/json", "application/x-ndjson"})
+	public void insertTimecards(@Suspended AsyncResponse async, InputStream body){
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				TimecardBatch batch = TimecardBatch.read(new InputStreamReader(body, StandardCharsets.UTF_8));
+				dl = POOL.borrow();
+				try{
+					batch.insert(dl, DAYS, WEEKS, RULES);
+				}
+				finally{
+					VERSIONS.bump(ResourceVersions.TIMECARDS);
+				}
+				return Response.ok(batch.results()).build();
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
+	
+	
 	/**
 	 * Update Timecard: Method updates the existing Timecard details and returns the updated Timecard 
 	 * @param timecard_id
@@ -866,128 +1543,97 @@ public class CompanyServices {
 	@PUT
 	@Produces("application/json")
 	@Consumes("application/x-www-form-urlencoded")
-	public Response updateTimecard(@FormParam("timecard_id") int timecard_id,
+	public void updateTimecard(@Suspended AsyncResponse async, @FormParam("timecard_id") int timecard_id,
 			@FormParam("emp_id") int emp_id,
 			@FormParam("start_time") String start_time,
 			@FormParam("end_time") String end_time){
-		try{
-			dl = new DataLayer(environment);
-			List<Timecard> times = dl.getAllTimecard(emp_id);
+		RequestExecutor.submit(async, () -> {
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
 			
-			if(timecard_id == 0){
-			    return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
-			}
-			if(emp_id == 0){
-			    return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
-			}
-			if(start_time.trim().isEmpty() || !start_time.matches("\\d{4}-\\d{2}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2}")){
-			    return Response.ok("{\"error\": \"start_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build();	
-			}
-			if(end_time.trim().isEmpty() || !end_time.matches("\\d{4}-\\d{2}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2}")){
-			    return Response.ok("{\"error\": \"end_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build();	
-			}
-			else{
-				Employee getEmp = dl.getEmployee(emp_id);
-				
-				// Store startTime, endTime, and current_time
-		    	Date startTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(start_time);
-		    	Date endTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(end_time);
-		    	Date current_time = new Date();
-		    	
-		    	SimpleDateFormat simpleDateformat = new SimpleDateFormat("E");
-		    	String day_of_startTime = simpleDateformat.format(startTime).toLowerCase();
-		    	String day_of_endTime = simpleDateformat.format(endTime).toLowerCase();
-	
-		    	// Extract hour, minute and second from start_time and end_time
-		    	Calendar cal_start = Calendar.getInstance();
-		    	cal_start.setTime(startTime);
-		    	int start_hour = cal_start.get(Calendar.HOUR_OF_DAY);
-		    	int start_mins = cal_start.get(Calendar.MINUTE);
-		    	int start_sec = cal_start.get(Calendar.SECOND);
-		    	
-		    	Calendar cal_end = Calendar.getInstance();
-		    	cal_end.setTime(endTime);
-		    	int end_hour = cal_end.get(Calendar.HOUR_OF_DAY);
-		    	int end_mins = cal_end.get(Calendar.MINUTE);
-		    	int end_sec = cal_end.get(Calendar.SECOND);
-			    
-		    	Calendar cal_cur = Calendar.getInstance();
+				if(timecard_id == 0){
+				    return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
+				}
+				if(emp_id == 0){
+				    return Response.ok("{\"error\": \"emp_id should not be empty.\"}").build();	
+				}
+				// Validate the format and parse start_time and end_time to local epoch seconds in one pass
+				long start = TimestampParser.parseDateTime(start_time);
+				long end = TimestampParser.parseDateTime(end_time);
+				if(start == TimestampParser.INVALID){
+				    return Response.ok("{\"error\": \"start_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build();	
+				}
+				if(end == TimestampParser.INVALID){
+				    return Response.ok("{\"error\": \"end_date should be in yyyy-MM-dd HH:mm:ss format.\"}").build();	
+				}
+				else{
+					Employee getEmp = dl.getEmployee(emp_id);
+					TimecardDayIndex.Days days = DAYS.days(dl, emp_id);
 		    	
-		    	for(Timecard time: times){
-		    		cal_cur.setTime(time.getStartTime());
-		    		int cur_startDate = cal_cur.get(Calendar.DATE);
-		    		int cur_startMonth = cal_cur.get(Calendar.MONTH);
-		    		int cur_startYear = cal_cur.get(Calendar.YEAR);
-		    		
-		    		if((cur_startDate == cal_start.get(Calendar.DATE)) && 
-		    		   (cur_startMonth == cal_start.get(Calendar.MONTH)) && 
-		    		   (cur_startYear == cal_start.get(Calendar.YEAR))){
-		    			return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
-		    		}
-		    	}
+			    	long start_day = TimecardRules.epochDay(start);
+			    	if(days.contains(start_day)){
+			    		return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
+			    	}
 		    	
-			    long days_diff = TimeUnit.DAYS.convert((current_time.getTime()-startTime.getTime()), TimeUnit.MILLISECONDS);	
-		    	if(getEmp == null){
-		    	   return Response.ok("{\"error\": \"No matching emp_Id found\"}").build();
-		    	}
-		    	// Check that current date is not more than 7 days after of start_time 
-		    	if(days_diff>7){
-		    	   return Response.ok("{\"error\": \"start_time should be upto a week older than current date\"}").build();	
-			   	}
-		    	if((endTime.getTime()-startTime.getTime())<3600000 || 
-		    		cal_end.get(Calendar.DATE) != cal_start.get(Calendar.DATE)|| 
-		    		cal_end.get(Calendar.MONTH) != cal_start.get(Calendar.MONTH) || 
-		    		cal_end.get(Calendar.YEAR) != cal_start.get(Calendar.YEAR)){
-		    	   
-		    		return Response.ok("{\"error\": \"end_time should be atleast 1 hour greater than the start_time on same day\"}").build();	
-		    	}
-		    	// Future date validation
-		    	if(startTime.compareTo(current_time)>0){
-			    	   return Response.ok("{\"error\": \"start_time should not be a future date\"}").build();	
-			    }
-		    	// Check for weekends
-			   	if(day_of_startTime.equals("sat") ||
-			   	   day_of_startTime.equals("sun") || 
-			   	   day_of_endTime.equals("sat") || 
-			   	   day_of_endTime.equals("sun") ){
-			   		
-			   		 return Response.ok("{\"error\": \"start_time and end_time should not be a saturday or sunday\"}").build();
-			   	}
-			   	// Check that start_time and end_time should be between 6AM to 6PM 
-			   	if((start_hour < 6) || 
-			   	   (start_hour >= 18 && !(start_hour == 18 && start_mins == 0 && start_sec == 0)) || 
-			   	   (end_hour < 6) || 
-			   	   (end_hour >= 18 && !(end_hour == 18 && end_mins == 0 && end_sec == 0))){
-			   		return Response.ok("{\"error\": \"start_time and end_time should be in between 06:00:00 and 18:00:00 inclusive\"}").build();
-			   	}
-			   	else{
-			   		Timestamp startTimeStamp = new Timestamp(startTime.getTime());
-			   		Timestamp endTimeStamp = new Timestamp(endTime.getTime());
+			    	if(getEmp == null){
+			    	   return Response.ok("{\"error\": \"No matching emp_Id found\"}").build();
+			    	}
+			    	// Check the week window, 1 hour same-day span, future start, weekend and 6AM to 6PM rules
+			    	String violation = RULES.checkTimecard(start, end, RULES.nowLocal());
+			    	if(violation != null){
+				   		return Response.ok("{\"error\": \"" + violation + "\"}").build();
+				   	}
+				   	else{
+				   		Timestamp startTimeStamp = TimecardRules.toTimestamp(start);
+				   		Timestamp endTimeStamp = TimecardRules.toTimestamp(end);
 				    
-			   		for(Timecard t:times){
-						if(t.getId()==timecard_id){
-							Timecard timecard = dl.getTimecard(timecard_id);
-							timecard.setEmpId(emp_id);
-							timecard.setStartTime(startTimeStamp);
-							timecard.setEndTime(endTimeStamp);
+				   		if(archived(timecard_id)){
+				   			return closedPeriod(timecard_id);
+				   		}
+				   		if(days.owns(timecard_id)){
+				   			if(!days.claim(start_day)){
+				   				return Response.ok("{\"error\": \"Exiting record with same start day\"}").build();
+				   			}
+				   			boolean updated = false;
+				   			try{
+								Timecard timecard = dl.getTimecard(timecard_id);
+								timecard.setEmpId(emp_id);
+								timecard.setStartTime(startTimeStamp);
+								timecard.setEndTime(endTimeStamp);
 							
-							timecard = dl.updateTimecard(timecard);
-							// Set date to yyyy-MM-dd HH:mm:ss format
-							Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
-						    return Response.ok(gson.toJson(timecard)).build();	
-						    
-						}
-			   		}
-					return Response.ok("{\"error\": \"No matching timecard_id " + timecard_id + " found\"}").build();
-		    	}
-			}	
-		}
-		catch(Exception e){
-			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
-		}
-		finally{
-			dl.close();
-		}
+								timecard = dl.updateTimecard(timecard);
+								updated = timecard != null;
+								if(!updated && archived(timecard_id)){
+									// Sealed since the check above
+									return closedPeriod(timecard_id);
+								}
+								// Set date to yyyy-MM-dd HH:mm:ss format
+								Gson gson = JsonSerializers.TIMECARD;
+							    return Response.ok(gson.toJson(timecard)).build();	
+				   			}
+				   			finally{
+				   				if(updated){
+				   					days.commit(timecard_id, start_day);
+				   					WEEKS.put(dl, timecard_id, emp_id, start, end);
+				   					VERSIONS.bump(ResourceVersions.timecards(emp_id), ResourceVersions.timecard(timecard_id));
+				   				}else{
+				   					days.unclaim(start_day);
+				   				}
+				   			}
+				   		}
+						return Response.ok("{\"error\": \"No matching timecard_id " + timecard_id + " found\"}").build();
+			    	}
+				}	
+			}
+			catch(Exception e){
+				failed(dl, e);
+				return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
 	}
 
 	
@@ -1002,27 +1648,89 @@ public class CompanyServices {
 	@Path("timecard")
 	@DELETE
 	@Produces("application/json")
-	public Response deleteTimecard(@QueryParam("timecard_id") int timecard_id){
+	public void deleteTimecard(@Suspended AsyncResponse async, @QueryParam("timecard_id") int timecard_id){
+		RequestExecutor.submit(async, () -> {
 			 
+			CompanyStore dl = null;
+			try{
+				dl = POOL.borrow();
+				if(timecard_id == 0){
+				  return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
+				}
+				else{
+				  int rowsDeleted = dl.deleteTimecard(timecard_id);
+				  VERSIONS.bump(ResourceVersions.TIMECARDS);
+				  if(rowsDeleted >= 1){
+					 DAYS.removeTimecard(timecard_id);
+					 WEEKS.removeTimecard(timecard_id);
+				     return Response.ok("{\"success\": \"Timecard "+ timecard_id +" deleted.\"}").build();
+				  }else{
+				     return Response.ok("{\"error\": \"Timecard "+ timecard_id +" does not exist.\"}").build();
+				  }
+				}
+			}
+			catch(Exception e){
+				  failed(dl, e);
+				  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			}
+			finally{
+				POOL.release(dl);
+			}
+		});
+	}
+
+	
+	// Page of records after the cursor; a request with only a cursor gets the default page size
+	private static <T> KeysetPage<T> page(List<T> records, ToIntFunction<T> id, Integer limit, Integer cursor){
+		return KeysetPage.of(records, id, cursor == null ? KeysetPage.NO_CURSOR : cursor,
+				limit == null ? KeysetPage.DEFAULT_LIMIT : limit);
+	}
+	
+	// 304 Not Modified when the client's copy carries the current version, otherwise null
+	private static Response notModified(Request request, ResourceVersions.Stamp stamp){
+		Date lastModified = stamp.lastModified();
+		Response.ResponseBuilder builder = lastModified == null ? request.evaluatePreconditions(stamp.tag)
+				: request.evaluatePreconditions(lastModified, stamp.tag);
+		return builder == null ? null : builder.build();
+	}
+	
+	private static boolean archived(int timecardId){
+		return ARCHIVE != null && ARCHIVE.contains(timecardId);
+	}
+
+	private static Response closedPeriod(int timecardId){
+		return Response.ok("{\"error\": \"timecard_id " + timecardId + " is in a closed period and cannot be changed.\"}").build();
+	}
+
+	// Drop the session of a failed request unless the request itself was at fault: store calls throw nothing
+	// checked, and bad JSON, parameters or input leave the session as healthy as it was
+	private static void failed(CompanyStore dl, Exception e){
+		if(e instanceof RuntimeException && !(e instanceof JSONException) && !(e instanceof JsonParseException)
+				&& !(e instanceof IllegalArgumentException) && !(e instanceof NullPointerException)){
+			POOL.invalidate(dl);
+		}
+	}
+	
+	// A session of the primary store: the EmbeddedDatabase or the companydata database
+	private static CompanyStore openStore() throws Exception{
+		return EmbeddedDatabase.isEmbedded(environment) ? new EmbeddedStore(environment) : new DataLayerStore(environment);
+	}
+	
+	private static Response checkWeeklyHours(String company, boolean repair){
+		CompanyStore dl = null;
 		try{
-			dl = new DataLayer(environment);
-			if(timecard_id == 0){
-			  return Response.ok("{\"error\": \"timecard_id should not be empty.\"}").build();	
-			}
-			else{
-			  int rowsDeleted = dl.deleteTimecard(timecard_id);
-			  if(rowsDeleted >= 1){
-			     return Response.ok("{\"success\": \"Timecard "+ timecard_id +" deleted.\"}").build();
-			  }else{
-			     return Response.ok("{\"error\": \"Timecard "+ timecard_id +" does not exist.\"}").build();
-			  }
+			if(company.trim().isEmpty()){
+			  return Response.ok("{\"error\": \"company should not be empty.\"}").build();	
 			}
+			dl = POOL.borrow();
+			return Response.ok(WEEKS.verify(dl, dl.getAllEmployee(company), repair).toString()).build();
 		}
 		catch(Exception e){
-			  return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
+			failed(dl, e);
+			return Response.ok("{\"error\":\"" + e.getMessage() + "\"}").build();
 		}
 		finally{
-			dl.close();
+			POOL.release(dl);
 		}
 	}
 }
@@ -0,0 +1,115 @@
+package Timecard;
+
+import java.util.List;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * CompanyStore interface is the storage contract CompanyServices works against. It mirrors the
+ * companydata DataLayer operations and adds set-based operations for cascading deletes, which a
+ * store can carry out in a constant number of statements instead of one round trip per row.
+ *
+ */
+
+interface CompanyStore {
+
+	/**
+	 * Receives the Timecards of an Employee without Timecard records being built
+	 *
+	 */
+	interface TimecardVisitor {
+		void visit(int timecardId, long startMillis, long endMillis);
+	}
+
+	int deleteCompany(String company);
+
+	Department getDepartment(String company, int deptId);
+
+	List<Department> getAllDepartment(String company);
+
+	Department insertDepartment(Department department);
+
+	Department updateDepartment(Department department);
+
+	int deleteDepartment(String company, int deptId);
+
+	Employee getEmployee(int empId);
+
+	List<Employee> getAllEmployee(String company);
+
+	Employee insertEmployee(Employee employee);
+
+	Employee updateEmployee(Employee employee);
+
+	int deleteEmployee(int empId);
+
+	/**
+	 * Insert a batch of Employees
+	 * @param employees
+	 * @return the inserted Employees in the order given, with null where the store rejected a row
+	 * @throws PartialInsertException when a store without transactions stopped part way; it holds the
+	 * Employees stored before the failing row
+	 *
+	 */
+	List<Employee> insertEmployees(List<Employee> employees);
+
+	Timecard getTimecard(int timecardId);
+
+	List<Timecard> getAllTimecard(int empId);
+
+	/**
+	 * Visit every Timecard of an Employee, for aggregations which need only the times
+	 * @param empId
+	 * @param visitor
+	 *
+	 */
+	void forEachTimecard(int empId, TimecardVisitor visitor);
+
+	/**
+	 * Read the given Timecards
+	 * @param timecardIds
+	 * @return the Timecards found, in the order given
+	 *
+	 */
+	List<Timecard> getTimecards(int[] timecardIds);
+
+	Timecard insertTimecard(Timecard timecard);
+
+	Timecard updateTimecard(Timecard timecard);
+
+	int deleteTimecard(int timecardId);
+
+	/**
+	 * Insert a batch of Timecards
+	 * @param timecards
+	 * @return the inserted Timecards in the order given, with null where the store rejected a row
+	 * @throws PartialInsertException when a store without transactions stopped part way; it holds the
+	 * Timecards stored before the failing row
+	 *
+	 */
+	List<Timecard> insertTimecards(List<Timecard> timecards);
+
+	/**
+	 * Delete every Timecard of the given Employees. Not atomic on the companydata DataLayer, which has no
+	 * transactions: a failure part way leaves the Timecards deleted before it deleted
+	 * @param empIds
+	 * @return the number of Timecards deleted
+	 * @throws IllegalStateException when a row fails, saying how many were deleted before it
+	 *
+	 */
+	int deleteTimecardsOfEmployees(int[] empIds);
+
+	/**
+	 * Delete the given Employees, whose Timecards must already be gone. Not atomic on the companydata
+	 * DataLayer, like deleteTimecardsOfEmployees
+	 * @param empIds
+	 * @return the number of Employees deleted
+	 * @throws IllegalStateException when a row fails, saying how many were deleted before it
+	 *
+	 */
+	int deleteEmployees(int[] empIds);
+
+	void close();
+}
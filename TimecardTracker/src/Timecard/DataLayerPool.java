@@ -0,0 +1,256 @@
+package Timecard;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.json.JSONObject;
+
+/**
+ * DataLayerPool class keeps a bounded set of open CompanyStore sessions which the CompanyServices endpoints
+ * borrow and give back, instead of opening and closing a new CompanyStore connection on every request.
+ *
+ * Sizing and timeouts are read from system properties (timecard.pool.*) so they can be tuned per
+ * deployment without a rebuild.
+ *
+ */
+
+final class DataLayerPool {
+
+	private static final String PREFIX = "timecard.pool.";
+
+	private final Callable<CompanyStore> factory;
+	private final Predicate<CompanyStore> healthCheck;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutNanos;
+	private final long validateAfterNanos;
+	private final long borrowTimeoutMillis;
+
+	// Idle sessions, most recently used first so that the tail ages out
+	private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<Idle>();
+	private final Set<CompanyStore> leased = ConcurrentHashMap.newKeySet();
+	private final Semaphore permits;
+	private final ScheduledExecutorService evictor;
+
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong destroyed = new AtomicLong();
+	private final AtomicLong failedChecks = new AtomicLong();
+	private final AtomicLong waitNanosTotal = new AtomicLong();
+	private final AtomicLong waitNanosMax = new AtomicLong();
+	private final AtomicLong peakInUse = new AtomicLong();
+
+	DataLayerPool(Callable<CompanyStore> factory, Predicate<CompanyStore> healthCheck){
+		this.factory = factory;
+		this.healthCheck = healthCheck;
+		this.maxSize = Math.max(1, Integer.getInteger(PREFIX + "maxSize", 16));
+		this.minSize = Math.min(maxSize, Math.max(0, Integer.getInteger(PREFIX + "minSize", 2)));
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(PREFIX + "idleTimeoutMillis", 300000L));
+		this.validateAfterNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(PREFIX + "validateAfterMillis", 30000L));
+		this.borrowTimeoutMillis = Long.getLong(PREFIX + "borrowTimeoutMillis", 5000L);
+		this.permits = new Semaphore(maxSize, true);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "datalayer-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		// Open minSize sessions now rather than on the first evictor run, a whole period away
+		maintain();
+		long period = Math.max(1000L, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2);
+		evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a session, waiting up to the configured borrow timeout when all sessions are in use
+	 * @return an open session which must be handed back through release()
+	 * @throws Exception when the pool stays saturated for the whole timeout or a new session cannot be opened
+	 *
+	 */
+	CompanyStore borrow() throws Exception{
+		long start = System.nanoTime();
+		if(!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)){
+			timeouts.incrementAndGet();
+			throw new Exception("DataLayer pool exhausted after waiting " + borrowTimeoutMillis + " ms");
+		}
+		return lease(start);
+	}
+
+	/**
+	 * Borrow a session only if one is available right away, e.g. for optional extra parallelism
+	 * @return an open session which must be handed back through release(), or null when all are in use
+	 * @throws Exception when a new session cannot be opened
+	 *
+	 */
+	CompanyStore tryBorrow() throws Exception{
+		long start = System.nanoTime();
+		if(!permits.tryAcquire()){
+			return null;
+		}
+		return lease(start);
+	}
+
+	// Hand out an idle or new session for an acquired permit
+	private CompanyStore lease(long start) throws Exception{
+		try{
+			CompanyStore dl = takeIdle();
+			if(dl == null){
+				dl = factory.call();
+				created.incrementAndGet();
+			}
+			leased.add(dl);
+			recordBorrow(System.nanoTime() - start);
+			return dl;
+		}
+		catch(Exception | Error e){
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Give a borrowed session back to the pool. Null, already released and invalidated sessions are ignored
+	 * so the method is safe to call from a finally block after invalidate() on the failure path.
+	 * @param dl
+	 *
+	 */
+	void release(CompanyStore dl){
+		if(dl == null || !leased.remove(dl)){
+			return;
+		}
+		idle.offerFirst(new Idle(dl, System.nanoTime()));
+		permits.release();
+	}
+
+	/**
+	 * Close a borrowed session which is known to be broken, or which was in use when the store failed,
+	 * instead of returning it to the pool
+	 * @param dl
+	 *
+	 */
+	void invalidate(CompanyStore dl){
+		if(dl == null || !leased.remove(dl)){
+			return;
+		}
+		destroy(dl);
+		permits.release();
+	}
+
+	/**
+	 * Pool saturation and wait-time figures
+	 * @return JSON object with the current pool statistics
+	 *
+	 */
+	JSONObject stats(){
+		long count = borrowed.get();
+		int inUse = leased.size();
+		JSONObject json = new JSONObject();
+		json.put("min_size", minSize);
+		json.put("max_size", maxSize);
+		json.put("in_use", inUse);
+		json.put("idle", idle.size());
+		json.put("peak_in_use", peakInUse.get());
+		json.put("saturation", (double) inUse / maxSize);
+		json.put("waiting", permits.getQueueLength());
+		json.put("borrowed", count);
+		json.put("timeouts", timeouts.get());
+		json.put("created", created.get());
+		json.put("destroyed", destroyed.get());
+		json.put("failed_checks", failedChecks.get());
+		json.put("wait_ms_avg", count == 0 ? 0.0 : waitNanosTotal.get() / (double) count / 1000000.0);
+		json.put("wait_ms_max", waitNanosMax.get() / 1000000.0);
+		return json;
+	}
+
+	// Pop idle sessions until a usable one is found, closing expired and unhealthy ones on the way
+	private CompanyStore takeIdle(){
+		Idle entry;
+		while((entry = idle.pollFirst()) != null){
+			long idleFor = System.nanoTime() - entry.since;
+			if(idleFor > idleTimeoutNanos){
+				destroy(entry.dl);
+				continue;
+			}
+			if(idleFor > validateAfterNanos && !isHealthy(entry.dl)){
+				failedChecks.incrementAndGet();
+				destroy(entry.dl);
+				continue;
+			}
+			return entry.dl;
+		}
+		return null;
+	}
+
+	private boolean isHealthy(CompanyStore dl){
+		try{
+			return healthCheck.test(dl);
+		}
+		catch(Exception e){
+			return false;
+		}
+	}
+
+	private void recordBorrow(long waitNanos){
+		borrowed.incrementAndGet();
+		waitNanosTotal.addAndGet(waitNanos);
+		waitNanosMax.accumulateAndGet(waitNanos, Math::max);
+		peakInUse.accumulateAndGet(leased.size(), Math::max);
+	}
+
+	// Evict sessions idle past the timeout (keeping minSize open) and top the pool back up to minSize
+	private void maintain(){
+		try{
+			long now = System.nanoTime();
+			Iterator<Idle> it = idle.descendingIterator();
+			while(it.hasNext() && idle.size() + leased.size() > minSize){
+				Idle entry = it.next();
+				if(now - entry.since > idleTimeoutNanos && idle.removeLastOccurrence(entry)){
+					destroy(entry.dl);
+				}
+			}
+			while(idle.size() + leased.size() < minSize && permits.tryAcquire()){
+				try{
+					idle.offerLast(new Idle(factory.call(), System.nanoTime()));
+					created.incrementAndGet();
+				}
+				finally{
+					permits.release();
+				}
+			}
+		}
+		catch(Exception e){
+			// the next run retries; a failing database must not kill the evictor thread
+		}
+	}
+
+	private void destroy(CompanyStore dl){
+		destroyed.incrementAndGet();
+		try{
+			dl.close();
+		}
+		catch(Exception e){
+			// already broken, nothing left to release
+		}
+	}
+
+	private static final class Idle {
+		final CompanyStore dl;
+		final long since;
+
+		Idle(CompanyStore dl, long since){
+			this.dl = dl;
+			this.since = since;
+		}
+	}
+}
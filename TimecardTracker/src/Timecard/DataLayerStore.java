@@ -0,0 +1,202 @@
+package Timecard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import companydata.DataLayer;
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * DataLayerStore class backs a CompanyStore with one companydata DataLayer connection.
+ *
+ * The DataLayer only offers single-row deletes and no transactions, so the set-based operations run
+ * row by row over this one connection; callers still issue a constant number of store calls. They are
+ * not atomic: the ids are gathered first, and the first failing row stops the operation with an
+ * exception that reports how far it got, leaving the rows before it deleted. Batch inserts are not
+ * atomic either; they stop at the first failing row with a PartialInsertException holding the rows
+ * stored before it.
+ *
+ */
+
+final class DataLayerStore implements CompanyStore {
+
+	private final DataLayer dl;
+
+	DataLayerStore(String environment) throws Exception{
+		this.dl = new DataLayer(environment);
+	}
+
+	@Override
+	public int deleteCompany(String company){
+		return dl.deleteCompany(company);
+	}
+
+	@Override
+	public Department getDepartment(String company, int deptId){
+		return dl.getDepartment(company, deptId);
+	}
+
+	@Override
+	public List<Department> getAllDepartment(String company){
+		return dl.getAllDepartment(company);
+	}
+
+	@Override
+	public Department insertDepartment(Department department){
+		return dl.insertDepartment(department);
+	}
+
+	@Override
+	public Department updateDepartment(Department department){
+		return dl.updateDepartment(department);
+	}
+
+	@Override
+	public int deleteDepartment(String company, int deptId){
+		return dl.deleteDepartment(company, deptId);
+	}
+
+	@Override
+	public Employee getEmployee(int empId){
+		return dl.getEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> getAllEmployee(String company){
+		return dl.getAllEmployee(company);
+	}
+
+	@Override
+	public Employee insertEmployee(Employee employee){
+		return dl.insertEmployee(employee);
+	}
+
+	@Override
+	public Employee updateEmployee(Employee employee){
+		return dl.updateEmployee(employee);
+	}
+
+	@Override
+	public int deleteEmployee(int empId){
+		return dl.deleteEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> insertEmployees(List<Employee> employees){
+		List<Employee> inserted = new ArrayList<Employee>(employees.size());
+		for(Employee emp: employees){
+			try{
+				inserted.add(dl.insertEmployee(emp));
+			}
+			catch(RuntimeException e){
+				throw new PartialInsertException("employee", inserted, employees.size(), e);
+			}
+		}
+		return inserted;
+	}
+
+	@Override
+	public Timecard getTimecard(int timecardId){
+		return dl.getTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> getAllTimecard(int empId){
+		return dl.getAllTimecard(empId);
+	}
+
+	@Override
+	public void forEachTimecard(int empId, TimecardVisitor visitor){
+		for(Timecard time: dl.getAllTimecard(empId)){
+			visitor.visit(time.getId(), time.getStartTime().getTime(), time.getEndTime().getTime());
+		}
+	}
+
+	@Override
+	public List<Timecard> getTimecards(int[] timecardIds){
+		List<Timecard> found = new ArrayList<Timecard>(timecardIds.length);
+		for(int timecardId: timecardIds){
+			Timecard time = dl.getTimecard(timecardId);
+			if(time != null){
+				found.add(time);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public Timecard insertTimecard(Timecard timecard){
+		return dl.insertTimecard(timecard);
+	}
+
+	@Override
+	public Timecard updateTimecard(Timecard timecard){
+		return dl.updateTimecard(timecard);
+	}
+
+	@Override
+	public int deleteTimecard(int timecardId){
+		return dl.deleteTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> insertTimecards(List<Timecard> timecards){
+		List<Timecard> inserted = new ArrayList<Timecard>(timecards.size());
+		for(Timecard time: timecards){
+			try{
+				inserted.add(dl.insertTimecard(time));
+			}
+			catch(RuntimeException e){
+				throw new PartialInsertException("timecard", inserted, timecards.size(), e);
+			}
+		}
+		return inserted;
+	}
+
+	@Override
+	public int deleteTimecardsOfEmployees(int[] empIds){
+		List<Integer> timecardIds = new ArrayList<Integer>();
+		for(int empId: empIds){
+			for(Timecard time: dl.getAllTimecard(empId)){
+				timecardIds.add(time.getId());
+			}
+		}
+		int deleted = 0;
+		for(int i = 0; i < timecardIds.size(); i++){
+			try{
+				deleted += dl.deleteTimecard(timecardIds.get(i));
+			}
+			catch(RuntimeException e){
+				throw stopped("timecard_id", timecardIds.get(i), i, timecardIds.size(), e);
+			}
+		}
+		return deleted;
+	}
+
+	@Override
+	public int deleteEmployees(int[] empIds){
+		int deleted = 0;
+		for(int i = 0; i < empIds.length; i++){
+			try{
+				deleted += dl.deleteEmployee(empIds[i]);
+			}
+			catch(RuntimeException e){
+				throw stopped("emp_id", empIds[i], i, empIds.length, e);
+			}
+		}
+		return deleted;
+	}
+
+	// Report how far a row-by-row delete got before a row failed
+	private static IllegalStateException stopped(String key, int id, int done, int total, RuntimeException cause){
+		return new IllegalStateException("Delete stopped at " + key + " " + id + " after " + done + " of " + total
+				+ " rows; the rows before it are deleted. " + cause.getMessage(), cause);
+	}
+
+	@Override
+	public void close(){
+		dl.close();
+	}
+}
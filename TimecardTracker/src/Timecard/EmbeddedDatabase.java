@@ -0,0 +1,1121 @@
+package Timecard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONObject;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * EmbeddedDatabase class keeps Departments, Employees and Timecards in memory, in primitive-keyed maps
+ * with secondary indexes by company and by employee, as an alternative to the companydata database for
+ * read-heavy deployments and for testing. Timecards are held per employee in TimecardColumns, to the
+ * second. CompanyServices uses it when its environment is "embedded", with the data in the directory
+ * named by timecard.embedded.dir, or "embedded:<directory>"; an empty directory keeps the data in
+ * memory only.
+ *
+ * Every write goes to a write-ahead log before it is applied. The log is folded into a snapshot every
+ * timecard.embedded.snapshotEvery records and at shutdown, so a restart loads the snapshot and replays
+ * the short log behind it. Reads share a lock and writes hold it exclusively. A snapshot holds the lock
+ * only to copy the records and start a new log; it is written after the lock is released. The foreign keys of the
+ * companydata schema hold: a Department with Employees or an Employee with Timecards is not deleted.
+ *
+ */
+
+final class EmbeddedDatabase {
+
+	static final String ENVIRONMENT = "embedded";
+
+	private static final String PREFIX = "timecard.embedded.";
+	private static final long SNAPSHOT_EVERY = Math.max(1L, Long.getLong(PREFIX + "snapshotEvery", 100000L));
+	// Force each commit to disk; turn off for tests and throwaway data
+	private static final boolean SYNC = Boolean.parseBoolean(System.getProperty(PREFIX + "sync", "true"));
+
+	private static final String SNAPSHOT = "snapshot.dat";
+	private static final String LOG = "wal.log";
+	// The log of the writes a snapshot being written holds, deleted once it is in place
+	private static final String OLD_LOG = "wal.log.old";
+
+	// Record types of the log and the snapshot
+	private static final byte PUT_DEPARTMENT = 1;
+	private static final byte DELETE_DEPARTMENT = 2;
+	private static final byte PUT_EMPLOYEE = 3;
+	private static final byte DELETE_EMPLOYEE = 4;
+	private static final byte PUT_TIMECARD = 5;
+	private static final byte DELETE_TIMECARD = 6;
+	private static final byte NEXT_IDS = 7;
+
+	// One database per environment, shared by all its sessions
+	private static final Map<String, EmbeddedDatabase> OPEN = new HashMap<String, EmbeddedDatabase>();
+
+	/**
+	 * Runs a write while the write lock is held
+	 *
+	 */
+	private interface Write<T> {
+		T run() throws IOException;
+	}
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final IntObjectHashMap<Department> departments = new IntObjectHashMap<Department>();
+	private final IntObjectHashMap<Employee> employees = new IntObjectHashMap<Employee>();
+
+	// dept_ids of each company
+	private final Map<String, IntLongHashMap> departmentsByCompany = new HashMap<String, IntLongHashMap>();
+	// emp_ids of each company, mapped to their dept_id
+	private final Map<String, IntLongHashMap> employeesByCompany = new HashMap<String, IntLongHashMap>();
+	// Number of Employees of each Department
+	private final IntLongHashMap employeesPerDepartment = new IntLongHashMap();
+	// Timecards of each Employee, to the second, and the emp_id of each timecard_id (0 for none)
+	private final IntObjectHashMap<TimecardColumns> timecardsByEmployee = new IntObjectHashMap<TimecardColumns>();
+	private int[] employeeOfTimecard = new int[1024];
+	private int timecardCount;
+	// Columns the current write or load appended to out of start order
+	private final List<TimecardColumns> unsorted = new ArrayList<TimecardColumns>();
+
+	private int nextDepartmentId = 1;
+	private int nextEmployeeId = 1;
+	private int nextTimecardId = 1;
+
+	private final Path directory;
+	// Replaced when a snapshot starts
+	private WriteAheadLog log;
+	private boolean closed;
+
+	// Held from copying the records until the snapshot is in place, so snapshots never overlap
+	private final ReentrantLock snapshotting = new ReentrantLock();
+	private final AtomicLong snapshots = new AtomicLong();
+	private final AtomicLong snapshotFailures = new AtomicLong();
+	// Log length which triggers the next snapshot
+	private long snapshotAt = SNAPSHOT_EVERY;
+
+	// Package-private so tests can load a directory again as a restart would
+	EmbeddedDatabase(Path directory) throws IOException{
+		this.directory = directory;
+		if(directory == null){
+			this.log = null;
+			return;
+		}
+		Files.createDirectories(directory);
+		WriteAheadLog.replay(directory.resolve(SNAPSHOT), this::apply);
+		if(Files.exists(directory.resolve(OLD_LOG))){
+			// Opened to cut a tail torn while the log was being added to, before the next snapshot adds to it again
+			new WriteAheadLog(directory.resolve(OLD_LOG), false, this::apply).close();
+		}
+		this.log = new WriteAheadLog(directory.resolve(LOG), SYNC, this::apply);
+		sortTimecards();
+	}
+
+	/**
+	 * Whether an environment names an embedded database
+	 * @param environment
+	 * @return true for "embedded" and "embedded:<directory>"
+	 *
+	 */
+	static boolean isEmbedded(String environment){
+		return environment.equals(ENVIRONMENT) || environment.startsWith(ENVIRONMENT + ":");
+	}
+
+	/**
+	 * The database of an environment, loaded from its directory on first use
+	 * @param environment an embedded environment
+	 * @return the database
+	 * @throws IOException when the snapshot or log cannot be read
+	 *
+	 */
+	static synchronized EmbeddedDatabase open(String environment) throws IOException{
+		EmbeddedDatabase db = OPEN.get(environment);
+		if(db == null){
+			String dir = environment.length() > ENVIRONMENT.length()
+					? environment.substring(ENVIRONMENT.length() + 1)
+					: System.getProperty(PREFIX + "dir", "timecard-data");
+			EmbeddedDatabase opened = new EmbeddedDatabase(dir.trim().isEmpty() ? null : Paths.get(dir));
+			Runtime.getRuntime().addShutdownHook(new Thread(opened::close, "timecard-embedded-shutdown"));
+			OPEN.put(environment, opened);
+			db = opened;
+		}
+		return db;
+	}
+
+	int deleteCompany(String company){
+		return write(() -> {
+			IntLongHashMap depts = departmentsByCompany.get(company);
+			IntLongHashMap emps = employeesByCompany.get(company);
+			int[] deptIds = depts == null ? new int[0] : depts.sortedKeys();
+			int[] empIds = emps == null ? new int[0] : emps.sortedKeys();
+			for(int empId: empIds){
+				logDeletes(DELETE_TIMECARD, timecardIdsOf(empId));
+			}
+			logDeletes(DELETE_EMPLOYEE, empIds);
+			logDeletes(DELETE_DEPARTMENT, deptIds);
+			commit();
+			int rows = 0;
+			for(int empId: empIds){
+				rows += removeTimecardsOf(empId);
+			}
+			for(int empId: empIds){
+				rows += removeEmployee(empId) ? 1 : 0;
+			}
+			for(int deptId: deptIds){
+				rows += removeDepartment(deptId) ? 1 : 0;
+			}
+			return rows;
+		});
+	}
+
+	Department getDepartment(String company, int deptId){
+		lock.readLock().lock();
+		try{
+			Department dept = departments.get(deptId);
+			return dept == null || !dept.getCompany().equals(company) ? null : copy(dept);
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	List<Department> getAllDepartment(String company){
+		lock.readLock().lock();
+		try{
+			IntLongHashMap ids = departmentsByCompany.get(company);
+			List<Department> list = new ArrayList<Department>(ids == null ? 0 : ids.size());
+			if(ids != null){
+				for(int deptId: ids.sortedKeys()){
+					list.add(copy(departments.get(deptId)));
+				}
+			}
+			return list;
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	Department insertDepartment(Department department){
+		if(department.getCompany() == null){
+			return null;
+		}
+		return write(() -> {
+			Department row = copy(department);
+			row.setId(nextDepartmentId);
+			logDepartment(row);
+			commit();
+			putDepartment(row);
+			department.setId(row.getId());
+			return department;
+		});
+	}
+
+	Department updateDepartment(Department department){
+		if(department.getCompany() == null){
+			return null;
+		}
+		return write(() -> {
+			if(!departments.containsKey(department.getId())){
+				return null;
+			}
+			Department row = copy(department);
+			logDepartment(row);
+			commit();
+			putDepartment(row);
+			return department;
+		});
+	}
+
+	int deleteDepartment(String company, int deptId){
+		return write(() -> {
+			Department dept = departments.get(deptId);
+			if(dept == null || !dept.getCompany().equals(company) || employeesPerDepartment.get(deptId, 0L) > 0){
+				return 0;
+			}
+			logDeletes(DELETE_DEPARTMENT, new int[]{deptId});
+			commit();
+			return removeDepartment(deptId) ? 1 : 0;
+		});
+	}
+
+	Employee getEmployee(int empId){
+		lock.readLock().lock();
+		try{
+			return copy(employees.get(empId));
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	List<Employee> getAllEmployee(String company){
+		lock.readLock().lock();
+		try{
+			IntLongHashMap ids = employeesByCompany.get(company);
+			List<Employee> list = new ArrayList<Employee>(ids == null ? 0 : ids.size());
+			if(ids != null){
+				for(int empId: ids.sortedKeys()){
+					list.add(copy(employees.get(empId)));
+				}
+			}
+			return list;
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	Employee insertEmployee(Employee employee){
+		List<Employee> inserted = insertEmployees(Collections.singletonList(employee));
+		return inserted.get(0);
+	}
+
+	/**
+	 * Insert a batch of Employees with one commit
+	 * @param batch
+	 * @return the inserted Employees in the order given, null where the Department does not exist
+	 *
+	 */
+	List<Employee> insertEmployees(List<Employee> batch){
+		return write(() -> {
+			List<Employee> rows = new ArrayList<Employee>(batch.size());
+			int id = nextEmployeeId;
+			for(Employee emp: batch){
+				if(!departments.containsKey(emp.getDeptId())){
+					rows.add(null);
+					continue;
+				}
+				Employee row = copy(emp);
+				row.setId(id++);
+				logEmployee(row);
+				rows.add(row);
+			}
+			commit();
+			List<Employee> inserted = new ArrayList<Employee>(batch.size());
+			for(int i = 0; i < rows.size(); i++){
+				Employee row = rows.get(i);
+				if(row == null){
+					inserted.add(null);
+					continue;
+				}
+				putEmployee(row);
+				batch.get(i).setId(row.getId());
+				inserted.add(batch.get(i));
+			}
+			return inserted;
+		});
+	}
+
+	Employee updateEmployee(Employee employee){
+		return write(() -> {
+			if(!employees.containsKey(employee.getId()) || !departments.containsKey(employee.getDeptId())){
+				return null;
+			}
+			Employee row = copy(employee);
+			logEmployee(row);
+			commit();
+			putEmployee(row);
+			return employee;
+		});
+	}
+
+	int deleteEmployee(int empId){
+		return deleteEmployees(new int[]{empId});
+	}
+
+	/**
+	 * Delete the given Employees which have no Timecards
+	 * @param empIds
+	 * @return the number of Employees deleted
+	 *
+	 */
+	int deleteEmployees(int[] empIds){
+		return write(() -> {
+			IntLongHashMap doomed = new IntLongHashMap(empIds.length);
+			for(int empId: empIds){
+				if(employees.containsKey(empId) && !timecardsByEmployee.containsKey(empId)){
+					doomed.put(empId, 0L);
+				}
+			}
+			int[] ids = doomed.sortedKeys();
+			logDeletes(DELETE_EMPLOYEE, ids);
+			commit();
+			int rows = 0;
+			for(int empId: ids){
+				rows += removeEmployee(empId) ? 1 : 0;
+			}
+			return rows;
+		});
+	}
+
+	Timecard getTimecard(int timecardId){
+		lock.readLock().lock();
+		try{
+			int empId = employeeOf(timecardId);
+			if(empId == 0){
+				return null;
+			}
+			Timecard[] found = new Timecard[1];
+			timecardsByEmployee.get(empId).find(timecardId, (id, start, end) -> found[0] = timecard(id, start, end, empId));
+			return found[0];
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	List<Timecard> getAllTimecard(int empId){
+		lock.readLock().lock();
+		try{
+			TimecardColumns columns = timecardsByEmployee.get(empId);
+			List<Timecard> list = new ArrayList<Timecard>(columns == null ? 0 : columns.size());
+			if(columns != null){
+				columns.forEach((id, start, end) -> list.add(timecard(id, start, end, empId)));
+			}
+			return list;
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	List<Timecard> getTimecards(int[] timecardIds){
+		lock.readLock().lock();
+		try{
+			// emp_id << 32 | timecard_id, so each Employee's Timecards come together and sorted
+			long[] owned = new long[timecardIds.length];
+			int count = 0;
+			for(int timecardId: timecardIds){
+				int empId = employeeOf(timecardId);
+				if(empId != 0){
+					owned[count++] = (long) empId << 32 | timecardId;
+				}
+			}
+			Arrays.sort(owned, 0, count);
+			// Decode only the blocks of each Employee's columns which hold the Timecards asked for
+			IntObjectHashMap<Timecard> decoded = new IntObjectHashMap<Timecard>(count);
+			for(int first = 0; first < count;){
+				int empId = (int) (owned[first] >>> 32);
+				int last = first;
+				while(last < count && (int) (owned[last] >>> 32) == empId){
+					last++;
+				}
+				int[] ids = new int[last - first];
+				for(int i = first; i < last; i++){
+					ids[i - first] = (int) owned[i];
+				}
+				timecardsByEmployee.get(empId).find(ids, (id, start, end) -> decoded.put(id, timecard(id, start, end, empId)));
+				first = last;
+			}
+			List<Timecard> found = new ArrayList<Timecard>(decoded.size());
+			for(int timecardId: timecardIds){
+				Timecard time = decoded.get(timecardId);
+				if(time != null){
+					found.add(time);
+				}
+			}
+			return found;
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	Timecard insertTimecard(Timecard timecard){
+		List<Timecard> inserted = insertTimecards(Collections.singletonList(timecard));
+		return inserted.get(0);
+	}
+
+	/**
+	 * Insert a batch of Timecards with one commit
+	 * @param batch
+	 * @return the inserted Timecards in the order given, null where the Employee does not exist
+	 *
+	 */
+	List<Timecard> insertTimecards(List<Timecard> batch){
+		return write(() -> {
+			List<Timecard> rows = new ArrayList<Timecard>(batch.size());
+			int id = nextTimecardId;
+			for(Timecard time: batch){
+				if(!employees.containsKey(time.getEmpId()) || time.getStartTime() == null || time.getEndTime() == null){
+					rows.add(null);
+					continue;
+				}
+				Timecard row = new Timecard(id++, time.getStartTime(), time.getEndTime(), time.getEmpId());
+				logTimecard(row);
+				rows.add(row);
+			}
+			commit();
+			List<Timecard> inserted = new ArrayList<Timecard>(batch.size());
+			for(int i = 0; i < rows.size(); i++){
+				Timecard row = rows.get(i);
+				if(row == null){
+					inserted.add(null);
+					continue;
+				}
+				putTimecard(row);
+				batch.get(i).setId(row.getId());
+				inserted.add(batch.get(i));
+			}
+			return inserted;
+		});
+	}
+
+	Timecard updateTimecard(Timecard timecard){
+		return write(() -> {
+			if(employeeOf(timecard.getId()) == 0 || !employees.containsKey(timecard.getEmpId())
+					|| timecard.getStartTime() == null || timecard.getEndTime() == null){
+				return null;
+			}
+			logTimecard(timecard);
+			commit();
+			putTimecard(timecard);
+			return timecard;
+		});
+	}
+
+	int deleteTimecard(int timecardId){
+		return write(() -> {
+			if(employeeOf(timecardId) == 0){
+				return 0;
+			}
+			logDeletes(DELETE_TIMECARD, new int[]{timecardId});
+			commit();
+			return removeTimecard(timecardId) ? 1 : 0;
+		});
+	}
+
+	/**
+	 * Delete every Timecard of the given Employees with one commit
+	 * @param empIds
+	 * @return the number of Timecards deleted
+	 *
+	 */
+	int deleteTimecardsOfEmployees(int[] empIds){
+		return write(() -> {
+			IntLongHashMap doomed = new IntLongHashMap(empIds.length);
+			for(int empId: empIds){
+				if(doomed.containsKey(empId)){
+					continue;
+				}
+				doomed.put(empId, 0L);
+				logDeletes(DELETE_TIMECARD, timecardIdsOf(empId));
+			}
+			commit();
+			int rows = 0;
+			for(int empId: doomed.sortedKeys()){
+				rows += removeTimecardsOf(empId);
+			}
+			return rows;
+		});
+	}
+
+	/**
+	 * Visit every Timecard of an Employee, in start order, without building Timecard records
+	 * @param empId
+	 * @param visitor: runs after the lock is released, so it may call the database
+	 *
+	 */
+	void forEachTimecard(int empId, CompanyStore.TimecardVisitor visitor){
+		int[] ids;
+		long[] starts;
+		long[] ends;
+		lock.readLock().lock();
+		try{
+			TimecardColumns columns = timecardsByEmployee.get(empId);
+			if(columns == null){
+				return;
+			}
+			ids = new int[columns.size()];
+			starts = new long[ids.length];
+			ends = new long[ids.length];
+			int[] count = {0};
+			columns.forEach((id, start, end) -> {
+				ids[count[0]] = id;
+				starts[count[0]] = start * 1000L;
+				ends[count[0]] = end * 1000L;
+				count[0]++;
+			});
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+		for(int i = 0; i < ids.length; i++){
+			visitor.visit(ids[i], starts[i], ends[i]);
+		}
+	}
+
+	/**
+	 * Statistics: record counts, bytes of encoded Timecards, log length and snapshot counts
+	 *
+	 */
+	JSONObject stats(){
+		lock.readLock().lock();
+		try{
+			long[] bytes = {0L};
+			timecardsByEmployee.forEach((empId, columns) -> bytes[0] += columns.bytes());
+			JSONObject json = new JSONObject();
+			json.put("departments", departments.size());
+			json.put("employees", employees.size());
+			json.put("timecards", timecardCount);
+			json.put("timecard_bytes", bytes[0]);
+			json.put("log_records", log == null ? 0L : log.records());
+			json.put("snapshots", snapshots.get());
+			json.put("snapshot_failures", snapshotFailures.get());
+			return json;
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Fold the log into a snapshot and close it; later writes fail
+	 *
+	 */
+	void close(){
+		// Nothing else writes once closed, so the snapshot is written under the lock
+		snapshotting.lock();
+		lock.writeLock().lock();
+		try{
+			if(closed){
+				return;
+			}
+			closed = true;
+			if(log != null){
+				try{
+					if(log.records() > 0 || Files.exists(directory.resolve(OLD_LOG))){
+						new Snapshot(this).write(directory);
+						log.truncate();
+						snapshots.incrementAndGet();
+					}
+				}
+				finally{
+					log.close();
+				}
+			}
+		}
+		catch(IOException e){
+			// The logs are complete, so the next start replays them instead
+			snapshotFailures.incrementAndGet();
+		}
+		finally{
+			lock.writeLock().unlock();
+			snapshotting.unlock();
+		}
+	}
+
+	// Run a write under the write lock, and take a snapshot after it once the log is long enough
+	private <T> T write(Write<T> write){
+		T result;
+		Snapshot snapshot = null;
+		lock.writeLock().lock();
+		try{
+			if(closed){
+				throw new IllegalStateException("Embedded database is closed.");
+			}
+			result = write.run();
+			sortTimecards();
+			if(log != null && log.records() >= snapshotAt){
+				snapshot = startSnapshot();
+			}
+		}
+		catch(IOException e){
+			rollback();
+			throw new UncheckedIOException(e);
+		}
+		catch(RuntimeException e){
+			// Records staged before the failure must not go out with the next commit
+			rollback();
+			throw e;
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+		if(snapshot != null){
+			finishSnapshot(snapshot);
+		}
+		return result;
+	}
+
+	// Copy the records and start a new log for the writes after them; null when another snapshot is under way
+	private Snapshot startSnapshot(){
+		if(!snapshotting.tryLock()){
+			return null;
+		}
+		try{
+			Snapshot snapshot = new Snapshot(this);
+			rotate();
+			return snapshot;
+		}
+		catch(IOException | RuntimeException e){
+			snapshotFailures.incrementAndGet();
+			snapshotting.unlock();
+			return null;
+		}
+		finally{
+			// Also after a failure: try again after the next batch of records, not on every write
+			snapshotAt = log.records() + SNAPSHOT_EVERY;
+		}
+	}
+
+	// Write a snapshot started under the lock, which is no longer held
+	private void finishSnapshot(Snapshot snapshot){
+		try{
+			snapshot.write(directory);
+			snapshots.incrementAndGet();
+		}
+		catch(IOException e){
+			// The old log stays, and the next snapshot covers it as well
+			snapshotFailures.incrementAndGet();
+		}
+		finally{
+			snapshotting.unlock();
+		}
+	}
+
+	// Move the log's records to the old log, which a failed snapshot may have left, and start an empty log
+	private void rotate() throws IOException{
+		Path current = directory.resolve(LOG);
+		Path old = directory.resolve(OLD_LOG);
+		if(!Files.exists(old)){
+			try{
+				log.close();
+				Files.move(current, old, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally{
+				// The same log again when the move failed
+				log = new WriteAheadLog(current, SYNC, record -> {});
+			}
+			return;
+		}
+		try(FileChannel in = FileChannel.open(current, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(old, StandardOpenOption.WRITE)){
+			long start = out.size();
+			try{
+				long size = in.size();
+				for(long copied = 0; copied < size; ){
+					copied += in.transferTo(copied, size - copied, out.position(start + copied));
+				}
+				out.force(true);
+			}
+			catch(IOException e){
+				// Leave no partial record for the next copy to be hidden behind
+				out.truncate(start);
+				throw e;
+			}
+		}
+		// Replaying these records twice, from both logs, would be harmless
+		log.truncate();
+	}
+
+	private void rollback(){
+		if(log != null){
+			log.rollback();
+		}
+	}
+
+	private void commit() throws IOException{
+		if(log != null){
+			log.commit();
+		}
+	}
+
+	/**
+	 * The records at one point, copied under the write lock to be written out after it is released. Stored
+	 * Departments and Employees are replaced rather than changed, so only the Timecard columns are copied.
+	 *
+	 */
+	private static final class Snapshot {
+		private final int nextDepartmentId;
+		private final int nextEmployeeId;
+		private final int nextTimecardId;
+		private final Department[] departments;
+		private final Employee[] employees;
+		private final int[] empIds;
+		private final TimecardColumns[] columns;
+
+		Snapshot(EmbeddedDatabase db){
+			this.nextDepartmentId = db.nextDepartmentId;
+			this.nextEmployeeId = db.nextEmployeeId;
+			this.nextTimecardId = db.nextTimecardId;
+			int[] deptIds = db.departments.sortedKeys();
+			this.departments = new Department[deptIds.length];
+			for(int i = 0; i < deptIds.length; i++){
+				departments[i] = db.departments.get(deptIds[i]);
+			}
+			int[] ids = db.employees.sortedKeys();
+			this.employees = new Employee[ids.length];
+			for(int i = 0; i < ids.length; i++){
+				employees[i] = db.employees.get(ids[i]);
+			}
+			this.empIds = db.timecardsByEmployee.sortedKeys();
+			this.columns = new TimecardColumns[empIds.length];
+			for(int i = 0; i < empIds.length; i++){
+				columns[i] = db.timecardsByEmployee.get(empIds[i]).copy();
+			}
+		}
+
+		// Write every record to a new snapshot, replace the old one with it and drop the old log
+		void write(Path directory) throws IOException{
+			Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+			Files.deleteIfExists(temporary);
+			try(WriteAheadLog out = new WriteAheadLog(temporary, false, record -> {})){
+				DataOutputStream ids = out.record();
+				ids.writeByte(NEXT_IDS);
+				ids.writeInt(nextDepartmentId);
+				ids.writeInt(nextEmployeeId);
+				ids.writeInt(nextTimecardId);
+				int staged = 0;
+				// Parents first, so the indexes resolve as the snapshot loads
+				for(Department dept: departments){
+					EmbeddedDatabase.write(out.record(), dept);
+					staged = flush(out, staged);
+				}
+				for(Employee emp: employees){
+					EmbeddedDatabase.write(out.record(), emp);
+					staged = flush(out, staged);
+				}
+				for(int i = 0; i < empIds.length; i++){
+					int empId = empIds[i];
+					int[] timecardIds = new int[columns[i].size()];
+					long[] starts = new long[timecardIds.length];
+					long[] ends = new long[timecardIds.length];
+					int[] count = {0};
+					columns[i].forEach((id, start, end) -> {
+						timecardIds[count[0]] = id;
+						starts[count[0]] = start;
+						ends[count[0]] = end;
+						count[0]++;
+					});
+					for(int j = 0; j < timecardIds.length; j++){
+						EmbeddedDatabase.write(out.record(), timecardIds[j], starts[j] * 1000L, ends[j] * 1000L, empId);
+						staged = flush(out, staged);
+					}
+				}
+				out.commit();
+			}
+			Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			// Replaying the old log over the new snapshot would be harmless, so a crash before this point loses nothing
+			Files.deleteIfExists(directory.resolve(OLD_LOG));
+		}
+	}
+
+	private static int flush(WriteAheadLog out, int staged) throws IOException{
+		if(++staged < 1000){
+			return staged;
+		}
+		out.commit();
+		return 0;
+	}
+
+	// Apply a record of the snapshot or the log
+	private void apply(DataInputStream in) throws IOException{
+		byte type = in.readByte();
+		switch(type){
+		case PUT_DEPARTMENT:
+			putDepartment(new Department(in.readInt(), readString(in), readString(in), readString(in), readString(in)));
+			break;
+		case DELETE_DEPARTMENT:
+			removeDepartment(in.readInt());
+			break;
+		case PUT_EMPLOYEE:
+			int empId = in.readInt();
+			String empName = readString(in);
+			String empNo = readString(in);
+			long hireDate = in.readLong();
+			String job = readString(in);
+			Double salary = in.readBoolean() ? in.readDouble() : null;
+			putEmployee(new Employee(empId, empName, empNo, hireDate == Long.MIN_VALUE ? null : new Date(hireDate), job,
+					salary, in.readInt(), in.readInt()));
+			break;
+		case DELETE_EMPLOYEE:
+			removeEmployee(in.readInt());
+			break;
+		case PUT_TIMECARD:
+			int timecardId = in.readInt();
+			long start = in.readLong();
+			putTimecard(timecardId, start, in.readLong(), in.readInt());
+			break;
+		case DELETE_TIMECARD:
+			removeTimecard(in.readInt());
+			break;
+		case NEXT_IDS:
+			nextDepartmentId = Math.max(nextDepartmentId, in.readInt());
+			nextEmployeeId = Math.max(nextEmployeeId, in.readInt());
+			nextTimecardId = Math.max(nextTimecardId, in.readInt());
+			break;
+		default:
+			throw new IOException("Unknown record type " + type + " in the embedded database.");
+		}
+	}
+
+	private void logDepartment(Department dept) throws IOException{
+		if(log != null){
+			write(log.record(), dept);
+		}
+	}
+
+	private void logEmployee(Employee emp) throws IOException{
+		if(log != null){
+			write(log.record(), emp);
+		}
+	}
+
+	private void logTimecard(Timecard time) throws IOException{
+		if(log != null){
+			write(log.record(), time.getId(), time.getStartTime().getTime(), time.getEndTime().getTime(), time.getEmpId());
+		}
+	}
+
+	private void logDeletes(byte type, int[] ids) throws IOException{
+		if(log != null){
+			for(int id: ids){
+				DataOutputStream out = log.record();
+				out.writeByte(type);
+				out.writeInt(id);
+			}
+		}
+	}
+
+	private static void write(DataOutputStream out, Department dept) throws IOException{
+		out.writeByte(PUT_DEPARTMENT);
+		out.writeInt(dept.getId());
+		writeString(out, dept.getCompany());
+		writeString(out, dept.getDeptName());
+		writeString(out, dept.getDeptNo());
+		writeString(out, dept.getLocation());
+	}
+
+	private static void write(DataOutputStream out, Employee emp) throws IOException{
+		out.writeByte(PUT_EMPLOYEE);
+		out.writeInt(emp.getId());
+		writeString(out, emp.getEmpName());
+		writeString(out, emp.getEmpNo());
+		out.writeLong(emp.getHireDate() == null ? Long.MIN_VALUE : emp.getHireDate().getTime());
+		writeString(out, emp.getJob());
+		out.writeBoolean(emp.getSalary() != null);
+		if(emp.getSalary() != null){
+			out.writeDouble(emp.getSalary());
+		}
+		out.writeInt(emp.getDeptId());
+		out.writeInt(emp.getMngId());
+	}
+
+	private static void write(DataOutputStream out, int timecardId, long startMillis, long endMillis, int empId)
+			throws IOException{
+		out.writeByte(PUT_TIMECARD);
+		out.writeInt(timecardId);
+		out.writeLong(startMillis);
+		out.writeLong(endMillis);
+		out.writeInt(empId);
+	}
+
+	// writeUTF stops at 64 KB and has no null
+	private static void writeString(DataOutputStream out, String value) throws IOException{
+		if(value == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		int length = in.readInt();
+		if(length < 0){
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void putDepartment(Department dept){
+		Department previous = departments.put(dept.getId(), dept);
+		if(previous != null && !previous.getCompany().equals(dept.getCompany())){
+			remove(departmentsByCompany, previous.getCompany(), dept.getId());
+			// The Department's Employees move to the new company with it
+			IntLongHashMap emps = employeesByCompany.get(previous.getCompany());
+			if(emps != null){
+				for(int empId: emps.sortedKeys()){
+					if(emps.get(empId, 0L) == dept.getId()){
+						remove(employeesByCompany, previous.getCompany(), empId);
+						index(employeesByCompany, dept.getCompany()).put(empId, dept.getId());
+					}
+				}
+			}
+		}
+		index(departmentsByCompany, dept.getCompany()).put(dept.getId(), 0L);
+		nextDepartmentId = Math.max(nextDepartmentId, dept.getId() + 1);
+	}
+
+	private boolean removeDepartment(int deptId){
+		Department dept = departments.remove(deptId);
+		if(dept == null){
+			return false;
+		}
+		remove(departmentsByCompany, dept.getCompany(), deptId);
+		employeesPerDepartment.remove(deptId);
+		return true;
+	}
+
+	private void putEmployee(Employee emp){
+		Employee previous = employees.put(emp.getId(), emp);
+		if(previous != null){
+			unindex(previous);
+		}
+		Department dept = departments.get(emp.getDeptId());
+		if(dept != null){
+			index(employeesByCompany, dept.getCompany()).put(emp.getId(), emp.getDeptId());
+		}
+		employeesPerDepartment.addTo(emp.getDeptId(), 1L);
+		nextEmployeeId = Math.max(nextEmployeeId, emp.getId() + 1);
+	}
+
+	private boolean removeEmployee(int empId){
+		Employee emp = employees.remove(empId);
+		if(emp == null){
+			return false;
+		}
+		unindex(emp);
+		return true;
+	}
+
+	private void unindex(Employee emp){
+		Department dept = departments.get(emp.getDeptId());
+		if(dept != null){
+			remove(employeesByCompany, dept.getCompany(), emp.getId());
+		}
+		if(employeesPerDepartment.addTo(emp.getDeptId(), -1L) <= 0){
+			employeesPerDepartment.remove(emp.getDeptId());
+		}
+	}
+
+	private void putTimecard(Timecard time){
+		putTimecard(time.getId(), time.getStartTime().getTime(), time.getEndTime().getTime(), time.getEmpId());
+	}
+
+	// Timecards are kept to the second, the precision the endpoints accept
+	private void putTimecard(int timecardId, long startMillis, long endMillis, int empId){
+		removeTimecard(timecardId);
+		TimecardColumns columns = timecardsByEmployee.get(empId);
+		if(columns == null){
+			columns = new TimecardColumns();
+			timecardsByEmployee.put(empId, columns);
+		}
+		boolean sorted = columns.isSorted();
+		columns.append(timecardId, Math.floorDiv(startMillis, 1000L), Math.floorDiv(endMillis, 1000L));
+		if(sorted && !columns.isSorted()){
+			unsorted.add(columns);
+		}
+		if(timecardId >= employeeOfTimecard.length){
+			employeeOfTimecard = Arrays.copyOf(employeeOfTimecard, Math.max(timecardId + 1, employeeOfTimecard.length * 2));
+		}
+		employeeOfTimecard[timecardId] = empId;
+		timecardCount++;
+		nextTimecardId = Math.max(nextTimecardId, timecardId + 1);
+	}
+
+	private boolean removeTimecard(int timecardId){
+		int empId = employeeOf(timecardId);
+		if(empId == 0){
+			return false;
+		}
+		TimecardColumns columns = timecardsByEmployee.get(empId);
+		columns.remove(timecardId);
+		if(columns.isEmpty()){
+			timecardsByEmployee.remove(empId);
+		}
+		employeeOfTimecard[timecardId] = 0;
+		timecardCount--;
+		return true;
+	}
+
+	// Drop all Timecards of an Employee; returns how many there were
+	private int removeTimecardsOf(int empId){
+		TimecardColumns columns = timecardsByEmployee.remove(empId);
+		if(columns == null){
+			return 0;
+		}
+		for(int timecardId: columns.ids()){
+			employeeOfTimecard[timecardId] = 0;
+		}
+		timecardCount -= columns.size();
+		return columns.size();
+	}
+
+	private void sortTimecards(){
+		for(TimecardColumns columns: unsorted){
+			columns.sort();
+		}
+		unsorted.clear();
+	}
+
+	private int employeeOf(int timecardId){
+		return timecardId > 0 && timecardId < employeeOfTimecard.length ? employeeOfTimecard[timecardId] : 0;
+	}
+
+	private int[] timecardIdsOf(int empId){
+		TimecardColumns columns = timecardsByEmployee.get(empId);
+		return columns == null ? new int[0] : columns.ids();
+	}
+
+	private static IntLongHashMap index(Map<String, IntLongHashMap> byCompany, String company){
+		IntLongHashMap ids = byCompany.get(company);
+		if(ids == null){
+			ids = new IntLongHashMap();
+			byCompany.put(company, ids);
+		}
+		return ids;
+	}
+
+	private static void remove(Map<String, IntLongHashMap> byCompany, String company, int id){
+		IntLongHashMap ids = byCompany.get(company);
+		if(ids != null){
+			ids.remove(id);
+			if(ids.isEmpty()){
+				byCompany.remove(company);
+			}
+		}
+	}
+
+	// Callers get their own records, since endpoints modify what they read
+	private static Department copy(Department dept){
+		return dept == null ? null
+				: new Department(dept.getId(), dept.getCompany(), dept.getDeptName(), dept.getDeptNo(), dept.getLocation());
+	}
+
+	private static Employee copy(Employee emp){
+		return emp == null ? null
+				: new Employee(emp.getId(), emp.getEmpName(), emp.getEmpNo(),
+						emp.getHireDate() == null ? null : new Date(emp.getHireDate().getTime()), emp.getJob(),
+						emp.getSalary(), emp.getDeptId(), emp.getMngId());
+	}
+
+	private static Timecard timecard(int timecardId, long startSecond, long endSecond, int empId){
+		return new Timecard(timecardId, new Timestamp(startSecond * 1000L), new Timestamp(endSecond * 1000L), empId);
+	}
+}
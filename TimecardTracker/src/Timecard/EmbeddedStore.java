@@ -0,0 +1,136 @@
+package Timecard;
+
+import java.util.List;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * EmbeddedStore class backs a CompanyStore with the EmbeddedDatabase of an environment. All sessions of
+ * an environment share its database, so closing a session leaves the data open.
+ *
+ */
+
+final class EmbeddedStore implements CompanyStore {
+
+	private final EmbeddedDatabase db;
+
+	EmbeddedStore(String environment) throws Exception{
+		this.db = EmbeddedDatabase.open(environment);
+	}
+
+	@Override
+	public int deleteCompany(String company){
+		return db.deleteCompany(company);
+	}
+
+	@Override
+	public Department getDepartment(String company, int deptId){
+		return db.getDepartment(company, deptId);
+	}
+
+	@Override
+	public List<Department> getAllDepartment(String company){
+		return db.getAllDepartment(company);
+	}
+
+	@Override
+	public Department insertDepartment(Department department){
+		return db.insertDepartment(department);
+	}
+
+	@Override
+	public Department updateDepartment(Department department){
+		return db.updateDepartment(department);
+	}
+
+	@Override
+	public int deleteDepartment(String company, int deptId){
+		return db.deleteDepartment(company, deptId);
+	}
+
+	@Override
+	public Employee getEmployee(int empId){
+		return db.getEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> getAllEmployee(String company){
+		return db.getAllEmployee(company);
+	}
+
+	@Override
+	public Employee insertEmployee(Employee employee){
+		return db.insertEmployee(employee);
+	}
+
+	@Override
+	public Employee updateEmployee(Employee employee){
+		return db.updateEmployee(employee);
+	}
+
+	@Override
+	public int deleteEmployee(int empId){
+		return db.deleteEmployee(empId);
+	}
+
+	@Override
+	public List<Employee> insertEmployees(List<Employee> employees){
+		return db.insertEmployees(employees);
+	}
+
+	@Override
+	public Timecard getTimecard(int timecardId){
+		return db.getTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> getAllTimecard(int empId){
+		return db.getAllTimecard(empId);
+	}
+
+	@Override
+	public void forEachTimecard(int empId, TimecardVisitor visitor){
+		db.forEachTimecard(empId, visitor);
+	}
+
+	@Override
+	public List<Timecard> getTimecards(int[] timecardIds){
+		return db.getTimecards(timecardIds);
+	}
+
+	@Override
+	public Timecard insertTimecard(Timecard timecard){
+		return db.insertTimecard(timecard);
+	}
+
+	@Override
+	public Timecard updateTimecard(Timecard timecard){
+		return db.updateTimecard(timecard);
+	}
+
+	@Override
+	public int deleteTimecard(int timecardId){
+		return db.deleteTimecard(timecardId);
+	}
+
+	@Override
+	public List<Timecard> insertTimecards(List<Timecard> timecards){
+		return db.insertTimecards(timecards);
+	}
+
+	@Override
+	public int deleteTimecardsOfEmployees(int[] empIds){
+		return db.deleteTimecardsOfEmployees(empIds);
+	}
+
+	@Override
+	public int deleteEmployees(int[] empIds){
+		return db.deleteEmployees(empIds);
+	}
+
+	@Override
+	public void close(){
+	}
+}
@@ -0,0 +1,403 @@
+package Timecard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import companydata.Department;
+import companydata.Employee;
+
+/**
+ * EmployeeBatch class onboards many employees in one request. The company's departments and emp_no
+ * keys are loaded once per batch and every entry is checked with the rules and messages of
+ * insertEmployee, plus emp_no duplicates within the batch.
+ *
+ * Besides mng_id an entry may name its manager by mng_emp_no, which can be an employee of the same
+ * batch. Entries are inserted manager first, one reporting level at a time, so every mng_id points at
+ * a stored record; a cycle of mng_emp_no references is rejected.
+ *
+ * A batch is not atomic: each chunk of timecard.batch.insertSize entries is one store insert, and the
+ * DataLayer has no transactions. When a chunk stops part way the employees stored before the failing
+ * row keep their emp_no and are reported as inserted; the rest of the chunk fails and gives its emp_no
+ * back, along with the reports of any failed manager.
+ *
+ */
+
+final class EmployeeBatch {
+
+	private static final String PREFIX = "timecard.batch.";
+
+	static final int MAX_ENTRIES = Math.max(1, Integer.getInteger(PREFIX + "maxEntries", 10000));
+	static final int INSERT_SIZE = Math.max(1, Integer.getInteger(PREFIX + "insertSize", 500));
+
+	private static final String NOT_AN_OBJECT = "employee should be a JSON object.";
+	private static final String HIRE_DATE_FORMAT = "hire_date should be in yyyy-MM-dd format.";
+	private static final String NO_EMP_NAME = "emp_name should not be empty.";
+	private static final String NO_EMP_NO = "emp_no should not be empty.";
+	private static final String NO_JOB = "job should not be empty.";
+	private static final String NO_SALARY = "salary should not be empty.";
+	private static final String NO_DEPT_ID = "dept_id should not be empty.";
+	private static final String TWO_MANAGERS = "mng_id and mng_emp_no should not both be set.";
+	private static final String NO_DEPARTMENT = "No matching dept_Id found";
+	private static final String NO_MANAGER = "No matching employee found for mng_Id";
+	private static final String NO_MANAGER_EMP_NO = "No matching employee found for mng_emp_no";
+	private static final String MANAGER_NOT_INSERTED = "Manager mng_emp_no was not inserted";
+	private static final String MANAGER_CYCLE = "mng_emp_no should not form a cycle";
+	private static final String DUPLICATE_EMP_NO = "Duplicate emp_no found";
+
+	// Reporting level of an entry not yet placed, and of one on the path being placed
+	private static final int UNRESOLVED = -1;
+	private static final int VISITING = -2;
+
+	private final List<Entry> entries;
+	private int inserted;
+
+	private EmployeeBatch(List<Entry> entries){
+		this.entries = entries;
+	}
+
+	/**
+	 * Read a batch from a JSON array of employees or from newline-delimited JSON, one employee per line
+	 * @param body
+	 * @return the batch, with format errors already recorded on their entries
+	 * @throws IOException when the body is not valid JSON
+	 * @throws IllegalArgumentException when the body holds more than MAX_ENTRIES employees
+	 *
+	 */
+	static EmployeeBatch read(Reader body) throws IOException{
+		return new EmployeeBatch(BatchReader.read(body, MAX_ENTRIES, "employees", Entry::parse));
+	}
+
+	/**
+	 * Check the entries which parsed and insert the accepted ones, managers before their reports
+	 * @param dl
+	 * @param company
+	 * @param empNos: emp_no keys of the company
+	 * @param reports: reporting tree of the company
+	 * @param rules
+	 * @throws Exception when the departments or keys can not be loaded
+	 *
+	 */
+	void insert(CompanyStore dl, String company, UniqueKeyIndex empNos, ReportingIndex reports, TimecardRules rules)
+			throws Exception{
+		Set<Integer> departments = new HashSet<Integer>();
+		for(Department dept: dl.getAllDepartment(company)){
+			departments.add(dept.getId());
+		}
+		UniqueKeyIndex.Scope keys = empNos.scope(dl, company);
+		ReportingIndex.Chart chart = reports.chart(dl, company);
+		try{
+			Map<String, Entry> byEmpNo = check(departments, keys, rules, rules.today());
+			resolveManagers(byEmpNo, keys);
+			List<List<Entry>> levels = levels(keys);
+			for(List<Entry> level: levels){
+				insertLevel(dl, keys, level);
+			}
+		}
+		finally{
+			// Chart the inserted entries; reserved ones are only left over when the batch was cut short
+			for(Entry entry: entries){
+				if(entry.empId != 0){
+					chart.put(entry.empId, entry.mngId);
+				}
+				if(entry.reserved){
+					keys.release(entry.empNo);
+					entry.reserved = false;
+				}
+			}
+		}
+	}
+
+	// Same checks and order as insertEmployee; on success the entry's emp_no is reserved
+	private Map<String, Entry> check(Set<Integer> departments, UniqueKeyIndex.Scope keys, TimecardRules rules, long today){
+		// Like insertEmployee, mng_id is only matched once the company has employees
+		boolean matchManagers = !keys.isEmpty();
+		Map<String, Entry> byEmpNo = new HashMap<String, Entry>();
+		for(Entry entry: entries){
+			if(entry.error != null){
+				continue;
+			}
+			if(!departments.contains(entry.deptId)){
+				entry.error = NO_DEPARTMENT;
+				continue;
+			}
+			if(matchManagers && entry.mngId != 0 && !keys.containsId(entry.mngId)){
+				entry.error = NO_MANAGER;
+				continue;
+			}
+			if(keys.contains(entry.empNo)){
+				entry.error = DUPLICATE_EMP_NO;
+				continue;
+			}
+			String violation = rules.checkHireDate(entry.hireDay, today);
+			if(violation != null){
+				entry.error = violation;
+				continue;
+			}
+			if(!keys.reserve(entry.empNo)){
+				entry.error = DUPLICATE_EMP_NO;
+				continue;
+			}
+			entry.reserved = true;
+			byEmpNo.put(entry.empNo, entry);
+		}
+		return byEmpNo;
+	}
+
+	// Point mng_emp_no at an entry of this batch or turn it into the mng_id of a stored employee
+	private void resolveManagers(Map<String, Entry> byEmpNo, UniqueKeyIndex.Scope keys){
+		for(Entry entry: entries){
+			if(!entry.reserved || entry.mngEmpNo == null){
+				continue;
+			}
+			Entry manager = byEmpNo.get(entry.mngEmpNo);
+			if(manager != null){
+				entry.manager = manager;
+				continue;
+			}
+			int mngId = keys.idOf(entry.mngEmpNo);
+			if(mngId == 0){
+				fail(entry, NO_MANAGER_EMP_NO, keys);
+			}else{
+				entry.mngId = mngId;
+			}
+		}
+	}
+
+	// Group the accepted entries by reporting level within the batch, following each manager chain once
+	private List<List<Entry>> levels(UniqueKeyIndex.Scope keys){
+		List<List<Entry>> levels = new ArrayList<List<Entry>>();
+		List<Entry> path = new ArrayList<Entry>();
+		for(Entry entry: entries){
+			Entry current = entry;
+			while(current != null && current.reserved && current.level == UNRESOLVED){
+				current.level = VISITING;
+				path.add(current);
+				current = current.manager;
+			}
+			int level = UNRESOLVED;
+			String failure = null;
+			if(current != null){
+				if(current.level == VISITING){
+					failure = MANAGER_CYCLE;
+				}else if(!current.reserved){
+					failure = MANAGER_NOT_INSERTED;
+				}else{
+					level = current.level;
+				}
+			}
+			for(int i = path.size() - 1; i >= 0; i--){
+				Entry placed = path.get(i);
+				if(failure != null){
+					fail(placed, failure, keys);
+					continue;
+				}
+				placed.level = ++level;
+				if(levels.size() == level){
+					levels.add(new ArrayList<Entry>());
+				}
+				levels.get(level).add(placed);
+			}
+			path.clear();
+		}
+		return levels;
+	}
+
+	private void insertLevel(CompanyStore dl, UniqueKeyIndex.Scope keys, List<Entry> level){
+		List<Entry> chunk = new ArrayList<Entry>(Math.min(INSERT_SIZE, level.size()));
+		for(Entry entry: level){
+			if(entry.manager != null){
+				if(entry.manager.empId == 0){
+					fail(entry, MANAGER_NOT_INSERTED, keys);
+					continue;
+				}
+				entry.mngId = entry.manager.empId;
+			}
+			chunk.add(entry);
+			if(chunk.size() == INSERT_SIZE){
+				flush(dl, keys, chunk);
+			}
+		}
+		flush(dl, keys, chunk);
+	}
+
+	// Insert the chunk as one store batch and bind or give back its emp_no keys
+	private void flush(CompanyStore dl, UniqueKeyIndex.Scope keys, List<Entry> chunk){
+		if(chunk.isEmpty()){
+			return;
+		}
+		List<Employee> employees = new ArrayList<Employee>(chunk.size());
+		for(Entry entry: chunk){
+			employees.add(new Employee(entry.empName, entry.empNo, TimecardRules.toSqlDate(entry.hireDay), entry.job,
+					entry.salary, entry.deptId, entry.mngId));
+		}
+		List<Employee> stored = null;
+		String failure = "Employee could not be inserted";
+		try{
+			stored = dl.insertEmployees(employees);
+		}
+		catch(PartialInsertException e){
+			// The rows before the failing one are in the store and keep their emp_no
+			stored = e.stored();
+			failure = e.getMessage();
+		}
+		catch(Exception e){
+			failure = e.getMessage();
+		}
+		for(int i = 0; i < chunk.size(); i++){
+			Entry entry = chunk.get(i);
+			Employee emp = stored == null || i >= stored.size() ? null : stored.get(i);
+			if(emp != null && emp.getId() != 0){
+				keys.commit(entry.empNo, emp.getId());
+				entry.reserved = false;
+				entry.empId = emp.getId();
+				inserted++;
+			}else{
+				fail(entry, failure, keys);
+			}
+		}
+		chunk.clear();
+	}
+
+	private static void fail(Entry entry, String error, UniqueKeyIndex.Scope keys){
+		entry.error = error;
+		if(entry.reserved){
+			keys.release(entry.empNo);
+			entry.reserved = false;
+		}
+	}
+
+	/**
+	 * Stream the outcome as {"inserted": n, "failed": n, "results": [{"index": i, "emp_id": id} or
+	 * {"index": i, "error": message}, ...]}
+	 * @return StreamingOutput writing the results
+	 *
+	 */
+	StreamingOutput results(){
+		return output -> {
+			JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+			out.beginObject();
+			out.name("inserted").value(inserted);
+			out.name("failed").value(entries.size() - inserted);
+			out.name("results").beginArray();
+			for(Entry entry: entries){
+				out.beginObject();
+				out.name("index").value(entry.index);
+				if(entry.error == null){
+					out.name("emp_id").value(entry.empId);
+				}else{
+					out.name("error").value(entry.error);
+				}
+				out.endObject();
+			}
+			out.endArray();
+			out.endObject();
+			out.flush();
+		};
+	}
+
+	/**
+	 * One employee of the batch and its result
+	 *
+	 */
+	private static final class Entry {
+		final int index;
+		String empName;
+		String empNo;
+		long hireDay;
+		String job;
+		double salary;
+		int deptId;
+		int mngId;
+		String mngEmpNo;
+		Entry manager;
+		int level = UNRESOLVED;
+		boolean reserved;
+		int empId;
+		String error;
+
+		private Entry(int index){
+			this.index = index;
+		}
+
+		static Entry parse(int index, JsonElement element){
+			Entry entry = new Entry(index);
+			if(!element.isJsonObject()){
+				entry.error = NOT_AN_OBJECT;
+				return entry;
+			}
+			JsonObject json = element.getAsJsonObject();
+			entry.hireDay = TimestampParser.parseDate(string(json, "hire_date"));
+			entry.empName = string(json, "emp_name");
+			entry.empNo = string(json, "emp_no");
+			entry.job = string(json, "job");
+			entry.salary = number(json, "salary");
+			entry.deptId = (int) number(json, "dept_id");
+			entry.mngId = (int) number(json, "mng_id");
+			entry.mngEmpNo = string(json, "mng_emp_no");
+			if(entry.mngEmpNo != null && entry.mngEmpNo.trim().isEmpty()){
+				entry.mngEmpNo = null;
+			}
+			entry.error = firstError(entry);
+			return entry;
+		}
+
+		private static String firstError(Entry entry){
+			if(entry.hireDay == TimestampParser.INVALID){
+				return HIRE_DATE_FORMAT;
+			}
+			if(entry.empName == null || entry.empName.trim().isEmpty()){
+				return NO_EMP_NAME;
+			}
+			if(entry.empNo == null || entry.empNo.trim().isEmpty()){
+				return NO_EMP_NO;
+			}
+			if(entry.job == null || entry.job.trim().isEmpty()){
+				return NO_JOB;
+			}
+			if(entry.salary == 0.0){
+				return NO_SALARY;
+			}
+			if(entry.deptId == 0){
+				return NO_DEPT_ID;
+			}
+			if(entry.mngId != 0 && entry.mngEmpNo != null){
+				return TWO_MANAGERS;
+			}
+			return null;
+		}
+
+		private static String string(JsonObject json, String name){
+			JsonElement value = json.get(name);
+			return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+		}
+
+		// Like JSONObject.optDouble: 0 when the field is missing or not a number
+		private static double number(JsonObject json, String name){
+			JsonElement value = json.get(name);
+			if(value == null || !value.isJsonPrimitive()){
+				return 0;
+			}
+			try{
+				return value.getAsDouble();
+			}
+			catch(NumberFormatException e){
+				return 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package Timecard;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram class counts recorded values into fixed buckets with atomic increments only, so any number of
+ * threads can record at once without a lock and a scrape reads it without stopping them. The buckets are
+ * cumulative upper bounds, as in the Prometheus text format.
+ *
+ */
+
+final class Histogram {
+
+	// Latency bounds in nanoseconds, 1-2.5-5 steps from 50 microseconds to 30 seconds
+	static final long[] LATENCY_NANOS = {50000L, 100000L, 250000L, 500000L, 1000000L, 2500000L, 5000000L,
+			10000000L, 25000000L, 50000000L, 100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L,
+			5000000000L, 10000000000L, 30000000000L};
+
+	// Count bounds, e.g. DataLayer calls per request
+	static final long[] COUNTS = {0L, 1L, 2L, 3L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L};
+
+	private final long[] bounds;
+	// One slot per bound plus the overflow slot; not cumulative until written out
+	private final AtomicLongArray buckets;
+	private final LongAdder sum = new LongAdder();
+
+	Histogram(long[] bounds){
+		this.bounds = bounds;
+		this.buckets = new AtomicLongArray(bounds.length + 1);
+	}
+
+	void record(long value){
+		int slot = Arrays.binarySearch(bounds, value);
+		buckets.incrementAndGet(slot >= 0 ? slot : -slot - 1);
+		sum.add(value);
+	}
+
+	/**
+	 * Append the _bucket, _sum and _count lines of this histogram
+	 * @param out
+	 * @param name: metric name
+	 * @param labels: label pairs without braces, e.g. endpoint="getEmployee", or empty
+	 * @param scale: divisor from recorded values to exposed ones, e.g. 1e9 for nanoseconds to seconds
+	 *
+	 */
+	void write(StringBuilder out, String name, String labels, double scale){
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for(int i = 0; i < bounds.length; i++){
+			cumulative += buckets.get(i);
+			out.append(name).append("_bucket{").append(prefix).append("le=\"").append(format(bounds[i] / scale))
+					.append("\"} ").append(cumulative).append('\n');
+		}
+		cumulative += buckets.get(bounds.length);
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+		out.append(name).append("_sum").append(braces).append(' ').append(format(sum.sum() / scale)).append('\n');
+		out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+	}
+
+	private static String format(double value){
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+				: BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+}
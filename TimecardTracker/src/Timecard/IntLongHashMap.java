@@ -0,0 +1,178 @@
+package Timecard;
+
+import java.util.Arrays;
+
+/**
+ * IntLongHashMap class is an open-addressing hash map from int keys to long values which stores keys
+ * and values in primitive arrays, so lookups neither box nor allocate. It is not thread-safe; owners
+ * guard it with their own lock.
+ *
+ */
+
+final class IntLongHashMap {
+
+	/**
+	 * Receives the entries of the map
+	 *
+	 */
+	interface Visitor {
+		void visit(int key, long value);
+	}
+
+	private int[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int mask;
+	private int size;
+
+	IntLongHashMap(){
+		this(8);
+	}
+
+	IntLongHashMap(int expected){
+		allocate(Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1);
+	}
+
+	int size(){
+		return size;
+	}
+
+	boolean isEmpty(){
+		return size == 0;
+	}
+
+	boolean containsKey(int key){
+		return slotOf(key) >= 0;
+	}
+
+	long get(int key, long missing){
+		int slot = slotOf(key);
+		return slot < 0 ? missing : values[slot];
+	}
+
+	void put(int key, long value){
+		int slot = insertSlot(key);
+		values[slot] = value;
+	}
+
+	/**
+	 * Add a delta to the value of a key, starting from zero when the key is absent
+	 * @param key
+	 * @param delta
+	 * @return the new value
+	 *
+	 */
+	long addTo(int key, long delta){
+		int slot = insertSlot(key);
+		values[slot] += delta;
+		return values[slot];
+	}
+
+	boolean remove(int key){
+		int gap = slotOf(key);
+		if(gap < 0){
+			return false;
+		}
+		// Shift later entries of the probe run back so lookups never stop at the hole
+		int i = (gap + 1) & mask;
+		while(used[i]){
+			int ideal = hash(keys[i]);
+			if(((i - ideal) & mask) >= ((i - gap) & mask)){
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		used[gap] = false;
+		size--;
+		return true;
+	}
+
+	void clear(){
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	void forEach(Visitor visitor){
+		for(int i = 0; i < used.length; i++){
+			if(used[i]){
+				visitor.visit(keys[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Keys of the map
+	 * @return the keys in ascending order
+	 *
+	 */
+	int[] sortedKeys(){
+		int[] sorted = new int[size];
+		int count = 0;
+		for(int i = 0; i < used.length; i++){
+			if(used[i]){
+				sorted[count++] = keys[i];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private int slotOf(int key){
+		int i = hash(key);
+		while(used[i]){
+			if(keys[i] == key){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	// Slot holding the key, claiming a new zero-valued one when the key is absent
+	private int insertSlot(int key){
+		int i = hash(key);
+		while(used[i]){
+			if(keys[i] == key){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		if(size + 1 > (mask + 1) * 3 / 4){
+			grow();
+			return insertSlot(key);
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = 0L;
+		size++;
+		return i;
+	}
+
+	private int hash(int key){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void grow(){
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(oldKeys.length << 1);
+		for(int i = 0; i < oldUsed.length; i++){
+			if(oldUsed[i]){
+				int slot = insertSlot(oldKeys[i]);
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+}
@@ -0,0 +1,174 @@
+package Timecard;
+
+import java.util.Arrays;
+
+/**
+ * IntObjectHashMap class is an open-addressing hash map from int keys to object values which stores
+ * keys in a primitive array, so lookups neither box nor allocate. It is not thread-safe; owners guard
+ * it with their own lock.
+ *
+ */
+
+final class IntObjectHashMap<V> {
+
+	/**
+	 * Receives the entries of the map
+	 *
+	 */
+	interface Visitor<V> {
+		void visit(int key, V value);
+	}
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	IntObjectHashMap(){
+		this(8);
+	}
+
+	IntObjectHashMap(int expected){
+		allocate(Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1);
+	}
+
+	int size(){
+		return size;
+	}
+
+	boolean isEmpty(){
+		return size == 0;
+	}
+
+	boolean containsKey(int key){
+		return slotOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key){
+		int slot = slotOf(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	/**
+	 * Map a key to a value
+	 * @param key
+	 * @param value not null
+	 * @return the previous value, or null
+	 *
+	 */
+	@SuppressWarnings("unchecked")
+	V put(int key, V value){
+		int i = hash(key);
+		while(values[i] != null){
+			if(keys[i] == key){
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+		if(size + 1 > (mask + 1) * 3 / 4){
+			grow();
+			return put(key, value);
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	V remove(int key){
+		int gap = slotOf(key);
+		if(gap < 0){
+			return null;
+		}
+		V removed = (V) values[gap];
+		// Shift later entries of the probe run back so lookups never stop at the hole
+		int i = (gap + 1) & mask;
+		while(values[i] != null){
+			int ideal = hash(keys[i]);
+			if(((i - ideal) & mask) >= ((i - gap) & mask)){
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		values[gap] = null;
+		size--;
+		return removed;
+	}
+
+	void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	void forEach(Visitor<? super V> visitor){
+		for(int i = 0; i < values.length; i++){
+			if(values[i] != null){
+				visitor.visit(keys[i], (V) values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Keys of the map
+	 * @return the keys in ascending order
+	 *
+	 */
+	int[] sortedKeys(){
+		int[] sorted = new int[size];
+		int count = 0;
+		for(int i = 0; i < values.length; i++){
+			if(values[i] != null){
+				sorted[count++] = keys[i];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private int slotOf(int key){
+		int i = hash(key);
+		while(values[i] != null){
+			if(keys[i] == key){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int hash(int key){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void grow(){
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(oldKeys.length << 1);
+		for(int i = 0; i < oldValues.length; i++){
+			if(oldValues[i] != null){
+				int slot = hash(oldKeys[i]);
+				while(values[slot] != null){
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+}
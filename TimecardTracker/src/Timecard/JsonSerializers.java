@@ -0,0 +1,181 @@
+package Timecard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * JsonSerializers class holds one pre-built, thread-safe Gson per entity type. Department, Employee and
+ * Timecard are written by hand-written adapters (no reflection per call) using the same field names and
+ * date formats the endpoints always returned; reading still goes through Gson's reflective adapter.
+ *
+ */
+
+final class JsonSerializers {
+
+	static final String DATE_FORMAT = "yyyy-MM-dd";
+	static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern(DATE_FORMAT);
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern(TIMESTAMP_FORMAT);
+
+	static final Gson DEPARTMENT = new GsonBuilder()
+			.registerTypeAdapterFactory(new WriteOnly<Department>(Department.class){
+				@Override
+				void write(JsonWriter out, Department dept) throws IOException{
+					out.name("dept_id").value(dept.getId());
+					out.name("company").value(dept.getCompany());
+					out.name("dept_name").value(dept.getDeptName());
+					out.name("dept_no").value(dept.getDeptNo());
+					out.name("location").value(dept.getLocation());
+				}
+			})
+			.create();
+
+	static final Gson EMPLOYEE = new GsonBuilder()
+			.setDateFormat(DATE_FORMAT)
+			.registerTypeAdapterFactory(new WriteOnly<Employee>(Employee.class){
+				@Override
+				void write(JsonWriter out, Employee emp) throws IOException{
+					out.name("emp_id").value(emp.getId());
+					out.name("emp_name").value(emp.getEmpName());
+					out.name("emp_no").value(emp.getEmpNo());
+					out.name("hire_date").value(emp.getHireDate() == null ? null : emp.getHireDate().toLocalDate().format(DATE));
+					out.name("job").value(emp.getJob());
+					out.name("salary").value(emp.getSalary());
+					out.name("dept_id").value(emp.getDeptId());
+					out.name("mng_id").value(emp.getMngId());
+				}
+			})
+			.create();
+
+	static final Gson TIMECARD = new GsonBuilder()
+			.setDateFormat(TIMESTAMP_FORMAT)
+			.registerTypeAdapterFactory(new WriteOnly<Timecard>(Timecard.class){
+				@Override
+				void write(JsonWriter out, Timecard time) throws IOException{
+					out.name("timecard_id").value(time.getId());
+					out.name("start_time").value(timestamp(time.getStartTime()));
+					out.name("end_time").value(timestamp(time.getEndTime()));
+					out.name("emp_id").value(time.getEmpId());
+				}
+			})
+			.create();
+
+	private JsonSerializers(){
+	}
+
+	// A Timestamp in TIMESTAMP_FORMAT, or null
+	static String timestamp(Timestamp time){
+		return time == null ? null : time.toLocalDateTime().format(TIMESTAMP);
+	}
+
+	/**
+	 * Stream a list as a JSON array straight to the response body instead of building it as one String
+	 * @param gson: one of the shared instances above
+	 * @param type
+	 * @param items
+	 * @return StreamingOutput writing the JSON array
+	 *
+	 */
+	static <T> StreamingOutput streamArray(final Gson gson, final Class<T> type, final List<T> items){
+		final TypeAdapter<T> adapter = gson.getAdapter(type);
+		return output -> {
+			JsonWriter out = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+			out.beginArray();
+			for(T item: items){
+				adapter.write(out, item);
+			}
+			out.endArray();
+			out.flush();
+		};
+	}
+
+	/**
+	 * Stream one page of a list as {"items": [...], "next_cursor": id or null}
+	 * @param gson: one of the shared instances above
+	 * @param type
+	 * @param page
+	 * @return StreamingOutput writing the page object
+	 *
+	 */
+	static <T> StreamingOutput streamPage(final Gson gson, final Class<T> type, final KeysetPage<T> page){
+		final TypeAdapter<T> adapter = gson.getAdapter(type);
+		return output -> {
+			JsonWriter out = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+			out.beginObject();
+			out.name("items").beginArray();
+			for(T item: page.items){
+				adapter.write(out, item);
+			}
+			out.endArray();
+			out.name("next_cursor");
+			if(page.nextCursor == KeysetPage.NO_CURSOR){
+				out.jsonValue("null");
+			}else{
+				out.value(page.nextCursor);
+			}
+			out.endObject();
+			out.flush();
+		};
+	}
+
+	/**
+	 * Adapter factory which writes one entity type by hand and leaves reading to Gson's reflective adapter
+	 *
+	 */
+	private static abstract class WriteOnly<T> implements TypeAdapterFactory {
+
+		private final Class<T> type;
+
+		WriteOnly(Class<T> type){
+			this.type = type;
+		}
+
+		abstract void write(JsonWriter out, T value) throws IOException;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> token){
+			if(token.getRawType() != type){
+				return null;
+			}
+			final TypeAdapter<T> reader = gson.getDelegateAdapter(this, TypeToken.get(type));
+			return (TypeAdapter<R>) new TypeAdapter<T>(){
+				@Override
+				public void write(JsonWriter out, T value) throws IOException{
+					if(value == null){
+						out.nullValue();
+						return;
+					}
+					out.beginObject();
+					WriteOnly.this.write(out, value);
+					out.endObject();
+				}
+
+				@Override
+				public T read(JsonReader in) throws IOException{
+					return reader.read(in);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package Timecard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * KeysetPage class cuts one page out of a record list by id: the records with an id greater than the
+ * cursor, in id order, at most limit of them. The id of the last record is the next page's cursor, so
+ * pages stay stable while records are inserted or deleted between requests.
+ *
+ * Page sizes are capped by the timecard.page.maxLimit system property; a request without a limit gets
+ * timecard.page.defaultLimit records.
+ *
+ */
+
+final class KeysetPage<T> {
+
+	private static final String PREFIX = "timecard.page.";
+
+	static final int MAX_LIMIT = Math.max(1, Integer.getInteger(PREFIX + "maxLimit", 500));
+	static final int DEFAULT_LIMIT = Math.min(MAX_LIMIT, Math.max(1, Integer.getInteger(PREFIX + "defaultLimit", 100)));
+
+	/** Cursor of the first page and next_cursor of the last one */
+	static final int NO_CURSOR = 0;
+
+	final List<T> items;
+	final int nextCursor;
+
+	private KeysetPage(List<T> items, int nextCursor){
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Select one page of records
+	 * @param records: in any order
+	 * @param id: id of a record
+	 * @param cursor: id of the last record of the previous page, or NO_CURSOR
+	 * @param limit: requested page size, clamped to MAX_LIMIT
+	 * @return the page
+	 *
+	 */
+	static <T> KeysetPage<T> of(List<T> records, ToIntFunction<T> id, int cursor, int limit){
+		int size = Math.min(limit, MAX_LIMIT);
+		List<T> after = new ArrayList<T>();
+		for(T record: records){
+			if(id.applyAsInt(record) > cursor){
+				after.add(record);
+			}
+		}
+		Collections.sort(after, Comparator.comparingInt(id));
+		if(after.size() <= size){
+			return new KeysetPage<T>(after, NO_CURSOR);
+		}
+		List<T> page = after.subList(0, size);
+		return new KeysetPage<T>(page, id.applyAsInt(page.get(size - 1)));
+	}
+
+	/**
+	 * Check the paging query parameters of a list endpoint
+	 * @param limit: may be null
+	 * @param cursor: may be null
+	 * @return the error message, or null when both are absent or valid
+	 *
+	 */
+	static String validate(Integer limit, Integer cursor){
+		if(limit != null && limit <= 0){
+			return "limit should be greater than 0.";
+		}
+		if(cursor != null && cursor < 0){
+			return "cursor should not be negative.";
+		}
+		return null;
+	}
+}
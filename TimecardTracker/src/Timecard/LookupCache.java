@@ -0,0 +1,148 @@
+package Timecard;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * LookupCache class is a size-bounded, least-recently-used cache of records by id whose entries expire
+ * after a fixed time to live. Misses are loaded by the caller's loader outside the lock; a load that
+ * overlaps an invalidation is not cached, so a writer never has a stale record put back behind it.
+ * Only found records are cached.
+ *
+ * Size and time to live are read from system properties (timecard.cache.*).
+ *
+ */
+
+final class LookupCache<V> {
+
+	/**
+	 * Reads a record from the store on a miss
+	 *
+	 */
+	interface Loader<V> {
+		V load(int id);
+	}
+
+	private static final String PREFIX = "timecard.cache.";
+
+	private final int maxSize;
+	private final long ttlNanos;
+
+	// Access-ordered, so the eldest entry is the least recently used one
+	private final LinkedHashMap<Integer, Cached<V>> entries;
+
+	// Bumped by every invalidation; a load only caches its result if no invalidation happened meanwhile
+	private long generation;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	private long invalidations;
+
+	LookupCache(){
+		this.maxSize = Math.max(1, Integer.getInteger(PREFIX + "maxSize", 10000));
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(PREFIX + "ttlMillis", 60000L));
+		this.entries = new LinkedHashMap<Integer, Cached<V>>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Cached<V>> eldest){
+				if(size() > maxSize){
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Cached record of an id, loading it on a miss
+	 * @param id
+	 * @param loader
+	 * @return the record, or null when the loader found none
+	 *
+	 */
+	V get(int id, Loader<V> loader){
+		long loadGeneration;
+		synchronized(this){
+			Cached<V> entry = entries.get(id);
+			if(entry != null){
+				if(System.nanoTime() - entry.loaded < ttlNanos){
+					hits++;
+					return entry.value;
+				}
+				entries.remove(id);
+				expirations++;
+			}
+			misses++;
+			loadGeneration = generation;
+		}
+		V value = loader.load(id);
+		if(value != null){
+			synchronized(this){
+				if(generation == loadGeneration){
+					entries.put(id, new Cached<V>(value, System.nanoTime()));
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Drop the record of an id, after it was updated or deleted
+	 * @param id
+	 *
+	 */
+	synchronized void invalidate(int id){
+		generation++;
+		invalidations++;
+		entries.remove(id);
+	}
+
+	synchronized void clear(){
+		generation++;
+		invalidations++;
+		entries.clear();
+	}
+
+	JSONObject stats(){
+		JSONObject json = new JSONObject();
+		synchronized(this){
+			// Drop expired entries so size reports live records only
+			long now = System.nanoTime();
+			for(Iterator<Cached<V>> it = entries.values().iterator(); it.hasNext();){
+				if(now - it.next().loaded >= ttlNanos){
+					it.remove();
+					expirations++;
+				}
+			}
+			long lookups = hits + misses;
+			json.put("size", entries.size());
+			json.put("max_size", maxSize);
+			json.put("ttl_ms", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+			json.put("hits", hits);
+			json.put("misses", misses);
+			json.put("hit_ratio", lookups == 0 ? 0.0 : (double) hits / lookups);
+			json.put("evictions", evictions);
+			json.put("expirations", expirations);
+			json.put("invalidations", invalidations);
+		}
+		return json;
+	}
+
+	private static final class Cached<V> {
+		final V value;
+		final long loaded;
+
+		Cached(V value, long loaded){
+			this.value = value;
+			this.loaded = loaded;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package Timecard;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * MeteredStore class times every call to the store it wraps and reports it to Metrics, per method and
+ * per request. It wraps the DataLayer session itself, under CachingStore and ArchivingStore, so it counts
+ * only the calls which reach the database and not the ones a cache answers.
+ *
+ */
+
+final class MeteredStore implements CompanyStore {
+
+	private final CompanyStore store;
+
+	MeteredStore(CompanyStore store){
+		this.store = store;
+	}
+
+	@Override
+	public int deleteCompany(String company){
+		return timed("deleteCompany", () -> store.deleteCompany(company));
+	}
+
+	@Override
+	public Department getDepartment(String company, int deptId){
+		return timed("getDepartment", () -> store.getDepartment(company, deptId));
+	}
+
+	@Override
+	public List<Department> getAllDepartment(String company){
+		return timed("getAllDepartment", () -> store.getAllDepartment(company));
+	}
+
+	@Override
+	public Department insertDepartment(Department department){
+		return timed("insertDepartment", () -> store.insertDepartment(department));
+	}
+
+	@Override
+	public Department updateDepartment(Department department){
+		return timed("updateDepartment", () -> store.updateDepartment(department));
+	}
+
+	@Override
+	public int deleteDepartment(String company, int deptId){
+		return timed("deleteDepartment", () -> store.deleteDepartment(company, deptId));
+	}
+
+	@Override
+	public Employee getEmployee(int empId){
+		return timed("getEmployee", () -> store.getEmployee(empId));
+	}
+
+	@Override
+	public List<Employee> getAllEmployee(String company){
+		return timed("getAllEmployee", () -> store.getAllEmployee(company));
+	}
+
+	@Override
+	public Employee insertEmployee(Employee employee){
+		return timed("insertEmployee", () -> store.insertEmployee(employee));
+	}
+
+	@Override
+	public Employee updateEmployee(Employee employee){
+		return timed("updateEmployee", () -> store.updateEmployee(employee));
+	}
+
+	@Override
+	public int deleteEmployee(int empId){
+		return timed("deleteEmployee", () -> store.deleteEmployee(empId));
+	}
+
+	@Override
+	public List<Employee> insertEmployees(List<Employee> list){
+		return timed("insertEmployees", () -> store.insertEmployees(list));
+	}
+
+	@Override
+	public Timecard getTimecard(int timecardId){
+		return timed("getTimecard", () -> store.getTimecard(timecardId));
+	}
+
+	@Override
+	public List<Timecard> getAllTimecard(int empId){
+		return timed("getAllTimecard", () -> store.getAllTimecard(empId));
+	}
+
+	@Override
+	public void forEachTimecard(int empId, TimecardVisitor visitor){
+		timed("forEachTimecard", () -> {
+			store.forEachTimecard(empId, visitor);
+			return null;
+		});
+	}
+
+	@Override
+	public List<Timecard> getTimecards(int[] timecardIds){
+		return timed("getTimecards", () -> store.getTimecards(timecardIds));
+	}
+
+	@Override
+	public Timecard insertTimecard(Timecard timecard){
+		return timed("insertTimecard", () -> store.insertTimecard(timecard));
+	}
+
+	@Override
+	public Timecard updateTimecard(Timecard timecard){
+		return timed("updateTimecard", () -> store.updateTimecard(timecard));
+	}
+
+	@Override
+	public int deleteTimecard(int timecardId){
+		return timed("deleteTimecard", () -> store.deleteTimecard(timecardId));
+	}
+
+	@Override
+	public List<Timecard> insertTimecards(List<Timecard> timecards){
+		return timed("insertTimecards", () -> store.insertTimecards(timecards));
+	}
+
+	@Override
+	public int deleteTimecardsOfEmployees(int[] empIds){
+		return timed("deleteTimecardsOfEmployees", () -> store.deleteTimecardsOfEmployees(empIds));
+	}
+
+	@Override
+	public int deleteEmployees(int[] empIds){
+		return timed("deleteEmployees", () -> store.deleteEmployees(empIds));
+	}
+
+	@Override
+	public void close(){
+		store.close();
+	}
+
+	private static <T> T timed(String method, Supplier<T> call){
+		long started = System.nanoTime();
+		boolean failed = true;
+		try{
+			T result = call.get();
+			failed = false;
+			return result;
+		}
+		finally{
+			Metrics.recordStore(method, System.nanoTime() - started, failed);
+		}
+	}
+}
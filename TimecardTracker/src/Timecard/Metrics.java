@@ -0,0 +1,188 @@
+package Timecard;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Metrics class collects where the time of the CompanyServices requests goes: latency per endpoint, the
+ * share of it spent in DataLayer calls, latency and failures per DataLayer method, DataLayer calls per
+ * request (a high count points at an N+1 pattern) and error responses by message. GET metrics writes
+ * them in the Prometheus text format.
+ *
+ * MetricsFilter opens a Request for every call; RequestExecutor and ParallelLookups carry it to the
+ * threads doing the work, where MeteredStore charges the DataLayer calls to it.
+ *
+ */
+
+final class Metrics {
+
+	private static final String PREFIX = "timecard.metrics.";
+
+	// Distinct error messages kept apart; the rest are counted together
+	static final int MAX_ERRORS = Math.max(1, Integer.getInteger(PREFIX + "maxErrors", 200));
+
+	private static final double NANOS = 1e9;
+	private static final String OTHER_ERRORS = "other";
+
+	private static final ConcurrentHashMap<String, Histogram> ENDPOINTS = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentHashMap<String, Histogram> ENDPOINT_STORE = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentHashMap<String, Histogram> CALLS = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentHashMap<String, Histogram> STORE = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentHashMap<String, LongAdder> STORE_FAILURES = new ConcurrentHashMap<String, LongAdder>();
+	private static final ConcurrentHashMap<String, LongAdder> ERRORS = new ConcurrentHashMap<String, LongAdder>();
+
+	private static final ThreadLocal<Request> CURRENT = new ThreadLocal<Request>();
+
+	private Metrics(){
+	}
+
+	/**
+	 * Figures of one request in flight
+	 *
+	 */
+	static final class Request {
+		final String endpoint;
+		final long started = System.nanoTime();
+		final AtomicInteger calls = new AtomicInteger();
+		final LongAdder storeNanos = new LongAdder();
+
+		Request(String endpoint){
+			this.endpoint = endpoint;
+		}
+	}
+
+	/**
+	 * Request whose DataLayer calls the current thread is making
+	 * @return the request, or null outside of one
+	 *
+	 */
+	static Request current(){
+		return CURRENT.get();
+	}
+
+	/**
+	 * Charge the current thread's DataLayer calls to a request until detach()
+	 * @param request: null to charge them to none
+	 *
+	 */
+	static void attach(Request request){
+		if(request == null){
+			CURRENT.remove();
+		}else{
+			CURRENT.set(request);
+		}
+	}
+
+	/**
+	 * Stop charging the current thread's DataLayer calls
+	 * @return the request they were charged to, or null
+	 *
+	 */
+	static Request detach(){
+		Request request = CURRENT.get();
+		CURRENT.remove();
+		return request;
+	}
+
+	/**
+	 * Record one DataLayer call
+	 * @param method
+	 * @param nanos
+	 * @param failed: the call threw
+	 *
+	 */
+	static void recordStore(String method, long nanos, boolean failed){
+		histogram(STORE, method, Histogram.LATENCY_NANOS).record(nanos);
+		if(failed){
+			STORE_FAILURES.computeIfAbsent(method, m -> new LongAdder()).increment();
+		}
+		Request request = CURRENT.get();
+		if(request != null){
+			request.calls.incrementAndGet();
+			request.storeNanos.add(nanos);
+		}
+	}
+
+	/**
+	 * Record a finished request
+	 * @param request
+	 * @param error: message of an {"error": ...} response, or null
+	 *
+	 */
+	static void finish(Request request, String error){
+		histogram(ENDPOINTS, request.endpoint, Histogram.LATENCY_NANOS).record(System.nanoTime() - request.started);
+		histogram(ENDPOINT_STORE, request.endpoint, Histogram.LATENCY_NANOS).record(request.storeNanos.sum());
+		histogram(CALLS, request.endpoint, Histogram.COUNTS).record(request.calls.get());
+		if(error != null){
+			// Ids in a message would make each one unique; count them with digits as N
+			String key = error.replaceAll("[0-9]+", "N");
+			LongAdder count = ERRORS.get(key);
+			if(count == null){
+				count = ERRORS.size() < MAX_ERRORS ? ERRORS.computeIfAbsent(key, k -> new LongAdder())
+						: ERRORS.computeIfAbsent(OTHER_ERRORS, k -> new LongAdder());
+			}
+			count.increment();
+		}
+	}
+
+	/**
+	 * All metrics in the Prometheus text exposition format
+	 * @param gauges: extra figures by name, e.g. pool statistics
+	 * @return the exposition
+	 *
+	 */
+	static String prometheus(Map<String, JSONObject> gauges){
+		StringBuilder out = new StringBuilder(8192);
+		histograms(out, "timecard_endpoint_seconds", "Latency of CompanyServices requests", "endpoint", ENDPOINTS, NANOS);
+		histograms(out, "timecard_endpoint_datalayer_seconds", "Time a request spent in DataLayer calls", "endpoint",
+				ENDPOINT_STORE, NANOS);
+		histograms(out, "timecard_endpoint_datalayer_calls", "DataLayer calls per request", "endpoint", CALLS, 1.0);
+		histograms(out, "timecard_datalayer_seconds", "Latency of DataLayer calls", "method", STORE, NANOS);
+		counters(out, "timecard_datalayer_failures_total", "DataLayer calls which threw", "method", STORE_FAILURES);
+		counters(out, "timecard_error_responses_total", "Error responses by message, digits as N", "message", ERRORS);
+		for(Map.Entry<String, JSONObject> group: gauges.entrySet()){
+			for(String key: new TreeSet<String>(group.getValue().keySet())){
+				Object value = group.getValue().get(key);
+				if(value instanceof Number){
+					String name = "timecard_" + group.getKey() + "_" + key;
+					out.append("# TYPE ").append(name).append(" gauge\n");
+					out.append(name).append(' ').append(value).append('\n');
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	private static Histogram histogram(ConcurrentHashMap<String, Histogram> map, String key, long[] bounds){
+		Histogram histogram = map.get(key);
+		return histogram != null ? histogram : map.computeIfAbsent(key, k -> new Histogram(bounds));
+	}
+
+	private static void histograms(StringBuilder out, String name, String help, String label,
+			Map<String, Histogram> map, double scale){
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		for(Map.Entry<String, Histogram> entry: new TreeMap<String, Histogram>(map).entrySet()){
+			entry.getValue().write(out, name, label + "=\"" + escape(entry.getKey()) + "\"", scale);
+		}
+	}
+
+	private static void counters(StringBuilder out, String name, String help, String label, Map<String, LongAdder> map){
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		for(Map.Entry<String, LongAdder> entry: new TreeMap<String, LongAdder>(map).entrySet()){
+			out.append(name).append('{').append(label).append("=\"").append(escape(entry.getKey())).append("\"} ")
+					.append(entry.getValue().sum()).append('\n');
+		}
+	}
+
+	private static String escape(String value){
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,60 @@
+package Timecard;
+
+import java.lang.reflect.Method;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+import org.json.JSONObject;
+
+/**
+ * MetricsFilter class opens a Metrics.Request when a call comes in, named after the resource method
+ * serving it, and records its latency, DataLayer calls and error message when the response goes out.
+ * An asynchronous endpoint's response passes here from the executor thread once it is resumed.
+ *
+ */
+
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+	private static final String PROPERTY = "timecard.metrics.request";
+
+	@Context
+	private ResourceInfo resource;
+
+	@Override
+	public void filter(ContainerRequestContext request){
+		Method method = resource == null ? null : resource.getResourceMethod();
+		Metrics.Request metrics = new Metrics.Request(method == null ? "unmatched" : method.getName());
+		request.setProperty(PROPERTY, metrics);
+		// Picked up by RequestExecutor.submit on this thread, or dropped again on the way out
+		Metrics.attach(metrics);
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request, ContainerResponseContext response){
+		Metrics.detach();
+		Object metrics = request.getProperty(PROPERTY);
+		if(metrics instanceof Metrics.Request){
+			Metrics.finish((Metrics.Request) metrics, error(response.getEntity()));
+		}
+	}
+
+	// Message of an {"error": ...} body; errors go out as 200 responses, so the body is all there is
+	private static String error(Object entity){
+		if(!(entity instanceof String) || !((String) entity).startsWith("{\"error\"")){
+			return null;
+		}
+		try{
+			return new JSONObject((String) entity).optString("error", null);
+		}
+		catch(Exception e){
+			return "unparsable error";
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package Timecard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ParallelLookups class runs the independent validation lookups of a write endpoint at the same time,
+ * so the checks take about as long as the slowest lookup instead of the sum of all of them.
+ *
+ * A session serves one thread at a time, so each lookup is offered to a worker which runs it on an extra
+ * pooled session when one is free right away, while the request's own thread goes on with its own
+ * session. Whatever no worker has started by the time the endpoint asks for its result runs on the
+ * request's session instead, so lookups never wait for the pool. All results must arrive within
+ * timecard.lookups.timeoutMillis of creating the lookups; close() drops the ones not started yet, e.g.
+ * as soon as an earlier check has failed.
+ *
+ */
+
+final class ParallelLookups implements AutoCloseable {
+
+	/**
+	 * One lookup through a session
+	 *
+	 */
+	interface Query<T> {
+		T run(CompanyStore dl) throws Exception;
+	}
+
+	private static final String PREFIX = "timecard.lookups.";
+
+	static final int THREADS = Math.max(1, Integer.getInteger(PREFIX + "threads", 16));
+	static final long TIMEOUT_MILLIS = Math.max(1L, Long.getLong(PREFIX + "timeoutMillis", 5000L));
+
+	// Workers of all requests; when they are busy the requests' own threads run the lookups
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(THREADS, r -> {
+		Thread t = new Thread(r, "lookup-worker");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final DataLayerPool pool;
+	private final CompanyStore own;
+	private final long deadline;
+	private final List<Lookup<?>> lookups = new ArrayList<Lookup<?>>();
+
+	/**
+	 * @param pool: source of the extra sessions
+	 * @param own: the request's own session
+	 *
+	 */
+	ParallelLookups(DataLayerPool pool, CompanyStore own){
+		this.pool = pool;
+		this.own = own;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Offer a lookup to the workers
+	 * @param query
+	 * @return handle whose get() returns the result
+	 *
+	 */
+	<T> Lookup<T> submit(Query<T> query){
+		Lookup<T> lookup = new Lookup<T>(query);
+		lookups.add(lookup);
+		Metrics.Request metrics = Metrics.current();
+		try{
+			WORKERS.execute(() -> {
+				Metrics.attach(metrics);
+				try{
+					lookup.runOnExtraSession();
+				}
+				finally{
+					Metrics.detach();
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			// Left for the request's own session
+		}
+		return lookup;
+	}
+
+	/**
+	 * Drop the lookups no worker has started; running ones finish and give their session back
+	 *
+	 */
+	@Override
+	public void close(){
+		for(Lookup<?> lookup: lookups){
+			lookup.cancel();
+		}
+	}
+
+	/**
+	 * Result of one lookup
+	 *
+	 */
+	final class Lookup<T> {
+
+		private final Query<T> query;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<T> result = new CompletableFuture<T>();
+
+		private Lookup(Query<T> query){
+			this.query = query;
+		}
+
+		/**
+		 * Result of the lookup, running it here on the request's session when no worker has started it
+		 * @return the query's result
+		 * @throws Exception what the query threw, or when the deadline passed
+		 *
+		 */
+		T get() throws Exception{
+			if(started.compareAndSet(false, true)){
+				run(own);
+			}
+			try{
+				return result.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			catch(TimeoutException e){
+				close();
+				throw new Exception("Lookups did not finish within " + TIMEOUT_MILLIS + " ms.");
+			}
+			catch(ExecutionException e){
+				close();
+				Throwable cause = e.getCause();
+				throw cause instanceof Exception ? (Exception) cause : new Exception(cause.getMessage(), cause);
+			}
+			catch(CancellationException e){
+				throw new Exception("Lookup was cancelled.");
+			}
+		}
+
+		private void runOnExtraSession(){
+			if(started.get()){
+				return;
+			}
+			CompanyStore session;
+			try{
+				session = pool.tryBorrow();
+			}
+			catch(Exception e){
+				// No extra session to be had; the request's own session runs the lookup
+				return;
+			}
+			if(session == null){
+				return;
+			}
+			boolean failed = false;
+			try{
+				if(started.compareAndSet(false, true)){
+					failed = !run(session);
+				}
+			}
+			finally{
+				if(failed){
+					pool.invalidate(session);
+				}else{
+					pool.release(session);
+				}
+			}
+		}
+
+		// Whether the query went through; its outcome goes to the result either way
+		private boolean run(CompanyStore session){
+			try{
+				result.complete(query.run(session));
+				return true;
+			}
+			catch(Throwable e){
+				result.completeExceptionally(e);
+				return false;
+			}
+		}
+
+		private void cancel(){
+			if(started.compareAndSet(false, true)){
+				result.cancel(false);
+			}
+		}
+	}
+}
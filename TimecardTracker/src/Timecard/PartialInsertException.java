@@ -0,0 +1,34 @@
+package Timecard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PartialInsertException class is thrown by a batch insert which stopped at a failing row after
+ * storing the rows before it, as the row-by-row DataLayer inserts do. stored() holds those rows, in
+ * the order given, so callers can bind them instead of reporting them as failed.
+ *
+ */
+
+final class PartialInsertException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient List<?> stored;
+
+	PartialInsertException(String key, List<?> stored, int total, RuntimeException cause){
+		super("Insert stopped at row " + stored.size() + " of " + total + "; the " + key
+				+ " rows before it are inserted. " + cause.getMessage(), cause);
+		this.stored = new ArrayList<Object>(stored);
+	}
+
+	/**
+	 * The rows stored before the failing one
+	 * @return the stored rows, in the order given; fewer than were asked for
+	 *
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<T> stored(){
+		return (List<T>) stored;
+	}
+}
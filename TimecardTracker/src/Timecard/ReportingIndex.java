@@ -0,0 +1,258 @@
+package Timecard;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import companydata.Employee;
+
+/**
+ * ReportingIndex class keeps a per-company adjacency index of the reporting tree: the manager of every
+ * employee and the direct reports of every manager, in primitive int arrays. Walking a subtree is then a
+ * breadth-first pass over memory instead of one getEmployee per node, and checking that a new mng_id does
+ * not make an employee manage itself follows the manager chain up, O(depth).
+ *
+ * A company's tree is loaded from the store once, on first use, and is kept coherent afterwards by the
+ * endpoints that insert, update and delete employees.
+ *
+ */
+
+final class ReportingIndex {
+
+	private final ConcurrentHashMap<String, Chart> charts = new ConcurrentHashMap<String, Chart>();
+
+	/**
+	 * Reporting tree of a company, loading it through the given session on first use
+	 * @param dl
+	 * @param company
+	 * @return the company's chart
+	 *
+	 */
+	Chart chart(CompanyStore dl, String company){
+		Chart chart = charts.get(company);
+		if(chart == null){
+			Chart loaded = new Chart();
+			for(Employee emp: dl.getAllEmployee(company)){
+				loaded.put(emp.getId(), emp.getMngId());
+			}
+			chart = charts.putIfAbsent(company, loaded);
+			if(chart == null){
+				chart = loaded;
+			}
+		}
+		return chart;
+	}
+
+	/**
+	 * Forget deleted employees. Companies whose tree was never loaded are left alone.
+	 * @param company
+	 * @param empIds
+	 *
+	 */
+	void removeEmployees(String company, int[] empIds){
+		Chart chart = charts.get(company);
+		if(chart != null){
+			for(int empId: empIds){
+				chart.remove(empId);
+			}
+		}
+	}
+
+	/**
+	 * Drop a company's tree, e.g. after the whole company was deleted. It is reloaded on next use.
+	 * @param company
+	 *
+	 */
+	void clear(String company){
+		charts.remove(company);
+	}
+
+	/**
+	 * Reporting tree of one company
+	 *
+	 */
+	static final class Chart {
+
+		// emp_id -> mng_id of every stored employee
+		private final IntLongHashMap managers = new IntLongHashMap();
+		// mng_id -> row in reports; reports[row] holds counts[row] emp_ids in its first slots
+		private final IntLongHashMap rows = new IntLongHashMap();
+		private int[][] reports = new int[8][];
+		private int[] counts = new int[8];
+		private int rowCount;
+
+		synchronized boolean contains(int empId){
+			return managers.containsKey(empId);
+		}
+
+		/**
+		 * Manager of an employee
+		 * @param empId
+		 * @return the mng_id, 0 when the employee has no manager or is unknown
+		 *
+		 */
+		synchronized int managerOf(int empId){
+			return (int) managers.get(empId, 0L);
+		}
+
+		/**
+		 * Whether making mngId the manager of empId would close a loop, i.e. empId is mngId or one of its
+		 * managers up the chain
+		 * @param empId
+		 * @param mngId
+		 * @return true when the change would form a cycle
+		 *
+		 */
+		synchronized boolean wouldCycle(int empId, int mngId){
+			// Bounded by the number of employees in case the store already holds a loop
+			int steps = managers.size();
+			for(int current = mngId; current != 0 && steps-- >= 0; current = (int) managers.get(current, 0L)){
+				if(current == empId){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Set the manager of an employee unless it would form a cycle
+		 * @param empId
+		 * @param mngId: 0 for none
+		 * @return false, leaving the tree unchanged, when mngId reports to empId
+		 *
+		 */
+		synchronized boolean move(int empId, int mngId){
+			if(wouldCycle(empId, mngId)){
+				return false;
+			}
+			put(empId, mngId);
+			return true;
+		}
+
+		/**
+		 * Record the manager of an inserted or updated employee
+		 * @param empId
+		 * @param mngId: 0 for none
+		 *
+		 */
+		synchronized void put(int empId, int mngId){
+			if(managers.containsKey(empId)){
+				int previous = (int) managers.get(empId, 0L);
+				if(previous == mngId){
+					return;
+				}
+				detach(empId, previous);
+			}
+			managers.put(empId, mngId);
+			if(mngId != 0){
+				attach(empId, mngId);
+			}
+		}
+
+		/**
+		 * Forget a deleted employee. Its reports keep their mng_id, as in the store, and show up again
+		 * under an employee with that id.
+		 * @param empId
+		 *
+		 */
+		synchronized void remove(int empId){
+			if(managers.containsKey(empId)){
+				detach(empId, (int) managers.get(empId, 0L));
+				managers.remove(empId);
+			}
+		}
+
+		/**
+		 * Subtree of an employee, breadth first
+		 * @param empId
+		 * @param depth: levels below empId, 1 for direct reports only
+		 * @return {"emp_id", "depth", "count", "reports": [{"emp_id", "mng_id", "level"}, ...]} level by level,
+		 * or null when the employee is unknown
+		 *
+		 */
+		synchronized JSONObject reports(int empId, int depth){
+			if(!managers.containsKey(empId)){
+				return null;
+			}
+			JSONArray list = new JSONArray();
+			// Queue of visited ids; a loop already in the store is cut where it comes back to a seen node
+			int[] queue = new int[16];
+			IntLongHashMap seen = new IntLongHashMap();
+			queue[0] = empId;
+			seen.put(empId, 0L);
+			int head = 0;
+			int tail = 1;
+			while(head < tail){
+				int manager = queue[head++];
+				int level = (int) seen.get(manager, 0L);
+				if(level == depth){
+					continue;
+				}
+				long row = rows.get(manager, -1L);
+				if(row < 0){
+					continue;
+				}
+				// Direct reports by emp_id, so equal trees list the same way
+				int[] direct = Arrays.copyOf(reports[(int) row], counts[(int) row]);
+				Arrays.sort(direct);
+				for(int report: direct){
+					if(seen.containsKey(report)){
+						continue;
+					}
+					seen.put(report, level + 1);
+					if(tail == queue.length){
+						queue = Arrays.copyOf(queue, tail * 2);
+					}
+					queue[tail++] = report;
+					JSONObject json = new JSONObject();
+					json.put("emp_id", report);
+					json.put("mng_id", manager);
+					json.put("level", level + 1);
+					list.put(json);
+				}
+			}
+			JSONObject json = new JSONObject();
+			json.put("emp_id", empId);
+			json.put("depth", depth);
+			json.put("count", list.length());
+			json.put("reports", list);
+			return json;
+		}
+
+		private void attach(int empId, int mngId){
+			long row = rows.get(mngId, -1L);
+			if(row < 0){
+				if(rowCount == reports.length){
+					reports = Arrays.copyOf(reports, rowCount * 2);
+					counts = Arrays.copyOf(counts, rowCount * 2);
+				}
+				row = rowCount++;
+				reports[(int) row] = new int[4];
+				rows.put(mngId, row);
+			}
+			int r = (int) row;
+			if(counts[r] == reports[r].length){
+				reports[r] = Arrays.copyOf(reports[r], counts[r] * 2);
+			}
+			reports[r][counts[r]++] = empId;
+		}
+
+		// The last report of the row takes the removed slot
+		private void detach(int empId, int mngId){
+			long row = rows.get(mngId, -1L);
+			if(row < 0){
+				return;
+			}
+			int r = (int) row;
+			int[] direct = reports[r];
+			for(int i = 0; i < counts[r]; i++){
+				if(direct[i] == empId){
+					direct[i] = direct[--counts[r]];
+					return;
+				}
+			}
+		}
+	}
+}
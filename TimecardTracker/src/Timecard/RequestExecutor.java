@@ -0,0 +1,113 @@
+package Timecard;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+/**
+ * RequestExecutor class runs the CompanyServices endpoints off the container threads. An endpoint
+ * suspends its AsyncResponse and hands its body to submit(); the body borrows a session, does its
+ * DataLayer calls and the response is resumed from the executor thread, so a container thread is never
+ * held while a request waits for the pool or the database.
+ *
+ * On a runtime with virtual threads every request gets one; otherwise a fixed pool of
+ * timecard.async.threads platform threads with a bounded queue of timecard.async.queueSize requests is
+ * used. A request not answered after timecard.async.timeoutMillis is answered with an error: one still
+ * queued is dropped and never runs, while one already running is left to finish, since stopping it
+ * part way could leave some of its writes done, and the error says its outcome is unknown.
+ *
+ */
+
+final class RequestExecutor {
+
+	private static final String PREFIX = "timecard.async.";
+
+	static final int THREADS = Math.max(1, Integer.getInteger(PREFIX + "threads", 64));
+	static final int QUEUE_SIZE = Math.max(1, Integer.getInteger(PREFIX + "queueSize", 1000));
+	static final long TIMEOUT_MILLIS = Math.max(1L, Long.getLong(PREFIX + "timeoutMillis", 30000L));
+
+	private static final ExecutorService EXECUTOR = create();
+
+	private static final int QUEUED = 0;
+	private static final int RUNNING = 1;
+	private static final int TIMED_OUT = 2;
+
+	private RequestExecutor(){
+	}
+
+	/**
+	 * Run an endpoint body and resume the suspended response with its result
+	 * @param async: the endpoint's suspended response
+	 * @param body: the endpoint's work, returning the response as the synchronous endpoint did
+	 *
+	 */
+	static void submit(AsyncResponse async, Callable<Response> body){
+		// Whichever of the timeout and the executor moves the request on from QUEUED decides whether it runs
+		AtomicInteger state = new AtomicInteger(QUEUED);
+		async.setTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		async.setTimeoutHandler(timedOut -> {
+			if(state.compareAndSet(QUEUED, TIMED_OUT)){
+				timedOut.resume(error("Request timed out before it started; nothing was changed."));
+			}else{
+				timedOut.resume(error("Request timed out while running; it may still complete, check its outcome before retrying."));
+			}
+		});
+		// The request's DataLayer calls are made, and charged to it, on the executor thread
+		Metrics.Request metrics = Metrics.detach();
+		try{
+			EXECUTOR.execute(() -> {
+				if(!state.compareAndSet(QUEUED, RUNNING)){
+					return;
+				}
+				Metrics.attach(metrics);
+				try{
+					Response response;
+					try{
+						response = body.call();
+					}
+					catch(Throwable e){
+						response = error(e.getMessage());
+					}
+					// False when the request already timed out; the late response is dropped
+					async.resume(response);
+				}
+				finally{
+					Metrics.detach();
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			async.resume(error("Server is busy, try again later."));
+		}
+	}
+
+	private static Response error(String message){
+		return Response.ok("{\"error\":\"" + message + "\"}").build();
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor when the runtime has it, looked up so older runtimes still load this class
+	private static ExecutorService create(){
+		try{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e){
+			AtomicInteger count = new AtomicInteger();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), r -> {
+						Thread t = new Thread(r, "companyservices-request-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+			pool.allowCoreThreadTimeOut(true);
+			return pool;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package Timecard;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * ResourceVersions class tracks when the records behind each GET endpoint last changed, so the
+ * endpoints can answer If-None-Match / If-Modified-Since with 304 Not Modified before borrowing a
+ * session or serializing anything.
+ *
+ * Every write bumps the keys it affects to the next value of one server-wide counter; the version of a
+ * response is the highest value among the keys it depends on. A type key (EMPLOYEES, TIMECARDS) covers
+ * writes whose exact records are not known, e.g. cascading deletes. Tags carry a random per-process
+ * prefix so that they never match after a restart, when changes made meanwhile are unknown.
+ *
+ */
+
+final class ResourceVersions {
+
+	static final String EMPLOYEES = "employees";
+	static final String TIMECARDS = "timecards";
+
+	private final String prefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+	private final ConcurrentHashMap<String, Stamp> stamps = new ConcurrentHashMap<String, Stamp>();
+
+	private long counter;
+
+	// Version of every key not bumped since the last bumpAll
+	private volatile Stamp floor = new Stamp(0L, System.currentTimeMillis());
+
+	static String departments(String company){
+		return "departments/" + company;
+	}
+
+	static String employees(String company){
+		return "employees/" + company;
+	}
+
+	static String employee(int empId){
+		return "employee/" + empId;
+	}
+
+	static String timecards(int empId){
+		return "timecards/" + empId;
+	}
+
+	static String timecard(int timecardId){
+		return "timecard/" + timecardId;
+	}
+
+	/**
+	 * Current version of a response
+	 * @param keys: every key the response depends on
+	 * @return the latest stamp among the keys
+	 *
+	 */
+	Stamp current(String... keys){
+		Stamp latest = floor;
+		for(String key: keys){
+			Stamp stamp = stamps.get(key);
+			if(stamp != null && stamp.version > latest.version){
+				latest = stamp;
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * Record a change of the records behind the keys
+	 * @param keys
+	 *
+	 */
+	synchronized void bump(String... keys){
+		Stamp stamp = next();
+		for(String key: keys){
+			stamps.put(key, stamp);
+		}
+	}
+
+	/**
+	 * Record a change of everything, e.g. after a whole company was deleted
+	 *
+	 */
+	synchronized void bumpAll(){
+		// Under the same lock as bump, whose stamp would otherwise be cleared with the older ones
+		floor = next();
+		stamps.clear();
+	}
+
+	private Stamp next(){
+		return new Stamp(++counter, System.currentTimeMillis());
+	}
+
+	/**
+	 * Version and modification time of a response
+	 *
+	 */
+	final class Stamp {
+		final long version;
+		final EntityTag tag;
+		private final long modified;
+
+		private Stamp(long version, long millis){
+			this.version = version;
+			// HTTP dates have whole seconds; rounded up so that no write of this second is after it
+			this.modified = Math.floorDiv(millis + 999L, 1000L) * 1000L;
+			this.tag = new EntityTag(prefix + "-" + version);
+		}
+
+		/**
+		 * Last-Modified of the response
+		 * @return the end of the second of the change, or null until that second is over, since another
+		 * write in it would get the same date and a client sending it back would get a stale 304
+		 *
+		 */
+		Date lastModified(){
+			return System.currentTimeMillis() >= modified ? new Date(modified) : null;
+		}
+	}
+}
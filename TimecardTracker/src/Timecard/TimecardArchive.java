@@ -0,0 +1,406 @@
+package Timecard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * TimecardArchive class keeps the Timecards of closed days, which TimecardRules no longer lets anyone
+ * insert, in read-only ArchiveSegment files, so the primary store holds little more than the open week.
+ * A background job seals every timecard.archive.intervalMillis: it reads the closed Timecards of the
+ * companies in timecard.archive.companies from the primary store, writes them to a new segment and then
+ * deletes them from the primary store. ArchivingStore merges the archive back into every read.
+ *
+ * Segments are never rewritten. Deleting an archived Timecard records a tombstone, kept in memory and
+ * appended to a file next to the segments. CompanyServices archives only when timecard.archive.dir
+ * names the directory of the segments, and closes the archive when the JVM shuts down.
+ *
+ */
+
+final class TimecardArchive {
+
+	private static final String PREFIX = "timecard.archive.";
+
+	private static final String SEGMENT = "segment-";
+	private static final String SUFFIX = ".tca";
+	private static final String TOMBSTONES = "tombstones.dat";
+
+	private final Path directory;
+	private final TimecardRules rules;
+	private final Callable<CompanyStore> primary;
+	private final List<String> companies;
+	private final FileChannel tombstoneLog;
+	private final ScheduledExecutorService sealer;
+
+	// Replaced, never modified, so readers go without a lock
+	private volatile ArchiveSegment[] segments;
+	// Read without a lock; an id is added once it is on disk
+	private final Set<Integer> tombstones = ConcurrentHashMap.newKeySet();
+
+	// Shared by changes to Timecards, held exclusively while sealing, so no Timecard changes while it is sealed
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final AtomicLong seals = new AtomicLong();
+	private final AtomicLong sealed = new AtomicLong();
+	private final AtomicLong sealFailures = new AtomicLong();
+
+	TimecardArchive(Path directory, TimecardRules rules, Callable<CompanyStore> primary, List<String> companies) throws IOException{
+		this.directory = directory;
+		this.rules = rules;
+		this.primary = primary;
+		this.companies = companies;
+		Files.createDirectories(directory);
+
+		List<Path> files = new ArrayList<Path>();
+		try(DirectoryStream<Path> found = Files.newDirectoryStream(directory, SEGMENT + "*" + SUFFIX)){
+			for(Path file: found){
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		// Left by a run which failed before publishing
+		try(DirectoryStream<Path> found = Files.newDirectoryStream(directory, SEGMENT + "*" + SUFFIX + ".tmp")){
+			for(Path file: found){
+				Files.deleteIfExists(file);
+			}
+		}
+		ArchiveSegment[] opened = new ArchiveSegment[files.size()];
+		for(int i = 0; i < opened.length; i++){
+			opened[i] = ArchiveSegment.open(files.get(i));
+		}
+		this.segments = opened;
+
+		// A torn last id is dropped; its delete was never acknowledged
+		Path buried = directory.resolve(TOMBSTONES);
+		ByteBuffer ids = ByteBuffer.wrap(Files.exists(buried) ? Files.readAllBytes(buried) : new byte[0]);
+		while(ids.remaining() >= 4){
+			tombstones.add(ids.getInt());
+		}
+		long complete = ids.position();
+		this.tombstoneLog = FileChannel.open(buried, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		tombstoneLog.truncate(complete);
+		tombstoneLog.position(complete);
+
+		long interval = Math.max(1000L, Long.getLong(PREFIX + "intervalMillis", 3600000L));
+		this.sealer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "timecard-archive-sealer");
+			t.setDaemon(true);
+			return t;
+		});
+		sealer.scheduleWithFixedDelay(this::sealQuietly, Math.min(interval, 60000L), interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The archive configured by timecard.archive.*
+	 * @param rules: which days are closed
+	 * @param primary: opens a session of the primary store, without the archive
+	 * @param company: archived when timecard.archive.companies is not set
+	 * @return the archive, or null when timecard.archive.dir is not set
+	 *
+	 */
+	static TimecardArchive configured(TimecardRules rules, Callable<CompanyStore> primary, String company){
+		String dir = System.getProperty(PREFIX + "dir", "").trim();
+		if(dir.isEmpty()){
+			return null;
+		}
+		List<String> companies = new ArrayList<String>();
+		for(String name: System.getProperty(PREFIX + "companies", company).split(",")){
+			if(!name.trim().isEmpty()){
+				companies.add(name.trim());
+			}
+		}
+		try{
+			TimecardArchive archive = new TimecardArchive(Paths.get(dir), rules, primary, companies);
+			Runtime.getRuntime().addShutdownHook(new Thread(archive::close, "timecard-archive-shutdown"));
+			return archive;
+		}
+		catch(IOException e){
+			throw new UncheckedIOException("Timecard archive in " + dir + " cannot be opened", e);
+		}
+	}
+
+	/**
+	 * Whether a Timecard is archived and not deleted
+	 * @param timecardId
+	 *
+	 */
+	boolean contains(int timecardId){
+		return !tombstones.contains(timecardId) && find(timecardId, (id, empId, start, end) -> {});
+	}
+
+	/**
+	 * Read an archived Timecard
+	 * @param timecardId
+	 * @return the Timecard, or null when it is not archived or deleted
+	 *
+	 */
+	Timecard get(int timecardId){
+		Timecard[] found = new Timecard[1];
+		if(!tombstones.contains(timecardId)){
+			find(timecardId, (id, empId, start, end) -> found[0] = timecard(id, empId, start, end));
+		}
+		return found[0];
+	}
+
+	/**
+	 * Visit the archived Timecards of an Employee, oldest segment first and by start within a segment
+	 * @param empId
+	 * @param visitor
+	 *
+	 */
+	void forEach(int empId, ArchiveSegment.Visitor visitor){
+		for(ArchiveSegment segment: segments){
+			segment.forEach(empId, Long.MIN_VALUE, Long.MAX_VALUE, (id, emp, start, end) -> {
+				if(!tombstones.contains(id)){
+					visitor.visit(id, emp, start, end);
+				}
+			});
+		}
+	}
+
+	static Timecard timecard(int timecardId, int empId, long startSecond, long endSecond){
+		return new Timecard(timecardId, new Timestamp(startSecond * 1000L), new Timestamp(endSecond * 1000L), empId);
+	}
+
+	/**
+	 * Run a change to Timecards while no sealing is going on
+	 * @param change
+	 * @return its result
+	 *
+	 */
+	<T> T guarded(Supplier<T> change){
+		lock.readLock().lock();
+		try{
+			return change.get();
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Delete an archived Timecard; the caller holds guarded()
+	 * @param timecardId
+	 * @return 1 when it was archived, else 0
+	 *
+	 */
+	synchronized int delete(int timecardId){
+		if(!contains(timecardId)){
+			return 0;
+		}
+		bury(new int[]{timecardId});
+		return 1;
+	}
+
+	/**
+	 * Delete the archived Timecards of Employees; the caller holds guarded()
+	 * @param empIds
+	 * @return the number deleted
+	 *
+	 */
+	synchronized int deleteEmployees(int[] empIds){
+		IntLongHashMap found = new IntLongHashMap();
+		for(int empId: empIds){
+			forEach(empId, (id, emp, start, end) -> found.put(id, 0L));
+		}
+		int[] ids = found.sortedKeys();
+		if(ids.length > 0){
+			bury(ids);
+		}
+		return ids.length;
+	}
+
+	/**
+	 * Move the Timecards of closed days from the primary store into a new segment
+	 * @return the number of Timecards sealed
+	 * @throws Exception when the primary store or the directory fail; Timecards not yet deleted from the
+	 * primary store are sealed again by the next run
+	 *
+	 */
+	int seal() throws Exception{
+		CompanyStore dl = primary.call();
+		try{
+			long firstOpenDay = rules.firstOpenDay();
+			// Found without the lock, so Timecards can still change while the primary store is scanned
+			IntLongHashMap candidates = new IntLongHashMap();
+			for(String company: companies){
+				for(Employee emp: dl.getAllEmployee(company)){
+					dl.forEachTimecard(emp.getId(), (timecardId, startMillis, endMillis) -> {
+						if(isClosed(startMillis, firstOpenDay)){
+							candidates.put(timecardId, 0L);
+						}
+					});
+				}
+			}
+			if(candidates.size() == 0){
+				seals.incrementAndGet();
+				return 0;
+			}
+			lock.writeLock().lock();
+			try{
+				// Read again, since a candidate may have been updated or deleted after it was found
+				List<Timecard> closed = new ArrayList<Timecard>();
+				for(Timecard time: dl.getTimecards(candidates.sortedKeys())){
+					if(isClosed(time.getStartTime().getTime(), firstOpenDay)){
+						closed.add(time);
+					}
+				}
+				closed.sort((a, b) -> a.getEmpId() != b.getEmpId() ? Integer.compare(a.getEmpId(), b.getEmpId())
+						: a.getStartTime().getTime() != b.getStartTime().getTime()
+						? Long.compare(a.getStartTime().getTime(), b.getStartTime().getTime()) : Integer.compare(a.getId(), b.getId()));
+				Path file = directory.resolve(String.format("%s%019d%s", SEGMENT, System.currentTimeMillis(), SUFFIX));
+				try(ArchiveSegment.Writer writer = new ArchiveSegment.Writer(file)){
+					for(Timecard time: closed){
+						// Left behind by a run which failed after publishing its segment; only the delete is missing
+						if(!find(time.getId(), (id, emp, start, end) -> {})){
+							writer.add(time.getId(), time.getEmpId(), Math.floorDiv(time.getStartTime().getTime(), 1000L),
+									Math.floorDiv(time.getEndTime().getTime(), 1000L));
+						}
+					}
+					if(writer.count() > 0){
+						ArchiveSegment[] published = Arrays.copyOf(segments, segments.length + 1);
+						published[segments.length] = writer.publish();
+						segments = published;
+						sealed.addAndGet(writer.count());
+					}
+				}
+				for(Timecard time: closed){
+					dl.deleteTimecard(time.getId());
+				}
+				seals.incrementAndGet();
+				return closed.size();
+			}
+			finally{
+				lock.writeLock().unlock();
+			}
+		}
+		finally{
+			dl.close();
+		}
+	}
+
+	private boolean isClosed(long startMillis, long firstOpenDay){
+		return TimecardRules.epochDay(rules.toLocalSeconds(startMillis)) < firstOpenDay;
+	}
+
+	private void sealQuietly(){
+		try{
+			seal();
+		}
+		catch(Exception e){
+			sealFailures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Stop the sealing job, letting a run under way finish, and close the tombstone file
+	 *
+	 */
+	void close(){
+		sealer.shutdown();
+		try{
+			sealer.awaitTermination(30L, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		synchronized(this){
+			try{
+				tombstoneLog.close();
+			}
+			catch(IOException e){
+				// Every tombstone was forced when it was written
+			}
+		}
+	}
+
+	/**
+	 * Archived Timecards and the sealing job's counters
+	 *
+	 */
+	JSONObject stats(){
+		ArchiveSegment[] current = segments;
+		long timecards = 0L;
+		long bytes = 0L;
+		for(ArchiveSegment segment: current){
+			timecards += segment.count();
+			bytes += segment.bytes();
+		}
+		JSONObject json = new JSONObject();
+		json.put("segments", current.length);
+		json.put("timecards", timecards);
+		json.put("segment_bytes", bytes);
+		json.put("tombstones", tombstones.size());
+		json.put("seals", seals.get());
+		json.put("sealed", sealed.get());
+		json.put("seal_failures", sealFailures.get());
+		return json;
+	}
+
+	private boolean find(int timecardId, ArchiveSegment.Visitor visitor){
+		for(ArchiveSegment segment: segments){
+			if(segment.find(timecardId, visitor)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Record deleted ids on disk before they disappear from reads
+	private synchronized void bury(int[] ids){
+		ByteBuffer buffer = ByteBuffer.allocate(ids.length * 4);
+		for(int id: ids){
+			buffer.putInt(id);
+		}
+		buffer.flip();
+		long start = -1L;
+		try{
+			start = tombstoneLog.position();
+			while(buffer.hasRemaining()){
+				tombstoneLog.write(buffer);
+			}
+			tombstoneLog.force(false);
+		}
+		catch(IOException e){
+			try{
+				// Leave no partial id for the next write to be misread after
+				if(start >= 0L){
+					tombstoneLog.truncate(start);
+					tombstoneLog.position(start);
+				}
+			}
+			catch(IOException ignored){
+				// The torn id is dropped when the file is next read
+			}
+			throw new UncheckedIOException("Timecard archive tombstones cannot be written", e);
+		}
+		for(int id: ids){
+			tombstones.add(id);
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package Timecard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import companydata.Timecard;
+
+/**
+ * TimecardBatch class imports many timecards in one request. The body is read in full and the entries
+ * are checked in order with the same rules and messages as insertTimecard; each employee is looked up
+ * once per batch and its start days come from the shared TimecardDayIndex. Accepted entries are
+ * inserted each time timecard.batch.insertSize of them are waiting, so later entries are checked after
+ * earlier ones are written.
+ *
+ * A batch is not atomic: every entry gets its own result, and a rejected entry does not stop the others.
+ * When a store insert stops part way, the timecards it stored are reported as inserted and the rest of
+ * its chunk as failed.
+ *
+ */
+
+final class TimecardBatch {
+
+	private static final String PREFIX = "timecard.batch.";
+
+	static final int MAX_ENTRIES = Math.max(1, Integer.getInteger(PREFIX + "maxEntries", 10000));
+	static final int INSERT_SIZE = Math.max(1, Integer.getInteger(PREFIX + "insertSize", 500));
+
+	private static final String NOT_AN_OBJECT = "timecard should be a JSON object.";
+	private static final String START_FORMAT = "start_date should be in yyyy-MM-dd HH:mm:ss format.";
+	private static final String END_FORMAT = "end_date should be in yyyy-MM-dd HH:mm:ss format.";
+	private static final String NO_EMP_ID = "emp_id should not be empty.";
+	private static final String SAME_START_DAY = "Exiting record with same start day";
+	private static final String NO_EMPLOYEE = "No matching emp_Id found";
+
+	private final List<Entry> entries;
+	private int inserted;
+
+	private TimecardBatch(List<Entry> entries){
+		this.entries = entries;
+	}
+
+	/**
+	 * Read a batch from a JSON array of timecards or from newline-delimited JSON, one timecard per line
+	 * @param body
+	 * @return the batch, with format errors already recorded on their entries
+	 * @throws IOException when the body is not valid JSON
+	 * @throws IllegalArgumentException when the body holds more than MAX_ENTRIES timecards
+	 *
+	 */
+	static TimecardBatch read(Reader body) throws IOException{
+		return new TimecardBatch(BatchReader.read(body, MAX_ENTRIES, "timecards", Entry::parse));
+	}
+
+	/**
+	 * Check the entries which parsed and insert the accepted ones
+	 * @param dl
+	 * @param days
+	 * @param weeks
+	 * @param rules
+	 *
+	 */
+	void insert(CompanyStore dl, TimecardDayIndex days, WeeklyHoursRollup weeks, TimecardRules rules){
+		long now = rules.nowLocal();
+		Map<Integer, Boolean> employees = new HashMap<Integer, Boolean>();
+		List<Entry> claimed = new ArrayList<Entry>(Math.min(INSERT_SIZE, entries.size()));
+		try{
+			for(Entry entry: entries){
+				if(entry.error != null){
+					continue;
+				}
+				try{
+					if(check(entry, dl, days, rules, now, employees)){
+						claimed.add(entry);
+						if(claimed.size() == INSERT_SIZE){
+							flush(dl, weeks, claimed);
+						}
+					}
+				}
+				catch(Exception e){
+					entry.error = e.getMessage();
+				}
+			}
+			flush(dl, weeks, claimed);
+		}
+		finally{
+			// Only left over when the loop was cut short; give their days back
+			for(Entry entry: claimed){
+				entry.days.unclaim(entry.day);
+			}
+		}
+	}
+
+	// Same checks and order as insertTimecard; on success the entry's start day is claimed
+	private boolean check(Entry entry, CompanyStore dl, TimecardDayIndex days, TimecardRules rules, long now,
+			Map<Integer, Boolean> employees){
+		Boolean exists = employees.get(entry.empId);
+		if(exists == null){
+			exists = dl.getEmployee(entry.empId) != null;
+			employees.put(entry.empId, exists);
+		}
+		TimecardDayIndex.Days empDays = days.days(dl, entry.empId);
+		if(empDays.contains(entry.day)){
+			entry.error = SAME_START_DAY;
+			return false;
+		}
+		if(!exists){
+			entry.error = NO_EMPLOYEE;
+			return false;
+		}
+		String violation = rules.checkTimecard(entry.start, entry.end, now);
+		if(violation != null){
+			entry.error = violation;
+			return false;
+		}
+		if(!empDays.claim(entry.day)){
+			entry.error = SAME_START_DAY;
+			return false;
+		}
+		entry.days = empDays;
+		return true;
+	}
+
+	// Insert the claimed entries as one store batch and bind or give back their days
+	private void flush(CompanyStore dl, WeeklyHoursRollup weeks, List<Entry> claimed){
+		if(claimed.isEmpty()){
+			return;
+		}
+		List<Timecard> timecards = new ArrayList<Timecard>(claimed.size());
+		for(Entry entry: claimed){
+			timecards.add(new Timecard(TimecardRules.toTimestamp(entry.start), TimecardRules.toTimestamp(entry.end), entry.empId));
+		}
+		List<Timecard> stored = null;
+		String failure = "Timecard could not be inserted";
+		try{
+			stored = dl.insertTimecards(timecards);
+		}
+		catch(PartialInsertException e){
+			// The rows before the failing one are in the store and keep their days
+			stored = e.stored();
+			failure = e.getMessage();
+		}
+		catch(Exception e){
+			failure = e.getMessage();
+		}
+		// Entries before this one are bound or given back
+		int resolved = 0;
+		try{
+			for(int i = 0; i < claimed.size(); i++){
+				Entry entry = claimed.get(i);
+				Timecard time = stored == null || i >= stored.size() ? null : stored.get(i);
+				if(time != null && time.getId() != 0){
+					entry.days.commit(time.getId(), entry.day);
+					resolved = i + 1;
+					entry.timecardId = time.getId();
+					inserted++;
+					weeks.put(dl, time.getId(), entry.empId, entry.start, entry.end);
+				}else{
+					entry.days.unclaim(entry.day);
+					resolved = i + 1;
+					entry.error = failure;
+				}
+			}
+		}
+		finally{
+			// Settle only the entries a failure cut off: bind the stored ones, give back the rest
+			for(int i = resolved; i < claimed.size(); i++){
+				Entry entry = claimed.get(i);
+				Timecard time = stored == null || i >= stored.size() ? null : stored.get(i);
+				if(time != null && time.getId() != 0){
+					entry.days.commit(time.getId(), entry.day);
+				}else{
+					entry.days.unclaim(entry.day);
+				}
+			}
+			claimed.clear();
+		}
+	}
+
+	/**
+	 * Stream the outcome as {"inserted": n, "failed": n, "results": [{"index": i, "timecard_id": id} or
+	 * {"index": i, "error": message}, ...]}
+	 * @return StreamingOutput writing the results
+	 *
+	 */
+	StreamingOutput results(){
+		return output -> {
+			JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+			out.beginObject();
+			out.name("inserted").value(inserted);
+			out.name("failed").value(entries.size() - inserted);
+			out.name("results").beginArray();
+			for(Entry entry: entries){
+				out.beginObject();
+				out.name("index").value(entry.index);
+				if(entry.error == null){
+					out.name("timecard_id").value(entry.timecardId);
+				}else{
+					out.name("error").value(entry.error);
+				}
+				out.endObject();
+			}
+			out.endArray();
+			out.endObject();
+			out.flush();
+		};
+	}
+
+	/**
+	 * One timecard of the batch and its result
+	 *
+	 */
+	private static final class Entry {
+		final int index;
+		int empId;
+		long start;
+		long end;
+		long day;
+		TimecardDayIndex.Days days;
+		int timecardId;
+		String error;
+
+		private Entry(int index){
+			this.index = index;
+		}
+
+		static Entry parse(int index, JsonElement element){
+			Entry entry = new Entry(index);
+			if(!element.isJsonObject()){
+				entry.error = NOT_AN_OBJECT;
+				return entry;
+			}
+			JsonObject json = element.getAsJsonObject();
+			entry.start = TimestampParser.parseDateTime(string(json, "start_time"));
+			if(entry.start == TimestampParser.INVALID){
+				entry.error = START_FORMAT;
+				return entry;
+			}
+			entry.end = TimestampParser.parseDateTime(string(json, "end_time"));
+			if(entry.end == TimestampParser.INVALID){
+				entry.error = END_FORMAT;
+				return entry;
+			}
+			entry.empId = number(json, "emp_id");
+			if(entry.empId == 0){
+				entry.error = NO_EMP_ID;
+				return entry;
+			}
+			entry.day = TimecardRules.epochDay(entry.start);
+			return entry;
+		}
+
+		private static String string(JsonObject json, String name){
+			JsonElement value = json.get(name);
+			return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+		}
+
+		// Like JSONObject.optInt: 0 when the field is missing or not a number
+		private static int number(JsonObject json, String name){
+			JsonElement value = json.get(name);
+			if(value == null || !value.isJsonPrimitive()){
+				return 0;
+			}
+			try{
+				return value.getAsInt();
+			}
+			catch(NumberFormatException e){
+				return 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package Timecard;
+
+import java.util.Arrays;
+
+/**
+ * TimecardColumns class holds the Timecards of one employee as a single byte array instead of one
+ * object per Timecard: sorted by start, each entry is the difference to the previous entry's
+ * timecard_id, the difference to the previous start in epoch seconds and the duration in seconds, all
+ * zigzag varints. A working day of punches takes around ten bytes, against more than a hundred for a
+ * Timecard with two Timestamps in a map.
+ *
+ * Entries are encoded in blocks of up to BLOCK, each starting from zero so it can be decoded or
+ * rewritten on its own. A sparse index of every block's offset, first start and lowest and highest
+ * timecard_id, a few bytes per BLOCK entries, leads a range query to its first block and a lookup or a
+ * remove by id to the blocks which may hold it, instead of decoding from the front.
+ *
+ * Appending in start order is cheap; out-of-order appends leave the columns unsorted until sort(), so a
+ * batch is sorted once. It is not thread-safe; owners guard it with their own lock.
+ *
+ */
+
+final class TimecardColumns {
+
+	/**
+	 * Receives the decoded Timecards
+	 *
+	 */
+	interface Visitor {
+		void visit(int timecardId, long startSecond, long endSecond);
+	}
+
+	static final int BLOCK = 64;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private byte[] data = EMPTY;
+	private int length;
+	private int size;
+
+	// Per block: offset of its first entry, number of entries, start of its first entry, lowest and highest timecard_id
+	private int blocks;
+	private int[] offsets = new int[0];
+	private int[] counts = new int[0];
+	private long[] firstStarts = new long[0];
+	private int[] minIds = new int[0];
+	private int[] maxIds = new int[0];
+
+	// Last entry, which the next append is encoded against
+	private int lastId;
+	private long lastStart;
+	private boolean sorted = true;
+
+	int size(){
+		return size;
+	}
+
+	boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Whether the entries are in start order
+	 *
+	 */
+	boolean isSorted(){
+		return sorted;
+	}
+
+	/**
+	 * Bytes held by the encoded entries
+	 *
+	 */
+	int bytes(){
+		return length;
+	}
+
+	/**
+	 * An independent copy, e.g. to read after the owner's lock is released
+	 *
+	 */
+	TimecardColumns copy(){
+		TimecardColumns copy = new TimecardColumns();
+		copy.data = length == 0 ? EMPTY : Arrays.copyOf(data, length);
+		copy.length = length;
+		copy.size = size;
+		copy.blocks = blocks;
+		copy.offsets = Arrays.copyOf(offsets, blocks);
+		copy.counts = Arrays.copyOf(counts, blocks);
+		copy.firstStarts = Arrays.copyOf(firstStarts, blocks);
+		copy.minIds = Arrays.copyOf(minIds, blocks);
+		copy.maxIds = Arrays.copyOf(maxIds, blocks);
+		copy.lastId = lastId;
+		copy.lastStart = lastStart;
+		copy.sorted = sorted;
+		return copy;
+	}
+
+	/**
+	 * Add a Timecard
+	 * @param timecardId
+	 * @param startSecond: epoch seconds
+	 * @param endSecond: epoch seconds
+	 *
+	 */
+	void append(int timecardId, long startSecond, long endSecond){
+		if(size > 0 && (startSecond < lastStart || startSecond == lastStart && timecardId < lastId)){
+			sorted = false;
+		}
+		if(blocks == 0 || counts[blocks - 1] == BLOCK){
+			openBlock(startSecond);
+		}
+		int block = blocks - 1;
+		boolean first = counts[block] == 0;
+		ensure(length + 3 * 10);
+		writeVarLong(first ? timecardId : (long) timecardId - lastId);
+		writeVarLong(first ? startSecond : startSecond - lastStart);
+		writeVarLong(endSecond - startSecond);
+		minIds[block] = first ? timecardId : Math.min(minIds[block], timecardId);
+		maxIds[block] = first ? timecardId : Math.max(maxIds[block], timecardId);
+		counts[block]++;
+		lastId = timecardId;
+		lastStart = startSecond;
+		size++;
+	}
+
+	/**
+	 * Remove a Timecard, rewriting only the block which holds it
+	 * @param timecardId
+	 * @return whether it was there
+	 *
+	 */
+	boolean remove(int timecardId){
+		for(int block = 0; block < blocks; block++){
+			if(timecardId >= minIds[block] && timecardId <= maxIds[block] && remove(block, timecardId)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Put the entries back in start order after out-of-order appends
+	 *
+	 */
+	void sort(){
+		if(sorted){
+			return;
+		}
+		int[] ids = new int[size];
+		long[] starts = new long[size];
+		long[] ends = new long[size];
+		int count = decode(ids, starts, ends);
+		Integer[] order = new Integer[count];
+		for(int i = 0; i < count; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Long.compare(starts[a], starts[b]) : Integer.compare(ids[a], ids[b]));
+		int[] sortedIds = new int[count];
+		long[] sortedStarts = new long[count];
+		long[] sortedEnds = new long[count];
+		for(int i = 0; i < count; i++){
+			sortedIds[i] = ids[order[i]];
+			sortedStarts[i] = starts[order[i]];
+			sortedEnds[i] = ends[order[i]];
+		}
+		encode(sortedIds, sortedStarts, sortedEnds, count);
+	}
+
+	/**
+	 * Decode one Timecard
+	 * @param timecardId
+	 * @param visitor: called once when the Timecard is there
+	 * @return whether it was there
+	 *
+	 */
+	boolean find(int timecardId, Visitor visitor){
+		boolean[] found = {false};
+		for(int block = 0; block < blocks && !found[0]; block++){
+			if(timecardId >= minIds[block] && timecardId <= maxIds[block]){
+				decode(block, (id, start, end) -> {
+					if(id == timecardId && !found[0]){
+						found[0] = true;
+						visitor.visit(id, start, end);
+					}
+				});
+			}
+		}
+		return found[0];
+	}
+
+	/**
+	 * Decode the Timecards among some timecard_ids, decoding only the blocks which may hold them
+	 * @param timecardIds: sorted
+	 * @param visitor: called once for each one there, in the order of the entries
+	 *
+	 */
+	void find(int[] timecardIds, Visitor visitor){
+		for(int block = 0; block < blocks; block++){
+			int at = Arrays.binarySearch(timecardIds, minIds[block]);
+			at = at >= 0 ? at : -at - 1;
+			if(at == timecardIds.length || timecardIds[at] > maxIds[block]){
+				continue;
+			}
+			decode(block, (id, start, end) -> {
+				if(Arrays.binarySearch(timecardIds, id) >= 0){
+					visitor.visit(id, start, end);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Decode every Timecard, in start order once sorted
+	 * @param visitor
+	 *
+	 */
+	void forEach(Visitor visitor){
+		between(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+	}
+
+	/**
+	 * Decode the Timecards starting within a range, in start order once sorted; unsorted columns are
+	 * decoded in full
+	 * @param fromSecond: first start included, epoch seconds
+	 * @param toSecond: last start included, epoch seconds
+	 * @param visitor
+	 *
+	 */
+	void between(long fromSecond, long toSecond, Visitor visitor){
+		for(int block = sorted ? firstBlock(fromSecond) : 0; block < blocks; block++){
+			if(sorted && firstStarts[block] > toSecond){
+				return;
+			}
+			int[] position = {offsets[block]};
+			int id = 0;
+			long start = 0L;
+			for(int i = 0; i < counts[block]; i++){
+				id += (int) readVarLong(position);
+				start += readVarLong(position);
+				long duration = readVarLong(position);
+				if(start > toSecond && sorted){
+					return;
+				}
+				if(start >= fromSecond && start <= toSecond){
+					visitor.visit(id, start, start + duration);
+				}
+			}
+		}
+	}
+
+	/**
+	 * timecard_ids of all entries
+	 *
+	 */
+	int[] ids(){
+		int[] ids = new int[size];
+		int[] count = {0};
+		forEach((id, start, end) -> ids[count[0]++] = id);
+		return ids;
+	}
+
+	// Last block starting before fromSecond; in sorted columns the range cannot start earlier
+	private int firstBlock(long fromSecond){
+		int low = 0;
+		int high = blocks - 1;
+		int block = 0;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			if(firstStarts[mid] < fromSecond){
+				block = mid;
+				low = mid + 1;
+			}else{
+				high = mid - 1;
+			}
+		}
+		return block;
+	}
+
+	private void decode(int block, Visitor visitor){
+		int[] position = {offsets[block]};
+		int id = 0;
+		long start = 0L;
+		for(int i = 0; i < counts[block]; i++){
+			id += (int) readVarLong(position);
+			start += readVarLong(position);
+			visitor.visit(id, start, start + readVarLong(position));
+		}
+	}
+
+	private int decode(int[] ids, long[] starts, long[] ends){
+		int[] count = {0};
+		forEach((id, start, end) -> {
+			ids[count[0]] = id;
+			starts[count[0]] = start;
+			ends[count[0]] = end;
+			count[0]++;
+		});
+		return count[0];
+	}
+
+	// Encode the block again without the Timecard, in place, and move the blocks behind it
+	private boolean remove(int block, int timecardId){
+		TimecardColumns rest = new TimecardColumns();
+		decode(block, (id, start, end) -> {
+			if(id != timecardId){
+				rest.append(id, start, end);
+			}
+		});
+		if(rest.size == counts[block]){
+			return false;
+		}
+		int from = offsets[block];
+		int to = block + 1 < blocks ? offsets[block + 1] : length;
+		int shift = rest.length - (to - from);
+		ensure(length + shift);
+		System.arraycopy(data, to, data, to + shift, length - to);
+		System.arraycopy(rest.data, 0, data, from, rest.length);
+		length += shift;
+		for(int later = block + 1; later < blocks; later++){
+			offsets[later] += shift;
+		}
+		size--;
+		boolean last = block == blocks - 1;
+		if(rest.isEmpty()){
+			dropBlock(block);
+		}else{
+			counts[block] = rest.size;
+			firstStarts[block] = rest.firstStarts[0];
+			minIds[block] = rest.minIds[0];
+			maxIds[block] = rest.maxIds[0];
+		}
+		if(last){
+			// The next append is encoded against the new last entry
+			lastId = 0;
+			lastStart = 0L;
+			if(blocks > 0){
+				decode(blocks - 1, (id, start, end) -> {
+					lastId = id;
+					lastStart = start;
+				});
+			}
+		}
+		trim();
+		return true;
+	}
+
+	private void openBlock(long firstStart){
+		if(blocks == offsets.length){
+			int capacity = Math.max(4, blocks * 2);
+			offsets = Arrays.copyOf(offsets, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			firstStarts = Arrays.copyOf(firstStarts, capacity);
+			minIds = Arrays.copyOf(minIds, capacity);
+			maxIds = Arrays.copyOf(maxIds, capacity);
+		}
+		offsets[blocks] = length;
+		counts[blocks] = 0;
+		firstStarts[blocks] = firstStart;
+		blocks++;
+	}
+
+	private void dropBlock(int block){
+		int moved = blocks - block - 1;
+		System.arraycopy(offsets, block + 1, offsets, block, moved);
+		System.arraycopy(counts, block + 1, counts, block, moved);
+		System.arraycopy(firstStarts, block + 1, firstStarts, block, moved);
+		System.arraycopy(minIds, block + 1, minIds, block, moved);
+		System.arraycopy(maxIds, block + 1, maxIds, block, moved);
+		blocks--;
+	}
+
+	// Replace the entries, which must be in start order
+	private void encode(int[] ids, long[] starts, long[] ends, int count){
+		data = count == 0 ? EMPTY : new byte[count * 6];
+		length = 0;
+		size = 0;
+		blocks = 0;
+		lastId = 0;
+		lastStart = 0L;
+		sorted = true;
+		for(int i = 0; i < count; i++){
+			append(ids[i], starts[i], ends[i]);
+		}
+		trim();
+	}
+
+	// Appends grow the array by half; give the slack back
+	private void trim(){
+		if(data.length > length + length / 8 + 32){
+			data = length == 0 ? EMPTY : Arrays.copyOf(data, length);
+		}
+	}
+
+	private void ensure(int capacity){
+		if(capacity > data.length){
+			data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1)));
+		}
+	}
+
+	private void writeVarLong(long value){
+		long zigzag = (value << 1) ^ (value >> 63);
+		while((zigzag & ~0x7FL) != 0){
+			data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		data[length++] = (byte) zigzag;
+	}
+
+	// Readers share the columns, so each keeps its own position
+	private long readVarLong(int[] position){
+		long zigzag = 0L;
+		int shift = 0;
+		byte b;
+		do{
+			b = data[position[0]++];
+			zigzag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while(b < 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
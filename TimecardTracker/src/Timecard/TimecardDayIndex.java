@@ -0,0 +1,257 @@
+package Timecard;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+
+/**
+ * TimecardDayIndex class answers "does this employee already have a timecard starting on day D" in O(1)
+ * with a per-employee hash of epoch-days (in the server time zone, like the original Calendar check).
+ * The same start days, kept sorted, answer "which timecards start between day A and day B" in
+ * O(log n + k).
+ *
+ * An employee's timecards are read from the store once, on first use; insertTimecard, updateTimecard,
+ * deleteTimecard and the cascading deletes keep the index coherent afterwards.
+ *
+ */
+
+final class TimecardDayIndex {
+
+	private final ConcurrentHashMap<Integer, Days> byEmployee = new ConcurrentHashMap<Integer, Days>();
+	private final ConcurrentHashMap<Integer, Days> byTimecard = new ConcurrentHashMap<Integer, Days>();
+
+	/**
+	 * Start days of an employee's timecards, loading them through the given session on first use. Days
+	 * of an emp_id which does not exist are empty and not kept
+	 * @param dl
+	 * @param empId
+	 * @return the employee's days
+	 *
+	 */
+	Days days(CompanyStore dl, int empId){
+		Days days = byEmployee.get(empId);
+		if(days == null){
+			Days loaded = new Days();
+			dl.forEachTimecard(empId, (timecardId, startMillis, endMillis) ->
+					loaded.add(timecardId, epochDay(startMillis)));
+			if(loaded.isEmpty() && dl.getEmployee(empId) == null){
+				return loaded;
+			}
+			days = byEmployee.putIfAbsent(empId, loaded);
+			if(days == null){
+				days = loaded;
+				// Under the lock of the Days, which commit() may already be changing
+				loaded.forEachTimecard(id -> byTimecard.put(id, loaded));
+			}
+		}
+		return days;
+	}
+
+	/**
+	 * Forget a deleted timecard
+	 * @param timecardId
+	 *
+	 */
+	void removeTimecard(int timecardId){
+		Days days = byTimecard.remove(timecardId);
+		if(days != null){
+			days.remove(timecardId);
+		}
+	}
+
+	/**
+	 * Forget the timecards of deleted employees
+	 * @param empIds
+	 *
+	 */
+	void removeEmployees(int[] empIds){
+		for(int empId: empIds){
+			Days days = byEmployee.remove(empId);
+			if(days != null){
+				days.forEachTimecard(byTimecard::remove);
+			}
+		}
+	}
+
+	void clear(){
+		byEmployee.clear();
+		byTimecard.clear();
+	}
+
+	// Day in the high half, so packed keys sort by day and then by timecard id
+	private static long pack(long day, int timecardId){
+		return (day << 32) | (timecardId & 0xFFFFFFFFL);
+	}
+
+	// Epoch-day of a point in time in the server time zone
+	static long epochDay(long millis){
+		return TimecardRules.epochDay(TimecardRules.SERVER.toLocalSeconds(millis));
+	}
+
+	/**
+	 * Timecard start days of one employee
+	 *
+	 */
+	final class Days {
+
+		// day -> number of timecards starting that day (claims included), timecard id -> day
+		private final IntLongHashMap counts = new IntLongHashMap();
+		private final IntLongHashMap ids = new IntLongHashMap();
+
+		// (day, timecard id) pairs packed into longs and sorted once the initial load is done
+		private long[] starts = new long[8];
+		private int startCount;
+		private boolean sorted = true;
+
+		synchronized boolean contains(long day){
+			return counts.containsKey((int) day);
+		}
+
+		synchronized boolean owns(int timecardId){
+			return ids.containsKey(timecardId);
+		}
+
+		synchronized boolean isEmpty(){
+			return ids.isEmpty();
+		}
+
+		/**
+		 * Timecards starting within a range of days
+		 * @param fromDay: inclusive
+		 * @param toDay: inclusive
+		 * @return their ids, by start day
+		 *
+		 */
+		synchronized int[] between(long fromDay, long toDay){
+			sort();
+			int from = search(pack(fromDay, 0));
+			int to = search(pack(toDay + 1, 0));
+			if(to <= from){
+				return new int[0];
+			}
+			int[] result = new int[to - from];
+			for(int i = from; i < to; i++){
+				result[i - from] = (int) starts[i];
+			}
+			return result;
+		}
+
+		/**
+		 * Claim a day for a timecard about to be inserted or moved there
+		 * @param day
+		 * @return false when a timecard already starts that day
+		 *
+		 */
+		synchronized boolean claim(long day){
+			if(counts.containsKey((int) day)){
+				return false;
+			}
+			counts.put((int) day, 1L);
+			return true;
+		}
+
+		/**
+		 * Give up a claim whose write did not go through
+		 * @param day
+		 *
+		 */
+		synchronized void unclaim(long day){
+			decrement(day);
+		}
+
+		/**
+		 * Bind a claimed day to the timecard written there, dropping the day it started on before
+		 * @param timecardId
+		 * @param day
+		 *
+		 */
+		void commit(int timecardId, long day){
+			synchronized(this){
+				if(ids.containsKey(timecardId)){
+					long previous = ids.get(timecardId, 0L);
+					decrement(previous);
+					unindex(previous, timecardId);
+				}
+				ids.put(timecardId, day);
+				index(day, timecardId);
+			}
+			byTimecard.put(timecardId, this);
+		}
+
+		// Initial load: append now, sort on first use
+		private synchronized void add(int timecardId, long day){
+			counts.addTo((int) day, 1L);
+			ids.put(timecardId, day);
+			append(pack(day, timecardId));
+			sorted = false;
+		}
+
+		private synchronized void remove(int timecardId){
+			if(ids.containsKey(timecardId)){
+				long day = ids.get(timecardId, 0L);
+				decrement(day);
+				ids.remove(timecardId);
+				unindex(day, timecardId);
+			}
+		}
+
+		private void index(long day, int timecardId){
+			sort();
+			long key = pack(day, timecardId);
+			int at = search(key);
+			append(key);
+			System.arraycopy(starts, at, starts, at + 1, startCount - 1 - at);
+			starts[at] = key;
+		}
+
+		private void unindex(long day, int timecardId){
+			sort();
+			long key = pack(day, timecardId);
+			int at = search(key);
+			if(at < startCount && starts[at] == key){
+				System.arraycopy(starts, at + 1, starts, at, startCount - 1 - at);
+				startCount--;
+			}
+		}
+
+		private void append(long key){
+			if(startCount == starts.length){
+				starts = Arrays.copyOf(starts, startCount * 2);
+			}
+			starts[startCount++] = key;
+		}
+
+		private void sort(){
+			if(!sorted){
+				Arrays.sort(starts, 0, startCount);
+				sorted = true;
+			}
+		}
+
+		// First position whose key is not less than the given one
+		private int search(long key){
+			int low = 0;
+			int high = startCount;
+			while(low < high){
+				int mid = (low + high) >>> 1;
+				if(starts[mid] < key){
+					low = mid + 1;
+				}else{
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private synchronized void forEachTimecard(IntConsumer action){
+			ids.forEach((id, day) -> action.accept(id));
+		}
+
+		private void decrement(long day){
+			if(counts.addTo((int) day, -1L) <= 0){
+				counts.remove((int) day);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package Timecard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * TimecardExport class streams every timecard of a company, employee by employee in emp_id order, as CSV
+ * or newline-delimited JSON. Only one employee's timecards are held at a time and output goes through one
+ * fixed-size buffer, so memory does not grow with the company. A date range reads just the timecards
+ * starting on those days, found through the TimecardDayIndex; the EmbeddedDatabase decodes just the
+ * blocks of an employee's TimecardColumns which hold them.
+ * A timestamp missing from a stored timecard is written as an empty CSV field.
+ *
+ * The session is borrowed when the response body is written, after the endpoint has returned.
+ *
+ */
+
+final class TimecardExport implements StreamingOutput {
+
+	/**
+	 * Output formats and their media types
+	 *
+	 */
+	enum Format {
+		CSV("text/csv"),
+		NDJSON("application/x-ndjson");
+
+		final String mediaType;
+
+		Format(String mediaType){
+			this.mediaType = mediaType;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String CSV_HEADER = "timecard_id,start_time,end_time,emp_id\n";
+
+	private final DataLayerPool pool;
+	private final TimecardDayIndex days;
+	private final String company;
+	private final Long fromDay;
+	private final Long toDay;
+	private final Format format;
+	private final boolean gzip;
+
+	/**
+	 * @param pool
+	 * @param days
+	 * @param company
+	 * @param fromDay: first start day, or null for no lower bound
+	 * @param toDay: last start day, inclusive, or null for no upper bound
+	 * @param format
+	 * @param gzip: compress the body
+	 *
+	 */
+	TimecardExport(DataLayerPool pool, TimecardDayIndex days, String company, Long fromDay, Long toDay, Format format,
+			boolean gzip){
+		this.pool = pool;
+		this.days = days;
+		this.company = company;
+		this.fromDay = fromDay;
+		this.toDay = toDay;
+		this.format = format;
+		this.gzip = gzip;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException{
+		OutputStream body = gzip ? new GZIPOutputStream(output, BUFFER_SIZE) : output;
+		Writer out = new FixedBufferWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), BUFFER_SIZE);
+		CompanyStore dl = null;
+		try{
+			dl = pool.borrow();
+			List<Employee> employees = new ArrayList<Employee>(dl.getAllEmployee(company));
+			employees.sort(Comparator.comparingInt(Employee::getId));
+			JsonWriter json = null;
+			if(format == Format.NDJSON){
+				// One writer for the whole body; lenient so it takes a top-level value per line
+				json = new JsonWriter(out);
+				json.setLenient(true);
+			}
+			TypeAdapter<Timecard> adapter = JsonSerializers.TIMECARD.getAdapter(Timecard.class);
+			if(format == Format.CSV){
+				out.write(CSV_HEADER);
+			}
+			for(Employee emp: employees){
+				for(Timecard time: timecards(dl, emp.getId())){
+					if(json != null){
+						adapter.write(json, time);
+						json.flush();
+						out.write('\n');
+					}else{
+						csv(out, time);
+					}
+				}
+			}
+			out.flush();
+			if(gzip){
+				((GZIPOutputStream) body).finish();
+			}
+		}
+		catch(IOException e){
+			throw e;
+		}
+		catch(Exception e){
+			pool.invalidate(dl);
+			// Headers are gone already; all that is left is to cut the body short
+			throw new IOException(e.getMessage(), e);
+		}
+		finally{
+			pool.release(dl);
+		}
+	}
+
+	private List<Timecard> timecards(CompanyStore dl, int empId){
+		if(fromDay == null && toDay == null){
+			return dl.getAllTimecard(empId);
+		}
+		long from = fromDay == null ? Integer.MIN_VALUE : fromDay;
+		long to = toDay == null ? Integer.MAX_VALUE - 1 : toDay;
+		return dl.getTimecards(days.days(dl, empId).between(from, to));
+	}
+
+	private static void csv(Writer out, Timecard time) throws IOException{
+		out.write(Integer.toString(time.getId()));
+		out.write(',');
+		field(out, JsonSerializers.timestamp(time.getStartTime()));
+		out.write(',');
+		field(out, JsonSerializers.timestamp(time.getEndTime()));
+		out.write(',');
+		out.write(Integer.toString(time.getEmpId()));
+		out.write('\n');
+	}
+
+	// Empty for null, so one incomplete row does not cut the body short
+	private static void field(Writer out, String value) throws IOException{
+		if(value != null){
+			out.write(value);
+		}
+	}
+
+	/**
+	 * Writer which collects characters in one fixed array and hands them on only when it is full or flushed
+	 *
+	 */
+	private static final class FixedBufferWriter extends Writer {
+
+		private final Writer out;
+		private final char[] buffer;
+		private int count;
+
+		FixedBufferWriter(Writer out, int size){
+			this.out = out;
+			this.buffer = new char[size];
+		}
+
+		@Override
+		public void write(int c) throws IOException{
+			if(count == buffer.length){
+				drain();
+			}
+			buffer[count++] = (char) c;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException{
+			while(length > 0){
+				if(count == buffer.length){
+					drain();
+				}
+				int n = Math.min(length, buffer.length - count);
+				System.arraycopy(chars, offset, buffer, count, n);
+				count += n;
+				offset += n;
+				length -= n;
+			}
+		}
+
+		@Override
+		public void write(String text, int offset, int length) throws IOException{
+			while(length > 0){
+				if(count == buffer.length){
+					drain();
+				}
+				int n = Math.min(length, buffer.length - count);
+				text.getChars(offset, offset + n, buffer, count);
+				count += n;
+				offset += n;
+				length -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException{
+			drain();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException{
+			flush();
+			out.close();
+		}
+
+		private void drain() throws IOException{
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package Timecard;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * TimecardRules class validates timecards and hire dates on primitive "local seconds": seconds since
+ * 1970-01-01T00:00 on the wall clock of the server time zone (LocalDateTime.toEpochSecond(UTC)).
+ * Day, weekday and time-of-day then come from plain arithmetic, so the checks allocate nothing.
+ *
+ * Instances are immutable apart from a cached zone offset window and are safe to share between threads.
+ *
+ */
+
+final class TimecardRules {
+
+	static final String START_TOO_OLD = "start_time should be upto a week older than current date";
+	static final String SHORT_SPAN = "end_time should be atleast 1 hour greater than the start_time on same day";
+	static final String FUTURE_START = "start_time should not be a future date";
+	static final String WEEKEND = "start_time and end_time should not be a saturday or sunday";
+	static final String OUTSIDE_HOURS = "start_time and end_time should be in between 06:00:00 and 18:00:00 inclusive";
+	static final String FUTURE_HIRE_DATE = "hire_date should not be a future date";
+	static final String WEEKEND_HIRE_DATE = "hire_date should not be a saturday or sunday";
+
+	static final long SECONDS_PER_DAY = 86400L;
+
+	private static final long MIN_SPAN = 3600L;
+	private static final long MAX_AGE_DAYS = 7L;
+	private static final long DAY_OPENS = 6 * 3600L;
+	private static final long DAY_CLOSES = 18 * 3600L;
+
+	/** Rules in the server time zone, the zone every endpoint parsed and formatted dates in */
+	static final TimecardRules SERVER = new TimecardRules(ZoneId.systemDefault());
+
+	private final ZoneRules rules;
+	private volatile OffsetWindow window;
+
+	TimecardRules(ZoneId zone){
+		this.rules = zone.getRules();
+	}
+
+	/**
+	 * Check the week window, same-day span, future start, weekend and 06:00 - 18:00 rules in that order
+	 * @param start: local seconds
+	 * @param end: local seconds
+	 * @param now: local seconds
+	 * @return the first violated rule's message, or null when the timecard is valid
+	 *
+	 */
+	String checkTimecard(long start, long end, long now){
+		if((now - start) / SECONDS_PER_DAY > MAX_AGE_DAYS){
+			return START_TOO_OLD;
+		}
+		if(end - start < MIN_SPAN || epochDay(end) != epochDay(start)){
+			return SHORT_SPAN;
+		}
+		if(start > now){
+			return FUTURE_START;
+		}
+		if(isWeekend(epochDay(start)) || isWeekend(epochDay(end))){
+			return WEEKEND;
+		}
+		if(!isWorkingHours(start) || !isWorkingHours(end)){
+			return OUTSIDE_HOURS;
+		}
+		return null;
+	}
+
+	/**
+	 * Check that a hire date is neither in the future nor on a weekend
+	 * @param hireDay: epoch-day
+	 * @param today: epoch-day
+	 * @return the first violated rule's message, or null when the date is valid
+	 *
+	 */
+	String checkHireDate(long hireDay, long today){
+		if(hireDay > today){
+			return FUTURE_HIRE_DATE;
+		}
+		if(isWeekend(hireDay)){
+			return WEEKEND_HIRE_DATE;
+		}
+		return null;
+	}
+
+	static long epochDay(long localSeconds){
+		return Math.floorDiv(localSeconds, SECONDS_PER_DAY);
+	}
+
+	// 1970-01-01 was a Thursday, so (day + 3) mod 7 counts Monday as 0 and Saturday as 5
+	static boolean isWeekend(long epochDay){
+		return Math.floorMod(epochDay + 3, 7L) >= 5;
+	}
+
+	private static boolean isWorkingHours(long localSeconds){
+		long secondOfDay = Math.floorMod(localSeconds, SECONDS_PER_DAY);
+		return secondOfDay >= DAY_OPENS && secondOfDay <= DAY_CLOSES;
+	}
+
+	long nowLocal(){
+		return toLocalSeconds(System.currentTimeMillis());
+	}
+
+	long today(){
+		return epochDay(nowLocal());
+	}
+
+	/**
+	 * Earliest day a timecard may still start on; checkTimecard rejects every start before it, so the
+	 * days before are closed
+	 * @return epoch-day
+	 *
+	 */
+	long firstOpenDay(){
+		return today() - MAX_AGE_DAYS - 1;
+	}
+
+	/**
+	 * Local seconds of an instant
+	 * @param epochMillis: e.g. Date.getTime()
+	 * @return local seconds in this zone
+	 *
+	 */
+	long toLocalSeconds(long epochMillis){
+		long epochSecond = Math.floorDiv(epochMillis, 1000L);
+		return epochSecond + offsetAt(epochSecond);
+	}
+
+	/**
+	 * Timestamp for the store, interpreted in the server time zone like the JDBC driver does
+	 * @param localSeconds
+	 * @return the Timestamp of that wall-clock time
+	 *
+	 */
+	static Timestamp toTimestamp(long localSeconds){
+		return Timestamp.valueOf(LocalDateTime.ofEpochSecond(localSeconds, 0, ZoneOffset.UTC));
+	}
+
+	static java.sql.Date toSqlDate(long epochDay){
+		return java.sql.Date.valueOf(LocalDate.ofEpochDay(epochDay));
+	}
+
+	// Offset in seconds, recomputed only when the instant leaves the cached window between transitions
+	private int offsetAt(long epochSecond){
+		OffsetWindow current = window;
+		if(current == null || epochSecond < current.from || epochSecond >= current.until){
+			current = new OffsetWindow(rules, epochSecond);
+			window = current;
+		}
+		return current.offset;
+	}
+
+	private static final class OffsetWindow {
+		final long from;
+		final long until;
+		final int offset;
+
+		OffsetWindow(ZoneRules rules, long epochSecond){
+			Instant instant = Instant.ofEpochSecond(epochSecond);
+			ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+			ZoneOffsetTransition next = rules.nextTransition(instant);
+			this.from = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+			this.until = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+			this.offset = rules.getOffset(instant).getTotalSeconds();
+		}
+	}
+}
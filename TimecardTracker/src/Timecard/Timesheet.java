@@ -0,0 +1,223 @@
+package Timecard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.stream.JsonWriter;
+
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * Timesheet class sums the hours worked by every employee of a company over a range of days, from
+ * timecards starting on those days, and rolls them up per department. Hours up to 8 per timecard are
+ * regular, the rest overtime; with one timecard per day that is 8 regular hours per day.
+ *
+ * Employees are spread over the request's own session plus up to timecard.timesheet.parallelism - 1
+ * extra pooled sessions that are free right away, each reading one employee's timecards at a time. The
+ * day index picks the timecards starting within the range, so only those are read.
+ *
+ */
+
+final class Timesheet {
+
+	private static final String PREFIX = "timecard.timesheet.";
+
+	static final int PARALLELISM = Math.max(1, Integer.getInteger(PREFIX + "parallelism", 4));
+	static final int MAX_DAYS = Math.max(1, Integer.getInteger(PREFIX + "maxDays", 366));
+
+	private static final long REGULAR_SECONDS = 8 * 3600L;
+
+	// Extra workers of all requests; when they are busy the requests' own threads do the work
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Math.max(1, PARALLELISM - 1), r -> {
+		Thread t = new Thread(r, "timesheet-worker");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final String company;
+	private final long fromDay;
+	private final long toDay;
+	private final List<Employee> employees;
+
+	// By position in employees; each slot is written by the one worker which took that employee
+	private final int[] timecards;
+	private final long[] totalSeconds;
+	private final long[] regularSeconds;
+
+	private Timesheet(String company, long fromDay, long toDay, List<Employee> employees){
+		this.company = company;
+		this.fromDay = fromDay;
+		this.toDay = toDay;
+		this.employees = employees;
+		this.timecards = new int[employees.size()];
+		this.totalSeconds = new long[employees.size()];
+		this.regularSeconds = new long[employees.size()];
+	}
+
+	/**
+	 * Compute the timesheet of a company
+	 * @param pool: source of the extra sessions
+	 * @param dl: the request's own session
+	 * @param company
+	 * @param fromDay: first epoch-day, inclusive
+	 * @param toDay: last epoch-day, inclusive
+	 * @param days: start days of the timecards
+	 * @param rules: time zone of the timecards
+	 * @return the timesheet, or null when the company has no employees
+	 * @throws Exception when the store fails
+	 *
+	 */
+	static Timesheet compute(DataLayerPool pool, CompanyStore dl, String company, long fromDay, long toDay,
+			TimecardDayIndex days, TimecardRules rules) throws Exception{
+		List<Employee> employees = new ArrayList<Employee>(dl.getAllEmployee(company));
+		if(employees.isEmpty()){
+			return null;
+		}
+		employees.sort(Comparator.comparingInt(Employee::getId));
+		Timesheet sheet = new Timesheet(company, fromDay, toDay, employees);
+		AtomicInteger next = new AtomicInteger();
+
+		List<Future<Object>> helpers = new ArrayList<Future<Object>>();
+		for(int i = 1; i < Math.min(PARALLELISM, employees.size()); i++){
+			helpers.add(WORKERS.submit(() -> {
+				CompanyStore own = pool.tryBorrow();
+				if(own != null){
+					try{
+						sheet.work(own, next, days, rules);
+					}
+					catch(RuntimeException e){
+						pool.invalidate(own);
+						throw e;
+					}
+					finally{
+						pool.release(own);
+					}
+				}
+				return null;
+			}));
+		}
+		try{
+			sheet.work(dl, next, days, rules);
+		}
+		finally{
+			// Drop helpers still queued behind other requests; wait only for the running ones, which finish
+			// their current employee
+			next.set(employees.size());
+			for(Future<Object> helper: helpers){
+				if(helper.cancel(false)){
+					continue;
+				}
+				try{
+					helper.get();
+				}
+				catch(ExecutionException e){
+					throw new Exception(e.getCause().getMessage(), e.getCause());
+				}
+			}
+		}
+		return sheet;
+	}
+
+	// Take employees one at a time until none are left
+	private void work(CompanyStore dl, AtomicInteger next, TimecardDayIndex days, TimecardRules rules){
+		int i;
+		while((i = next.getAndIncrement()) < employees.size()){
+			int[] ids = days.days(dl, employees.get(i).getId()).between(fromDay, toDay);
+			if(ids.length == 0){
+				continue;
+			}
+			for(Timecard time: dl.getTimecards(ids)){
+				long start = rules.toLocalSeconds(time.getStartTime().getTime());
+				long worked = Math.max(0L, rules.toLocalSeconds(time.getEndTime().getTime()) - start);
+				timecards[i]++;
+				totalSeconds[i] += worked;
+				regularSeconds[i] += Math.min(worked, REGULAR_SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Stream the timesheet as {"company", "from", "to", "timecards", "total_hours", "regular_hours",
+	 * "overtime_hours", "departments": [...], "employees": [...]} with the same figures per department
+	 * and per employee
+	 * @return StreamingOutput writing the timesheet
+	 *
+	 */
+	StreamingOutput write(){
+		return output -> {
+			Map<Integer, long[]> departments = new TreeMap<Integer, long[]>();
+			long[] company = new long[4];
+			for(int i = 0; i < employees.size(); i++){
+				long[] dept = departments.computeIfAbsent(employees.get(i).getDeptId(), id -> new long[4]);
+				add(dept, i);
+				add(company, i);
+			}
+
+			JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+			out.beginObject();
+			out.name("company").value(this.company);
+			out.name("from").value(LocalDate.ofEpochDay(fromDay).toString());
+			out.name("to").value(LocalDate.ofEpochDay(toDay).toString());
+			figures(out, company[1], company[2], company[3]);
+			out.name("departments").beginArray();
+			for(Map.Entry<Integer, long[]> dept: departments.entrySet()){
+				long[] sums = dept.getValue();
+				out.beginObject();
+				out.name("dept_id").value(dept.getKey());
+				out.name("employees").value(sums[0]);
+				figures(out, sums[1], sums[2], sums[3]);
+				out.endObject();
+			}
+			out.endArray();
+			out.name("employees").beginArray();
+			for(int i = 0; i < employees.size(); i++){
+				Employee emp = employees.get(i);
+				out.beginObject();
+				out.name("emp_id").value(emp.getId());
+				out.name("emp_no").value(emp.getEmpNo());
+				out.name("dept_id").value(emp.getDeptId());
+				figures(out, timecards[i], totalSeconds[i], regularSeconds[i]);
+				out.endObject();
+			}
+			out.endArray();
+			out.endObject();
+			out.flush();
+		};
+	}
+
+	// Employees, timecards, total and regular seconds
+	private void add(long[] sums, int i){
+		sums[0]++;
+		sums[1] += timecards[i];
+		sums[2] += totalSeconds[i];
+		sums[3] += regularSeconds[i];
+	}
+
+	private static void figures(JsonWriter out, long timecards, long total, long regular) throws IOException{
+		out.name("timecards").value(timecards);
+		out.name("total_hours").value(hours(total));
+		out.name("regular_hours").value(hours(regular));
+		out.name("overtime_hours").value(hours(total - regular));
+	}
+
+	// Hours rounded to two decimals
+	static double hours(long seconds){
+		return Math.round(seconds / 36.0) / 100.0;
+	}
+}
@@ -0,0 +1,106 @@
+package Timecard;
+
+/**
+ * TimestampParser class validates and parses the fixed-width "yyyy-MM-dd" and "yyyy-MM-dd HH:mm:ss"
+ * request values in a single scan, without regular expressions, SimpleDateFormat or exceptions.
+ * Results are an epoch-day or local epoch seconds, the units TimecardRules works on.
+ *
+ */
+
+final class TimestampParser {
+
+	/** Returned for values which are not in the expected format or name no real date or time */
+	static final long INVALID = Long.MIN_VALUE;
+
+	private static final int DATE_LENGTH = 10;
+	private static final int DATE_TIME_LENGTH = 19;
+
+	private TimestampParser(){
+	}
+
+	/**
+	 * Parse a "yyyy-MM-dd" value
+	 * @param value
+	 * @return the epoch-day, or INVALID
+	 *
+	 */
+	static long parseDate(String value){
+		if(value == null || value.length() != DATE_LENGTH){
+			return INVALID;
+		}
+		return date(value);
+	}
+
+	/**
+	 * Parse a "yyyy-MM-dd HH:mm:ss" value; like the former \s pattern any whitespace may separate
+	 * date and time
+	 * @param value
+	 * @return local epoch seconds, or INVALID
+	 *
+	 */
+	static long parseDateTime(String value){
+		if(value == null || value.length() != DATE_TIME_LENGTH || !isSpace(value.charAt(10))){
+			return INVALID;
+		}
+		long day = date(value);
+		int hour = digits(value, 11, 2);
+		int minute = digits(value, 14, 2);
+		int second = digits(value, 17, 2);
+		if(day == INVALID || hour < 0 || minute < 0 || second < 0
+				|| value.charAt(13) != ':' || value.charAt(16) != ':'
+				|| hour > 23 || minute > 59 || second > 59){
+			return INVALID;
+		}
+		return day * TimecardRules.SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+	}
+
+	// Epoch-day of the "yyyy-MM-dd" prefix of the value
+	private static long date(String value){
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 2);
+		int day = digits(value, 8, 2);
+		if(year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+				|| value.charAt(4) != '-' || value.charAt(7) != '-'){
+			return INVALID;
+		}
+		return epochDay(year, month, day);
+	}
+
+	// Decimal value of count ASCII digits starting at offset, or -1 when any of them is not a digit
+	private static int digits(String value, int offset, int count){
+		int result = 0;
+		for(int i = offset; i < offset + count; i++){
+			int digit = value.charAt(i) - '0';
+			if(digit < 0 || digit > 9){
+				return -1;
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static boolean isSpace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static int lengthOfMonth(int year, int month){
+		switch(month){
+			case 2:
+				return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+			case 4: case 6: case 9: case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	// Days since 1970-01-01 of a proleptic Gregorian date, counted in 400-year eras from March 1st
+	private static long epochDay(int year, int month, int day){
+		int y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
@@ -0,0 +1,170 @@
+package Timecard;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UniqueKeyIndex class keeps a per-company hash index of a business key (dept_no, emp_no) to its record
+ * id so duplicate checks are O(1) lookups instead of scanning the full record list on every write.
+ *
+ * A company's keys are loaded from the store once, on first use, and are kept coherent afterwards
+ * by the endpoints that insert, update and delete the records. A key is reserved before its record is
+ * inserted so two concurrent requests can not both claim the same key.
+ *
+ */
+
+final class UniqueKeyIndex {
+
+	/**
+	 * Loads key to id pairs of one company from the store
+	 *
+	 */
+	interface Loader {
+		Map<String, Integer> load(CompanyStore dl, String company) throws Exception;
+	}
+
+	// Id placeholder of a key which is reserved by an insert still in flight
+	private static final int PENDING = 0;
+
+	private final Loader loader;
+	private final ConcurrentHashMap<String, Scope> scopes = new ConcurrentHashMap<String, Scope>();
+
+	UniqueKeyIndex(Loader loader){
+		this.loader = loader;
+	}
+
+	/**
+	 * Keys of a company, loading them through the given session on first use
+	 * @param dl
+	 * @param company
+	 * @return the company's key scope
+	 *
+	 */
+	Scope scope(CompanyStore dl, String company) throws Exception{
+		Scope scope = scopes.get(company);
+		if(scope == null){
+			Scope loaded = new Scope(loader.load(dl, company));
+			scope = scopes.putIfAbsent(company, loaded);
+			if(scope == null){
+				scope = loaded;
+			}
+		}
+		return scope;
+	}
+
+	/**
+	 * Forget the key of a deleted record. Companies whose keys were never loaded are left alone.
+	 * @param company
+	 * @param id
+	 *
+	 */
+	void remove(String company, int id){
+		Scope scope = scopes.get(company);
+		if(scope != null){
+			scope.remove(id);
+		}
+	}
+
+	/**
+	 * Drop a company's keys, e.g. after the whole company was deleted. They are reloaded on next use.
+	 * @param company
+	 *
+	 */
+	void clear(String company){
+		scopes.remove(company);
+	}
+
+	/**
+	 * Business keys of one company
+	 *
+	 */
+	static final class Scope {
+
+		private final Map<String, Integer> byKey = new HashMap<String, Integer>();
+		private final Map<Integer, String> byId = new HashMap<Integer, String>();
+
+		private Scope(Map<String, Integer> keys){
+			for(Map.Entry<String, Integer> entry: keys.entrySet()){
+				byKey.put(entry.getKey(), entry.getValue());
+				byId.put(entry.getValue(), entry.getKey());
+			}
+		}
+
+		synchronized boolean contains(String key){
+			return byKey.containsKey(key);
+		}
+
+		synchronized boolean containsId(int id){
+			return byId.containsKey(id);
+		}
+
+		/**
+		 * Id of the stored record owning a key
+		 * @param key
+		 * @return the id, or 0 when the key is unused or only reserved
+		 *
+		 */
+		synchronized int idOf(String key){
+			Integer id = byKey.get(key);
+			return id == null ? PENDING : id;
+		}
+
+		// Number of stored records, not counting reservations
+		synchronized boolean isEmpty(){
+			return byId.isEmpty();
+		}
+
+		/**
+		 * Claim a key for a record about to be inserted or renamed
+		 * @param key
+		 * @return false when the key is already used or reserved
+		 *
+		 */
+		synchronized boolean reserve(String key){
+			if(byKey.containsKey(key)){
+				return false;
+			}
+			byKey.put(key, PENDING);
+			return true;
+		}
+
+		/**
+		 * Give up a reservation whose write did not go through
+		 * @param key
+		 *
+		 */
+		synchronized void release(String key){
+			Integer id = byKey.get(key);
+			if(id != null && id == PENDING){
+				byKey.remove(key);
+			}
+		}
+
+		/**
+		 * Bind a reserved key to the record that now owns it, dropping any key the record had before
+		 * @param key
+		 * @param id
+		 *
+		 */
+		synchronized void commit(String key, int id){
+			String previous = byId.put(id, key);
+			if(previous != null && !previous.equals(key)){
+				byKey.remove(previous);
+			}
+			byKey.put(key, id);
+		}
+
+		/**
+		 * Forget the key of a deleted record
+		 * @param id
+		 *
+		 */
+		synchronized void remove(int id){
+			String key = byId.remove(id);
+			if(key != null){
+				byKey.remove(key);
+			}
+		}
+	}
+}
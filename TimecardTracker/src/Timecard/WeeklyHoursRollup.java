@@ -0,0 +1,235 @@
+package Timecard;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import companydata.Employee;
+
+/**
+ * WeeklyHoursRollup class keeps the seconds worked per employee and ISO week (Monday to Sunday, by the
+ * day a timecard starts, in the server time zone), so a week's hours are one hash lookup.
+ *
+ * An employee's timecards are read from the store once, on first use; insertTimecard, updateTimecard,
+ * deleteTimecard, the batch import and the cascading deletes keep the totals current afterwards.
+ * verify() recomputes loaded employees from their stored timecards and reports, and optionally repairs,
+ * any drift.
+ *
+ */
+
+final class WeeklyHoursRollup {
+
+	private final TimecardRules rules;
+	private final ConcurrentHashMap<Integer, Weeks> byEmployee = new ConcurrentHashMap<Integer, Weeks>();
+	private final ConcurrentHashMap<Integer, Weeks> byTimecard = new ConcurrentHashMap<Integer, Weeks>();
+
+	WeeklyHoursRollup(TimecardRules rules){
+		this.rules = rules;
+	}
+
+	/**
+	 * Weekly totals of an employee, loading them through the given session on first use
+	 * @param dl
+	 * @param empId
+	 * @return the employee's weeks
+	 *
+	 */
+	Weeks weeks(CompanyStore dl, int empId){
+		Weeks weeks = byEmployee.get(empId);
+		if(weeks == null){
+			Weeks loaded = load(dl, empId);
+			weeks = byEmployee.putIfAbsent(empId, loaded);
+			if(weeks == null){
+				weeks = loaded;
+				loaded.forEachTimecard(id -> byTimecard.put(id, loaded));
+			}
+		}
+		return weeks;
+	}
+
+	/**
+	 * Record an inserted or updated timecard
+	 * @param dl
+	 * @param timecardId
+	 * @param empId
+	 * @param start: local seconds
+	 * @param end: local seconds
+	 *
+	 */
+	void put(CompanyStore dl, int timecardId, int empId, long start, long end){
+		Weeks weeks = weeks(dl, empId);
+		Weeks previous = byTimecard.put(timecardId, weeks);
+		if(previous != null && previous != weeks){
+			previous.remove(timecardId);
+		}
+		weeks.put(timecardId, week(TimecardRules.epochDay(start)), end - start);
+	}
+
+	/**
+	 * Forget a deleted timecard
+	 * @param timecardId
+	 *
+	 */
+	void removeTimecard(int timecardId){
+		Weeks weeks = byTimecard.remove(timecardId);
+		if(weeks != null){
+			weeks.remove(timecardId);
+		}
+	}
+
+	/**
+	 * Forget the timecards of deleted employees
+	 * @param empIds
+	 *
+	 */
+	void removeEmployees(int[] empIds){
+		for(int empId: empIds){
+			Weeks weeks = byEmployee.remove(empId);
+			if(weeks != null){
+				weeks.forEachTimecard(byTimecard::remove);
+			}
+		}
+	}
+
+	void clear(){
+		byEmployee.clear();
+		byTimecard.clear();
+	}
+
+	/**
+	 * Recompute the loaded employees of a company from their stored timecards
+	 * @param dl
+	 * @param employees: of the company
+	 * @param repair: replace drifted employees with the recomputed totals
+	 * @return number of employees checked and drifted, and every drifted week
+	 *
+	 */
+	JSONObject verify(CompanyStore dl, List<Employee> employees, boolean repair){
+		int checked = 0;
+		JSONArray drift = new JSONArray();
+		for(Employee emp: employees){
+			Weeks kept = byEmployee.get(emp.getId());
+			if(kept == null){
+				// Not loaded yet, so it will be read fresh on first use
+				continue;
+			}
+			checked++;
+			Weeks actual = load(dl, emp.getId());
+			int before = drift.length();
+			kept.compare(actual, emp.getId(), drift);
+			if(repair && drift.length() > before){
+				removeEmployees(new int[]{emp.getId()});
+				if(byEmployee.putIfAbsent(emp.getId(), actual) == null){
+					actual.forEachTimecard(id -> byTimecard.put(id, actual));
+				}
+			}
+		}
+		JSONObject json = new JSONObject();
+		json.put("employees_checked", checked);
+		json.put("weeks_drifted", drift.length());
+		json.put("repaired", repair);
+		json.put("drift", drift);
+		return json;
+	}
+
+	private Weeks load(CompanyStore dl, int empId){
+		Weeks loaded = new Weeks();
+		dl.forEachTimecard(empId, (timecardId, startMillis, endMillis) -> {
+			long start = rules.toLocalSeconds(startMillis);
+			long end = rules.toLocalSeconds(endMillis);
+			loaded.put(timecardId, week(TimecardRules.epochDay(start)), end - start);
+		});
+		return loaded;
+	}
+
+	// Weeks since the Monday before 1970-01-01 (a Thursday)
+	static int week(long epochDay){
+		return (int) Math.floorDiv(epochDay + 3, 7L);
+	}
+
+	static LocalDate weekStart(int week){
+		return LocalDate.ofEpochDay(week * 7L - 3);
+	}
+
+	// ISO week label, e.g. 2026-W42
+	static String label(int week){
+		LocalDate monday = weekStart(week);
+		return String.format("%d-W%02d", monday.get(IsoFields.WEEK_BASED_YEAR), monday.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+	}
+
+	/**
+	 * Weekly totals of one employee
+	 *
+	 */
+	static final class Weeks {
+
+		// week -> seconds and week -> timecards; timecard id -> week in the high and seconds in the low half
+		private final IntLongHashMap seconds = new IntLongHashMap();
+		private final IntLongHashMap counts = new IntLongHashMap();
+		private final IntLongHashMap timecards = new IntLongHashMap();
+
+		synchronized long seconds(int week){
+			return seconds.get(week, 0L);
+		}
+
+		synchronized int timecards(int week){
+			return (int) counts.get(week, 0L);
+		}
+
+		private synchronized void put(int timecardId, int week, long worked){
+			remove(timecardId);
+			long clamped = Math.max(0L, Math.min(worked, 0xFFFFFFFFL));
+			seconds.addTo(week, clamped);
+			counts.addTo(week, 1L);
+			timecards.put(timecardId, ((long) week << 32) | clamped);
+		}
+
+		private synchronized void remove(int timecardId){
+			if(!timecards.containsKey(timecardId)){
+				return;
+			}
+			long packed = timecards.get(timecardId, 0L);
+			timecards.remove(timecardId);
+			int week = (int) (packed >> 32);
+			seconds.addTo(week, -(packed & 0xFFFFFFFFL));
+			if(counts.addTo(week, -1L) <= 0){
+				counts.remove(week);
+				seconds.remove(week);
+			}
+		}
+
+		private synchronized void forEachTimecard(IntConsumer action){
+			timecards.forEach((id, packed) -> action.accept(id));
+		}
+
+		// Append {emp_id, week, rollup_hours, actual_hours} for every week where the two differ
+		private synchronized void compare(Weeks actual, int empId, JSONArray drift){
+			synchronized(actual){
+				seconds.forEach((week, kept) -> {
+					if(actual.seconds.get(week, 0L) != kept || actual.counts.get(week, 0L) != counts.get(week, 0L)){
+						drift.put(driftOf(empId, week, kept, actual.seconds.get(week, 0L)));
+					}
+				});
+				actual.seconds.forEach((week, recomputed) -> {
+					if(!seconds.containsKey(week)){
+						drift.put(driftOf(empId, week, 0L, recomputed));
+					}
+				});
+			}
+		}
+
+		private static JSONObject driftOf(int empId, int week, long kept, long actual){
+			JSONObject json = new JSONObject();
+			json.put("emp_id", empId);
+			json.put("week", label(week));
+			json.put("rollup_hours", Timesheet.hours(kept));
+			json.put("actual_hours", Timesheet.hours(actual));
+			return json;
+		}
+	}
+}
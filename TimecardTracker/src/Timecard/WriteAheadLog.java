@@ -0,0 +1,243 @@
+package Timecard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog class is an append-only file of records, each framed by its length and a CRC32 of its
+ * bytes. Records of one operation are staged with record() and written together by commit(), which
+ * forces them to disk when the log is synchronous. A crash can only tear the last commit, so replay
+ * stops at the first incomplete or corrupt record and the log is cut back to the records before it.
+ *
+ * Snapshots use the same format, written to a new file once and never appended to afterwards.
+ *
+ */
+
+final class WriteAheadLog implements Closeable {
+
+	/**
+	 * Applies a replayed record
+	 *
+	 */
+	interface Replay {
+		void apply(DataInputStream record) throws IOException;
+	}
+
+	private static final int HEADER = 8;
+
+	// Larger lengths can only come from a torn or corrupt header
+	private static final int MAX_RECORD = 1 << 24;
+
+	private final FileChannel channel;
+	private final boolean sync;
+
+	// Records staged by the current operation, framed and ready to write
+	private final ByteArrayOutputStream staged = new ByteArrayOutputStream(4096);
+	private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+	private final DataOutputStream out = new DataOutputStream(payload);
+	private final CRC32 crc = new CRC32();
+
+	// Records in the log, and records staged but not yet committed
+	private long records;
+	private long pending;
+
+	/**
+	 * Open a log for appending, replaying its records first
+	 * @param file created when missing
+	 * @param sync whether commit() forces the records to disk
+	 * @param replay receives every complete record in order
+	 * @throws IOException
+	 *
+	 */
+	WriteAheadLog(Path file, boolean sync, Replay replay) throws IOException{
+		this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), sync, replay);
+	}
+
+	/**
+	 * Open a log on a channel the caller opened for reading and writing, replaying its records first
+	 * @param channel closed with the log
+	 * @param sync whether commit() forces the records to disk
+	 * @param replay receives every complete record in order
+	 * @throws IOException
+	 *
+	 */
+	WriteAheadLog(FileChannel channel, boolean sync, Replay replay) throws IOException{
+		this.channel = channel;
+		this.sync = sync;
+		long[] replayed = {0L};
+		long valid = replay(channel, record -> {
+			replayed[0]++;
+			replay.apply(record);
+		});
+		this.records = replayed[0];
+		// Drop a torn tail so new records follow the last complete one
+		channel.truncate(valid);
+		channel.position(valid);
+	}
+
+	/**
+	 * Replay the records of a file without opening it for appending
+	 * @param file
+	 * @param replay receives every complete record in order
+	 * @return whether the file exists
+	 * @throws IOException
+	 *
+	 */
+	static boolean replay(Path file, Replay replay) throws IOException{
+		if(!Files.exists(file)){
+			return false;
+		}
+		try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)){
+			replay(in, replay);
+		}
+		return true;
+	}
+
+	/**
+	 * Start a record of the current operation
+	 * @return the stream to write the record's fields to; valid until the next call
+	 *
+	 */
+	DataOutputStream record() throws IOException{
+		frame();
+		return out;
+	}
+
+	/**
+	 * Write the records staged since the last commit
+	 * @throws IOException when they could not be written; they are dropped
+	 *
+	 */
+	void commit() throws IOException{
+		frame();
+		if(staged.size() == 0){
+			return;
+		}
+		long start = channel.position();
+		try{
+			ByteBuffer buffer = ByteBuffer.wrap(staged.toByteArray());
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			if(sync){
+				channel.force(false);
+			}
+			records += pending;
+		}
+		catch(IOException e){
+			// Cut off what was written, or replay would stop there and miss every later commit
+			channel.truncate(start);
+			channel.position(start);
+			throw e;
+		}
+		finally{
+			staged.reset();
+			pending = 0;
+		}
+	}
+
+	/**
+	 * Drop the records staged since the last commit
+	 *
+	 */
+	void rollback(){
+		payload.reset();
+		staged.reset();
+		pending = 0;
+	}
+
+	/**
+	 * Number of committed records in the log
+	 *
+	 */
+	long records(){
+		return records;
+	}
+
+	/**
+	 * Empty the log, once a snapshot holds everything in it
+	 * @throws IOException
+	 *
+	 */
+	void truncate() throws IOException{
+		rollback();
+		channel.truncate(0);
+		channel.position(0);
+		channel.force(true);
+		records = 0;
+	}
+
+	@Override
+	public void close() throws IOException{
+		try{
+			channel.force(true);
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	// Move the record being written, if any, to the staged records behind its length and checksum
+	private void frame() throws IOException{
+		if(payload.size() == 0){
+			return;
+		}
+		out.flush();
+		byte[] bytes = payload.toByteArray();
+		payload.reset();
+		crc.reset();
+		crc.update(bytes, 0, bytes.length);
+		DataOutputStream header = new DataOutputStream(staged);
+		header.writeInt(bytes.length);
+		header.writeInt((int) crc.getValue());
+		staged.write(bytes);
+		pending++;
+	}
+
+	// Replay from the start of the channel; returns the length of the complete records
+	private static long replay(FileChannel in, Replay replay) throws IOException{
+		long size = in.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		CRC32 check = new CRC32();
+		while(position + HEADER <= size){
+			header.clear();
+			readFully(in, header, position);
+			header.flip();
+			int length = header.getInt();
+			int expected = header.getInt();
+			if(length <= 0 || length > MAX_RECORD || position + HEADER + length > size){
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(length);
+			readFully(in, body, position + HEADER);
+			check.reset();
+			check.update(body.array(), 0, length);
+			if((int) check.getValue() != expected){
+				break;
+			}
+			replay.apply(new DataInputStream(new ByteArrayInputStream(body.array())));
+			position += HEADER + length;
+		}
+		return position;
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			int read = in.read(buffer, position + buffer.position());
+			if(read < 0){
+				throw new IOException("Unexpected end of log");
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package Timecard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * CapturedResponse class stands in for the container's AsyncResponse when a test or a benchmark calls a
+ * CompanyServices endpoint directly. body() waits for the endpoint to resume and returns the response
+ * body, writing streamed bodies out so that a benchmark measures their serialization too.
+ *
+ */
+
+final class CapturedResponse implements AsyncResponse {
+
+	// A request without preconditions, so conditional GETs always build the full response
+	static final Request UNCONDITIONAL = (Request) Proxy.newProxyInstance(Request.class.getClassLoader(),
+			new Class<?>[]{Request.class}, (proxy, method, args) -> {
+				if(method.getReturnType() == boolean.class){
+					return false;
+				}
+				return null;
+			});
+
+	private final CompletableFuture<Object> resumed = new CompletableFuture<Object>();
+	private volatile TimeoutHandler timeoutHandler;
+
+	/**
+	 * Body of the response the endpoint resumed with
+	 * @return the body, streamed bodies written out as UTF-8
+	 * @throws Exception when the endpoint failed or did not answer within a minute
+	 *
+	 */
+	String body() throws Exception{
+		Object resumedWith = resumed.get(1, TimeUnit.MINUTES);
+		if(resumedWith instanceof Throwable){
+			throw new Exception((Throwable) resumedWith);
+		}
+		Object entity = ((Response) resumedWith).getEntity();
+		if(entity instanceof StreamingOutput){
+			ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+			try{
+				((StreamingOutput) entity).write(out);
+			}
+			catch(IOException e){
+				throw new Exception(e);
+			}
+			return out.toString("UTF-8");
+		}
+		return String.valueOf(entity);
+	}
+
+	/**
+	 * Time the request out now, as the container would once its timeout passed
+	 *
+	 */
+	void timeOut(){
+		timeoutHandler.handleTimeout(this);
+	}
+
+	@Override
+	public boolean resume(Object response){
+		return resumed.complete(response);
+	}
+
+	@Override
+	public boolean resume(Throwable response){
+		return resumed.complete(response);
+	}
+
+	@Override
+	public boolean cancel(){
+		return resumed.cancel(false);
+	}
+
+	@Override
+	public boolean cancel(int retryAfter){
+		return cancel();
+	}
+
+	@Override
+	public boolean cancel(Date retryAfter){
+		return cancel();
+	}
+
+	@Override
+	public boolean isSuspended(){
+		return !resumed.isDone();
+	}
+
+	@Override
+	public boolean isCancelled(){
+		return resumed.isCancelled();
+	}
+
+	@Override
+	public boolean isDone(){
+		return resumed.isDone();
+	}
+
+	@Override
+	public boolean setTimeout(long time, TimeUnit unit){
+		// The test waits in body() instead, or calls timeOut()
+		return true;
+	}
+
+	@Override
+	public void setTimeoutHandler(TimeoutHandler handler){
+		timeoutHandler = handler;
+	}
+
+	@Override
+	public Collection<Class<?>> register(Class<?> callback){
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks){
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Collection<Class<?>> register(Object callback){
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks){
+		return Collections.emptyMap();
+	}
+}
@@ -0,0 +1,219 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * CompanyServicesConcurrencyTest drives the singleton CompanyServices resource from many threads at once
+ * through every CRUD endpoint. Each thread works on its own Department, Employee and Timecard and checks
+ * that every response describes its own records, so a session, record or index entry shared between
+ * requests shows up as a mismatch. Runs against the in-memory EmbeddedDatabase set up by the pom.
+ *
+ */
+
+public class CompanyServicesConcurrencyTest {
+
+	private static final String COMPANY = "dxk3754";
+	private static final int THREADS = 16;
+	private static final int ROUNDS = 20;
+
+	private static CompanyServices services;
+
+	// Timecards go to the last two weekdays before today, which the rules still accept
+	private static final LocalDate DAY = weekdayBefore(LocalDate.now());
+	private static final LocalDate OTHER_DAY = weekdayBefore(DAY);
+
+	@BeforeClass
+	public static void singleton(){
+		for(Object resource: new ApplicationConfig().getSingletons()){
+			if(resource instanceof CompanyServices){
+				services = (CompanyServices) resource;
+			}
+		}
+	}
+
+	@Test
+	public void parallelRequestsSeeOnlyTheirOwnRecords() throws Exception{
+		ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> done = new ArrayList<Future<?>>();
+		for(int t = 0; t < THREADS; t++){
+			int thread = t;
+			done.add(clients.submit(() -> {
+				start.await();
+				for(int round = 0; round < ROUNDS; round++){
+					try{
+						scenario("s" + thread + "-" + round, thread);
+					}
+					catch(Throwable e){
+						failures.add(e.toString());
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for(Future<?> future: done){
+			future.get(5, TimeUnit.MINUTES);
+		}
+		clients.shutdown();
+
+		assertTrue(failures.size() + " failures, first: " + failures.peek(), failures.isEmpty());
+		// Every thread deleted what it created, and every session went back to the pool
+		assertEquals("{\"error\": \"No record found for the request.\"}", departments());
+		assertEquals(0, new JSONObject(String.valueOf(services.getPoolStats().getEntity())).getInt("in_use"));
+	}
+
+	@Test
+	public void updateOfMissingEmployeeReservesNothing() throws Exception{
+		JSONObject dept = call(r -> services.insertDepartment(r, new JSONObject().put("company", COMPANY)
+				.put("dept_name", "Dept missing").put("dept_no", "d-missing").put("location", "L").toString()));
+		int deptId = dept.getInt("dept_id");
+		// No employees yet, so the emp_no index is empty
+		assertEquals("{\"error\": \"No matching employee found for emp_Id\"}", body(r -> services.updateEmployee(r,
+				Integer.MAX_VALUE, "Nobody", "e-missing", DAY.toString(), "Job", 1000.0, deptId, 0)));
+		// The emp_no was not left reserved by the rejected update
+		JSONObject emp = call(r -> services.insertEmployee(r, new JSONObject().put("emp_name", "Somebody")
+				.put("emp_no", "e-missing").put("hire_date", DAY.toString()).put("job", "Job")
+				.put("salary", 1000.0).put("dept_id", deptId).put("mng_id", 0).toString()));
+		call(r -> services.deleteEmployee(r, emp.getInt("emp_id")));
+		call(r -> services.deleteDepartment(r, COMPANY, deptId));
+	}
+
+	@Test
+	public void timecardRangeEndingBeforeItStartsIsRejected() throws Exception{
+		int deptId = call(r -> services.insertDepartment(r, new JSONObject().put("company", COMPANY)
+				.put("dept_name", "Dept range").put("dept_no", "d-range").put("location", "L").toString())).getInt("dept_id");
+		int empId = call(r -> services.insertEmployee(r, new JSONObject().put("emp_name", "Ranged")
+				.put("emp_no", "e-range").put("hire_date", DAY.toString()).put("job", "Job")
+				.put("salary", 1000.0).put("dept_id", deptId).put("mng_id", 0).toString())).getInt("emp_id");
+		int timecardId = call(r -> services.insertTimecard(r, new JSONObject().put("emp_id", empId)
+				.put("start_time", DAY + " 09:00:00").put("end_time", DAY + " 17:00:00").toString())).getInt("timecard_id");
+		// The timecard lies between the two ends, so an unchecked range would look for a negative number of them
+		assertEquals("{\"error\": \"to should not be before from.\"}", body(r -> services.getTimecards(r,
+				CapturedResponse.UNCONDITIONAL, empId, DAY.plusDays(1).toString(), OTHER_DAY.toString(), null, null)));
+		call(r -> services.deleteTimecard(r, timecardId));
+		call(r -> services.deleteEmployee(r, empId));
+		call(r -> services.deleteDepartment(r, COMPANY, deptId));
+	}
+
+	@Test
+	public void badRequestKeepsItsSession() throws Exception{
+		long destroyed = poolStats().getLong("destroyed");
+		assertTrue(body(r -> services.insertDepartment(r, "not json")).contains("error"));
+		assertTrue(body(r -> services.insertEmployee(r, new JSONObject().put("emp_name", "No fields").toString())).contains("error"));
+		assertEquals(destroyed, poolStats().getLong("destroyed"));
+	}
+
+	// One round of every CRUD endpoint on records of this round only
+	private static void scenario(String tag, int thread) throws Exception{
+		JSONObject dept = call(r -> services.insertDepartment(r, new JSONObject().put("company", COMPANY)
+				.put("dept_name", "Dept " + tag).put("dept_no", "d-" + tag).put("location", "L " + tag).toString()));
+		int deptId = dept.getInt("dept_id");
+		expect(dept, "dept_no", "d-" + tag);
+		expect(call(r -> services.getDepartment(r, CapturedResponse.UNCONDITIONAL, COMPANY, deptId)), "dept_no", "d-" + tag);
+		expect(call(r -> services.updateDepartment(r, deptId, COMPANY, "Dept2 " + tag, "d2-" + tag, "L2 " + tag)),
+				"dept_no", "d2-" + tag);
+		expect(find(new JSONArray(departments()), "dept_id", deptId), "dept_no", "d2-" + tag);
+
+		JSONObject emp = call(r -> services.insertEmployee(r, new JSONObject().put("emp_name", "Emp " + tag)
+				.put("emp_no", "e-" + tag).put("hire_date", DAY.toString()).put("job", "Job " + tag)
+				.put("salary", 1000.0 + thread).put("dept_id", deptId).put("mng_id", 0).toString()));
+		int empId = emp.getInt("emp_id");
+		expect(emp, "emp_no", "e-" + tag);
+		expect(call(r -> services.getEmployee(r, CapturedResponse.UNCONDITIONAL, empId)), "emp_name", "Emp " + tag);
+		expect(call(r -> services.updateEmployee(r, empId, "Emp2 " + tag, "e2-" + tag, DAY.toString(), "Job2 " + tag,
+				2000.0 + thread, deptId, 0)), "emp_no", "e2-" + tag);
+		String employees = body(r -> services.getEmployees(r, CapturedResponse.UNCONDITIONAL, COMPANY, null, null));
+		expect(find(new JSONArray(employees), "emp_id", empId), "emp_name", "Emp2 " + tag);
+
+		JSONObject time = call(r -> services.insertTimecard(r, new JSONObject().put("emp_id", empId)
+				.put("start_time", DAY + " 09:00:00").put("end_time", DAY + " 17:00:00").toString()));
+		int timecardId = time.getInt("timecard_id");
+		expect(time, "emp_id", empId);
+		expect(call(r -> services.getTimecard(r, CapturedResponse.UNCONDITIONAL, timecardId)), "start_time", DAY + " 09:00:00");
+		expect(call(r -> services.updateTimecard(r, timecardId, empId, OTHER_DAY + " 08:00:00", OTHER_DAY + " 16:00:00")),
+				"start_time", OTHER_DAY + " 08:00:00");
+		JSONArray timecards = new JSONArray(body(r -> services.getTimecards(r, CapturedResponse.UNCONDITIONAL, empId,
+				null, null, null, null)));
+		assertEquals(tag + " timecards " + timecards, 1, timecards.length());
+		expect(timecards.getJSONObject(0), "timecard_id", timecardId);
+
+		// Another company's delete leaves this one's Department alone
+		call(r -> services.insertDepartment(r, new JSONObject().put("company", "side-" + tag)
+				.put("dept_name", "Side " + tag).put("dept_no", "d-" + tag).put("location", "L " + tag).toString()));
+		expect(call(r -> services.deleteCompany(r, "side-" + tag)), "success", "companyName's information deleted.");
+		expect(call(r -> services.getDepartment(r, CapturedResponse.UNCONDITIONAL, COMPANY, deptId)), "dept_no", "d2-" + tag);
+
+		expect(call(r -> services.deleteTimecard(r, timecardId)), "success", "Timecard " + timecardId + " deleted.");
+		expect(call(r -> services.deleteEmployee(r, empId)), "success", "Employee " + empId + " deleted.");
+		expect(call(r -> services.deleteDepartment(r, COMPANY, deptId)), "success", "Department " + deptId + " from " + COMPANY + " deleted.");
+	}
+
+	private interface Endpoint {
+		void call(CapturedResponse response) throws Exception;
+	}
+
+	private static String body(Endpoint endpoint) throws Exception{
+		CapturedResponse response = new CapturedResponse();
+		endpoint.call(response);
+		return response.body();
+	}
+
+	private static JSONObject call(Endpoint endpoint) throws Exception{
+		String body = body(endpoint);
+		JSONObject json = new JSONObject(body);
+		if(json.has("error")){
+			throw new AssertionError(body);
+		}
+		return json;
+	}
+
+	private static JSONObject poolStats(){
+		return new JSONObject(String.valueOf(services.getPoolStats().getEntity()));
+	}
+
+	private static String departments() throws Exception{
+		return body(r -> services.getDepartments(r, CapturedResponse.UNCONDITIONAL, COMPANY, null, null));
+	}
+
+	private static JSONObject find(JSONArray records, String key, int id){
+		for(int i = 0; i < records.length(); i++){
+			if(records.getJSONObject(i).getInt(key) == id){
+				return records.getJSONObject(i);
+			}
+		}
+		throw new AssertionError(key + " " + id + " missing from " + records);
+	}
+
+	private static void expect(JSONObject json, String key, Object value){
+		if(!String.valueOf(value).equals(String.valueOf(json.opt(key)))){
+			throw new AssertionError(key + " should be " + value + " in " + json);
+		}
+	}
+
+	private static LocalDate weekdayBefore(LocalDate day){
+		LocalDate before = day.minusDays(1);
+		while(before.getDayOfWeek() == DayOfWeek.SATURDAY || before.getDayOfWeek() == DayOfWeek.SUNDAY){
+			before = before.minusDays(1);
+		}
+		return before;
+	}
+}
@@ -0,0 +1,161 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * EmbeddedDatabaseTest checks the foreign keys of the companydata schema and what a restart loads from
+ * the snapshot and the log. The pom sets timecard.embedded.snapshotEvery to 50 records.
+ *
+ */
+
+public class EmbeddedDatabaseTest {
+
+	private static final int SNAPSHOT_EVERY = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void foreignKeysHold() throws Exception{
+		EmbeddedDatabase db = new EmbeddedDatabase(null);
+		assertNull(db.insertEmployee(employee(12345)));
+		int deptId = db.insertDepartment(department("d-1")).getId();
+		int empId = db.insertEmployee(employee(deptId)).getId();
+		assertNull(db.insertTimecard(timecard(empId + 1, 1)));
+		int timecardId = db.insertTimecard(timecard(empId, 1)).getId();
+
+		assertEquals(0, db.deleteDepartment("test", deptId));
+		assertEquals(0, db.deleteEmployee(empId));
+		assertEquals(1, db.deleteTimecard(timecardId));
+		assertEquals(1, db.deleteEmployee(empId));
+		assertEquals(1, db.deleteDepartment("test", deptId));
+	}
+
+	@Test
+	public void restartReplaysTheLogUpToATornTail() throws Exception{
+		Path dir = folder.getRoot().toPath();
+		// Left open, as a crash would leave it
+		EmbeddedDatabase crashed = new EmbeddedDatabase(dir);
+		int deptId = crashed.insertDepartment(department("d-1")).getId();
+		int empId = crashed.insertEmployee(employee(deptId)).getId();
+		Files.write(dir.resolve("wal.log"), new byte[]{0, 0, 0, 40, 9, 9}, StandardOpenOption.APPEND);
+
+		EmbeddedDatabase restarted = new EmbeddedDatabase(dir);
+		assertNotNull(restarted.getEmployee(empId));
+		int timecardId = restarted.insertTimecard(timecard(empId, 1)).getId();
+
+		EmbeddedDatabase again = new EmbeddedDatabase(dir);
+		assertEquals("d-1", again.getDepartment("test", deptId).getDeptNo());
+		assertEquals(empId, again.getTimecard(timecardId).getEmpId());
+		assertEquals(3L, again.stats().getLong("log_records"));
+	}
+
+	@Test
+	public void restartLoadsTheSnapshotTakenAtClose() throws Exception{
+		Path dir = folder.getRoot().toPath();
+		EmbeddedDatabase db = new EmbeddedDatabase(dir);
+		int deptId = db.insertDepartment(department("d-1")).getId();
+		int empId = db.insertEmployee(employee(deptId)).getId();
+		int kept = db.insertTimecard(timecard(empId, 1)).getId();
+		int deleted = db.insertTimecard(timecard(empId, 2)).getId();
+		db.deleteTimecard(deleted);
+		db.close();
+		assertEquals(1L, db.stats().getLong("snapshots"));
+		assertEquals(0L, Files.size(dir.resolve("wal.log")));
+
+		EmbeddedDatabase restarted = new EmbeddedDatabase(dir);
+		JSONObject stats = restarted.stats();
+		assertEquals(1, stats.getInt("departments"));
+		assertEquals(1, stats.getInt("employees"));
+		assertEquals(1, stats.getInt("timecards"));
+		assertEquals(0L, stats.getLong("log_records"));
+		assertEquals(timecard(empId, 1).getStartTime(), restarted.getTimecard(kept).getStartTime());
+		assertNull(restarted.getTimecard(deleted));
+		// Ids are not handed out twice, not even the deleted one
+		assertTrue(restarted.insertTimecard(timecard(empId, 3)).getId() > deleted);
+	}
+
+	@Test
+	public void failedSnapshotIsRetriedAfterAnotherBatchOfRecords() throws Exception{
+		Path dir = folder.getRoot().toPath();
+		// A non-empty directory where the snapshot is written makes every snapshot fail
+		Path blocker = Files.createDirectories(dir.resolve("snapshot.dat.tmp"));
+		Files.createFile(blocker.resolve("keep"));
+		EmbeddedDatabase db = new EmbeddedDatabase(dir);
+
+		insertDepartments(db, SNAPSHOT_EVERY);
+		assertEquals(1L, db.stats().getLong("snapshot_failures"));
+		insertDepartments(db, SNAPSHOT_EVERY - 1);
+		assertEquals(1L, db.stats().getLong("snapshot_failures"));
+		insertDepartments(db, 1);
+		assertEquals(2L, db.stats().getLong("snapshot_failures"));
+
+		Files.delete(blocker.resolve("keep"));
+		Files.delete(blocker);
+		insertDepartments(db, SNAPSHOT_EVERY);
+		JSONObject stats = db.stats();
+		assertEquals(1L, stats.getLong("snapshots"));
+		assertEquals(2L, stats.getLong("snapshot_failures"));
+		assertEquals(0L, stats.getLong("log_records"));
+		assertEquals(3 * SNAPSHOT_EVERY, new EmbeddedDatabase(dir).stats().getInt("departments"));
+	}
+
+	@Test
+	public void restartReplaysTheLogOfAFailedSnapshot() throws Exception{
+		Path dir = folder.getRoot().toPath();
+		Path blocker = Files.createDirectories(dir.resolve("snapshot.dat.tmp"));
+		Files.createFile(blocker.resolve("keep"));
+		// Left open after the snapshot failed, as a crash would leave it
+		EmbeddedDatabase crashed = new EmbeddedDatabase(dir);
+		insertDepartments(crashed, SNAPSHOT_EVERY + 10);
+		assertEquals(1L, crashed.stats().getLong("snapshot_failures"));
+		assertTrue(Files.exists(dir.resolve("wal.log.old")));
+
+		Files.delete(blocker.resolve("keep"));
+		Files.delete(blocker);
+		EmbeddedDatabase restarted = new EmbeddedDatabase(dir);
+		assertEquals(SNAPSHOT_EVERY + 10, restarted.stats().getInt("departments"));
+		assertEquals(10L, restarted.stats().getLong("log_records"));
+		restarted.close();
+		assertFalse(Files.exists(dir.resolve("wal.log.old")));
+		assertEquals(SNAPSHOT_EVERY + 10, new EmbeddedDatabase(dir).stats().getInt("departments"));
+	}
+
+	private static void insertDepartments(EmbeddedDatabase db, int count){
+		for(int i = 0; i < count; i++){
+			db.insertDepartment(department("d-" + i));
+		}
+	}
+
+	private static Department department(String deptNo){
+		return new Department(0, "test", "Dept " + deptNo, deptNo, "Here");
+	}
+
+	private static Employee employee(int deptId){
+		return new Employee(0, "Emp", "e-1", Date.valueOf("2020-01-06"), "Job", 1000.0, deptId, 0);
+	}
+
+	private static Timecard timecard(int empId, int day){
+		return new Timecard(0, Timestamp.valueOf("2020-01-0" + day + " 09:00:00"),
+				Timestamp.valueOf("2020-01-0" + day + " 17:00:00"), empId);
+	}
+}
@@ -0,0 +1,99 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import companydata.Department;
+import companydata.Employee;
+
+/**
+ * EmployeeBatchTest onboards a batch through a store whose insert stops part way, as the row-by-row
+ * DataLayer inserts do, and checks that the stored employees are reported and keep their emp_no.
+ *
+ */
+
+public class EmployeeBatchTest {
+
+	private static final String COMPANY = "employee-batch-test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void employeesStoredBeforeAFailingRowKeepTheirEmpNo() throws Exception{
+		CompanyStore store = new EmbeddedStore(EmbeddedDatabase.ENVIRONMENT + ":" + folder.newFolder("db"));
+		int deptId = store.insertDepartment(new Department(0, COMPANY, "Dept", "d-1", "Here")).getId();
+		LocalDate hired = LocalDate.now().minusDays(1);
+		while(hired.getDayOfWeek() == DayOfWeek.SATURDAY || hired.getDayOfWeek() == DayOfWeek.SUNDAY){
+			hired = hired.minusDays(1);
+		}
+		JSONArray body = new JSONArray();
+		for(String empNo: new String[]{"e-a", "e-b", "e-c"}){
+			body.put(new JSONObject().put("emp_name", "Emp " + empNo).put("emp_no", empNo).put("hire_date", hired.toString())
+					.put("job", "Job").put("salary", 1000.0).put("dept_id", deptId));
+		}
+
+		UniqueKeyIndex empNos = new UniqueKeyIndex((session, company) -> {
+			Map<String, Integer> keys = new HashMap<String, Integer>();
+			for(Employee e: session.getAllEmployee(company)){
+				keys.put(e.getEmpNo(), e.getId());
+			}
+			return keys;
+		});
+		EmployeeBatch batch = EmployeeBatch.read(new StringReader(body.toString()));
+		batch.insert(failingAfterFirstRow(store), COMPANY, empNos, new ReportingIndex(), TimecardRules.SERVER);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		batch.results().write(out);
+		JSONObject results = new JSONObject(out.toString("UTF-8"));
+		assertEquals(1, results.getInt("inserted"));
+		JSONArray rows = results.getJSONArray("results");
+		int stored = rows.getJSONObject(0).getInt("emp_id");
+		assertEquals("e-a", store.getEmployee(stored).getEmpNo());
+		assertTrue(rows.getJSONObject(1).getString("error").startsWith("Insert stopped at row 1 of 3"));
+		assertTrue(rows.getJSONObject(2).has("error"));
+
+		// A retry can not insert e-a again, while the failed emp_no are free
+		UniqueKeyIndex.Scope keys = empNos.scope(store, COMPANY);
+		assertEquals(stored, keys.idOf("e-a"));
+		assertFalse(keys.contains("e-b"));
+		assertFalse(keys.contains("e-c"));
+		assertEquals(1, store.getAllEmployee(COMPANY).size());
+	}
+
+	// Stores the first employee of a batch, then fails as a lost connection would
+	private static CompanyStore failingAfterFirstRow(CompanyStore store){
+		return (CompanyStore) Proxy.newProxyInstance(CompanyStore.class.getClassLoader(), new Class<?>[]{CompanyStore.class},
+				(proxy, method, args) -> {
+					if(method.getName().equals("insertEmployees")){
+						List<?> employees = (List<?>) args[0];
+						List<Employee> first = store.insertEmployees(Collections.singletonList((Employee) employees.get(0)));
+						throw new PartialInsertException("employee", first, employees.size(), new IllegalStateException("Connection lost"));
+					}
+					try{
+						return method.invoke(store, args);
+					}
+					catch(InvocationTargetException e){
+						throw e.getCause();
+					}
+				});
+	}
+}
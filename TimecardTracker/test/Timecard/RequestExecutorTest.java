@@ -0,0 +1,42 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+/**
+ * RequestExecutorTest checks what a client is told when its request times out while the body runs.
+ *
+ */
+
+public class RequestExecutorTest {
+
+	@Test
+	public void timeoutOfARunningBodySaysTheOutcomeIsUnknown() throws Exception{
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		CapturedResponse response = new CapturedResponse();
+		RequestExecutor.submit(response, () -> {
+			started.countDown();
+			release.await();
+			finished.countDown();
+			return Response.ok("{\"success\":\"late\"}").build();
+		});
+		assertTrue(started.await(1, TimeUnit.MINUTES));
+		response.timeOut();
+		assertEquals("{\"error\":\"Request timed out while running; it may still complete, check its outcome before retrying.\"}",
+				response.body());
+
+		// The body is not stopped part way; it finishes and its response is dropped
+		release.countDown();
+		assertTrue(finished.await(1, TimeUnit.MINUTES));
+		assertTrue(response.body().contains("timed out while running"));
+	}
+}
@@ -0,0 +1,220 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * TimecardArchiveTest seals the closed Timecards of an EmbeddedDatabase and checks what ArchivingStore
+ * reads back, across restarts of the archive and a sealing run cut short after publishing its segment.
+ *
+ */
+
+public class TimecardArchiveTest {
+
+	private static final String COMPANY = "archive-test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path dir;
+	private CompanyStore store;
+	private volatile boolean failDeletes;
+	private volatile Runnable beforeRecheck;
+	private final List<TimecardArchive> opened = new ArrayList<TimecardArchive>();
+
+	private int empId;
+	private int closed1;
+	private int closed2;
+	private int open;
+
+	@Before
+	public void timecards() throws Exception{
+		dir = folder.newFolder("archive").toPath();
+		store = new EmbeddedStore(EmbeddedDatabase.ENVIRONMENT + ":" + folder.newFolder("db"));
+		int deptId = store.insertDepartment(new Department(0, COMPANY, "Dept", "d-1", "Here")).getId();
+		empId = store.insertEmployee(new Employee(0, "Emp", "e-1", Date.valueOf("2020-01-06"), "Job", 1000.0, deptId, 0)).getId();
+		closed1 = store.insertTimecard(timecard(0, 30)).getId();
+		closed2 = store.insertTimecard(timecard(0, 20)).getId();
+		open = store.insertTimecard(timecard(0, 1)).getId();
+	}
+
+	@After
+	public void close(){
+		for(TimecardArchive archive: opened){
+			archive.close();
+		}
+	}
+
+	@Test
+	public void crashBetweenPublishAndDeleteIsNotSealedTwice() throws Exception{
+		TimecardArchive archive = archive();
+		failDeletes = true;
+		try{
+			archive.seal();
+			fail("seal should fail");
+		}
+		catch(IllegalStateException e){
+			// The segment is published; the deletes from the primary store never happened
+		}
+		assertEquals(1, segmentFiles());
+		assertEquals(3, store.getAllTimecard(empId).size());
+		// Both hold the closed Timecards now, and reads still see each once
+		assertEquals(sorted(closed1, closed2, open), ids(new ArchivingStore(primary(), archive).getAllTimecard(empId)));
+
+		failDeletes = false;
+		TimecardArchive restarted = archive();
+		assertEquals(2, restarted.seal());
+		assertEquals(1, segmentFiles());
+		assertEquals(2L, restarted.stats().getLong("timecards"));
+		assertEquals(sorted(open), ids(store.getAllTimecard(empId)));
+		assertEquals(sorted(closed1, closed2, open), ids(new ArchivingStore(primary(), restarted).getAllTimecard(empId)));
+	}
+
+	@Test
+	public void tombstonesAreReplayedAfterARestart() throws Exception{
+		TimecardArchive archive = archive();
+		assertEquals(2, archive.seal());
+		ArchivingStore view = new ArchivingStore(primary(), archive);
+		assertEquals(1, view.deleteTimecard(closed1));
+		assertEquals(0, view.deleteTimecard(closed1));
+		assertNull(view.getTimecard(closed1));
+		// A torn id at the end of the file, from a delete which was never acknowledged
+		Files.write(dir.resolve("tombstones.dat"), new byte[]{0, 0}, StandardOpenOption.APPEND);
+
+		TimecardArchive restarted = archive();
+		assertNull(restarted.get(closed1));
+		assertNotNull(restarted.get(closed2));
+		assertEquals(1L, restarted.stats().getLong("tombstones"));
+		assertEquals(1, new ArchivingStore(primary(), restarted).deleteTimecard(closed2));
+
+		TimecardArchive again = archive();
+		assertNull(again.get(closed1));
+		assertNull(again.get(closed2));
+		assertEquals(2L, again.stats().getLong("tombstones"));
+		assertEquals(sorted(open), ids(new ArchivingStore(primary(), again).getAllTimecard(empId)));
+	}
+
+	@Test
+	public void timecardsChangedDuringTheScanAreCheckedAgain() throws Exception{
+		TimecardArchive archive = archive();
+		// Moved into the open week after the scan found it closed
+		beforeRecheck = () -> store.updateTimecard(timecard(closed1, 1));
+		assertEquals(1, archive.seal());
+		assertNull(archive.get(closed1));
+		assertNotNull(archive.get(closed2));
+		assertEquals(sorted(closed1, open), ids(store.getAllTimecard(empId)));
+	}
+
+	@Test
+	public void archivedTimecardsCannotBeUpdated() throws Exception{
+		TimecardArchive archive = archive();
+		archive.seal();
+		ArchivingStore view = new ArchivingStore(primary(), archive);
+		assertNull(view.updateTimecard(timecard(closed1, 10)));
+		assertEquals(timecard(closed1, 30).getStartTime(), view.getTimecard(closed1).getStartTime());
+		assertNotNull(view.updateTimecard(timecard(open, 2)));
+		assertEquals(timecard(open, 2).getStartTime(), view.getTimecard(open).getStartTime());
+	}
+
+	@Test
+	public void readsMergeArchivedAndLiveTimecardsOnce() throws Exception{
+		TimecardArchive archive = archive();
+		archive.seal();
+		ArchivingStore view = new ArchivingStore(primary(), archive);
+
+		List<Timecard> all = view.getAllTimecard(empId);
+		assertEquals(sorted(closed1, closed2, open), ids(all));
+		for(Timecard time: all){
+			int days = time.getId() == closed1 ? 30 : time.getId() == closed2 ? 20 : 1;
+			assertEquals(timecard(time.getId(), days).getStartTime(), time.getStartTime());
+			assertEquals(empId, time.getEmpId());
+		}
+		List<Integer> visited = new ArrayList<Integer>();
+		view.forEachTimecard(empId, (id, startMillis, endMillis) -> visited.add(id));
+		Collections.sort(visited);
+		assertEquals(sorted(closed1, closed2, open), visited);
+		assertEquals(sorted(closed2, open), ids(view.getTimecards(new int[]{open, closed2, open + 1000})));
+	}
+
+	private TimecardArchive archive() throws Exception{
+		TimecardArchive archive = new TimecardArchive(dir, TimecardRules.SERVER, this::primary, Collections.singletonList(COMPANY));
+		opened.add(archive);
+		return archive;
+	}
+
+	// The primary store, whose deleteTimecard fails while failDeletes is set
+	private CompanyStore primary(){
+		return (CompanyStore) Proxy.newProxyInstance(CompanyStore.class.getClassLoader(), new Class<?>[]{CompanyStore.class},
+				(proxy, method, args) -> {
+					if(failDeletes && method.getName().equals("deleteTimecard")){
+						throw new IllegalStateException("Connection lost");
+					}
+					Runnable change = beforeRecheck;
+					if(change != null && method.getName().equals("getTimecards")){
+						beforeRecheck = null;
+						change.run();
+					}
+					try{
+						return method.invoke(store, args);
+					}
+					catch(InvocationTargetException e){
+						throw e.getCause();
+					}
+				});
+	}
+
+	private long segmentFiles() throws Exception{
+		try(Stream<Path> files = Files.list(dir)){
+			return files.filter(file -> file.getFileName().toString().endsWith(".tca")).count();
+		}
+	}
+
+	// A Timecard of the employee, from 9 to 5 some days ago
+	private Timecard timecard(int timecardId, int daysAgo){
+		LocalDate day = LocalDate.now().minusDays(daysAgo);
+		return new Timecard(timecardId, Timestamp.valueOf(day.atTime(9, 0)), Timestamp.valueOf(day.atTime(17, 0)), empId);
+	}
+
+	private static List<Integer> ids(List<Timecard> timecards){
+		List<Integer> ids = new ArrayList<Integer>();
+		for(Timecard time: timecards){
+			ids.add(time.getId());
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static List<Integer> sorted(int... ids){
+		List<Integer> list = new ArrayList<Integer>();
+		for(int id: ids){
+			list.add(id);
+		}
+		Collections.sort(list);
+		return list;
+	}
+}
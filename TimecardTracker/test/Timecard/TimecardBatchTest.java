@@ -0,0 +1,100 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import companydata.Department;
+import companydata.Employee;
+import companydata.Timecard;
+
+/**
+ * TimecardBatchTest imports a batch through a store whose insert stops part way, as the row-by-row
+ * DataLayer inserts do, and checks that the stored timecards are reported and keep their days.
+ *
+ */
+
+public class TimecardBatchTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void timecardsStoredBeforeAFailingRowAreBound() throws Exception{
+		CompanyStore store = new EmbeddedStore(EmbeddedDatabase.ENVIRONMENT + ":" + folder.newFolder("db"));
+		int deptId = store.insertDepartment(new Department(0, "batch-test", "Dept", "d-1", "Here")).getId();
+		int empId = store.insertEmployee(new Employee(0, "Emp", "e-1", Date.valueOf("2020-01-06"), "Job", 1000.0, deptId, 0)).getId();
+		LocalDate[] days = new LocalDate[3];
+		days[0] = weekdayBefore(LocalDate.now());
+		for(int i = 1; i < days.length; i++){
+			days[i] = weekdayBefore(days[i - 1]);
+		}
+		JSONArray body = new JSONArray();
+		for(LocalDate day: days){
+			body.put(new JSONObject().put("emp_id", empId).put("start_time", day + " 09:00:00").put("end_time", day + " 17:00:00"));
+		}
+
+		TimecardDayIndex index = new TimecardDayIndex();
+		TimecardBatch batch = TimecardBatch.read(new StringReader(body.toString()));
+		batch.insert(failingAfterFirstRow(store), index, new WeeklyHoursRollup(TimecardRules.SERVER), TimecardRules.SERVER);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		batch.results().write(out);
+		JSONObject results = new JSONObject(out.toString("UTF-8"));
+		assertEquals(1, results.getInt("inserted"));
+		JSONArray rows = results.getJSONArray("results");
+		int stored = rows.getJSONObject(0).getInt("timecard_id");
+		assertEquals(empId, store.getTimecard(stored).getEmpId());
+		assertTrue(rows.getJSONObject(1).getString("error").startsWith("Insert stopped at row 1 of 3"));
+		assertTrue(rows.getJSONObject(2).has("error"));
+
+		// The stored timecard keeps its day, so a retry of the whole batch only inserts the rest
+		TimecardDayIndex.Days empDays = index.days(store, empId);
+		assertTrue(empDays.owns(stored));
+		assertTrue(empDays.contains(TimecardRules.epochDay(TimestampParser.parseDateTime(days[0] + " 09:00:00"))));
+		assertFalse(empDays.contains(TimecardRules.epochDay(TimestampParser.parseDateTime(days[1] + " 09:00:00"))));
+		assertEquals(1, store.getAllTimecard(empId).size());
+	}
+
+	// Stores the first timecard of a batch, then fails as a lost connection would
+	private static CompanyStore failingAfterFirstRow(CompanyStore store){
+		return (CompanyStore) Proxy.newProxyInstance(CompanyStore.class.getClassLoader(), new Class<?>[]{CompanyStore.class},
+				(proxy, method, args) -> {
+					if(method.getName().equals("insertTimecards")){
+						List<?> timecards = (List<?>) args[0];
+						List<Timecard> first = store.insertTimecards(Collections.singletonList((Timecard) timecards.get(0)));
+						throw new PartialInsertException("timecard", first, timecards.size(), new IllegalStateException("Connection lost"));
+					}
+					try{
+						return method.invoke(store, args);
+					}
+					catch(InvocationTargetException e){
+						throw e.getCause();
+					}
+				});
+	}
+
+	private static LocalDate weekdayBefore(LocalDate day){
+		LocalDate before = day.minusDays(1);
+		while(before.getDayOfWeek() == DayOfWeek.SATURDAY || before.getDayOfWeek() == DayOfWeek.SUNDAY){
+			before = before.minusDays(1);
+		}
+		return before;
+	}
+}
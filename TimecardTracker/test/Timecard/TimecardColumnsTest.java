@@ -0,0 +1,196 @@
+package Timecard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * TimecardColumnsTest checks the encoded columns against a plain list of the same Timecards, across
+ * the blocks the sparse index splits them into.
+ *
+ */
+
+public class TimecardColumnsTest {
+
+	private static final long DAY = 86400L;
+
+	@Test
+	public void extremeValuesSurviveTheZigzagEncoding(){
+		long[][] entries = {
+				{Integer.MAX_VALUE, Long.MIN_VALUE / 4, Long.MIN_VALUE / 4 + 1},
+				{1, -DAY, -DAY + 60},
+				{7, 0L, Integer.MAX_VALUE},
+				{Integer.MAX_VALUE - 1, 0L, -3600L},
+				{2, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4 + 28800L}};
+		TimecardColumns columns = new TimecardColumns();
+		for(long[] entry: entries){
+			columns.append((int) entry[0], entry[1], entry[2]);
+		}
+		assertTrue(columns.isSorted());
+		assertEquals(toString(Arrays.asList(entries)), visited(columns));
+		for(long[] entry: entries){
+			List<long[]> found = new ArrayList<long[]>();
+			assertTrue(columns.find((int) entry[0], (id, start, end) -> found.add(new long[]{id, start, end})));
+			assertArrayEquals(entry, found.get(0));
+		}
+	}
+
+	@Test
+	public void removeRewritesOnlyItsBlockAndLaterAppendsFollowOn(){
+		TimecardColumns columns = new TimecardColumns();
+		List<long[]> expected = new ArrayList<long[]>();
+		for(int id = 1; id <= 3 * TimecardColumns.BLOCK; id++){
+			append(columns, expected, id, id * DAY, id * DAY + 28800L);
+		}
+		// First, middle and last of a block, the very last entry, and a whole block
+		int[] removed = {1, 30, TimecardColumns.BLOCK, 3 * TimecardColumns.BLOCK};
+		for(int id: removed){
+			assertTrue(columns.remove(id));
+			expected.removeIf(entry -> entry[0] == id);
+		}
+		for(int id = TimecardColumns.BLOCK + 1; id <= 2 * TimecardColumns.BLOCK; id++){
+			assertTrue(columns.remove(id));
+		}
+		expected.removeIf(entry -> entry[0] > TimecardColumns.BLOCK && entry[0] <= 2 * TimecardColumns.BLOCK);
+		assertFalse(columns.remove(30));
+		assertFalse(columns.remove(10000));
+
+		append(columns, expected, 10000, 10000 * DAY, 10000 * DAY + 60L);
+		assertTrue(columns.isSorted());
+		check(columns, expected);
+
+		for(long[] entry: new ArrayList<long[]>(expected)){
+			assertTrue(columns.remove((int) entry[0]));
+		}
+		assertTrue(columns.isEmpty());
+		assertEquals(0, columns.bytes());
+		expected.clear();
+		append(columns, expected, 5, DAY, 2 * DAY);
+		check(columns, expected);
+	}
+
+	@Test
+	public void sortRestoresStartOrderAfterOutOfOrderAppends(){
+		TimecardColumns columns = new TimecardColumns();
+		List<long[]> expected = new ArrayList<long[]>();
+		Random random = new Random(42);
+		for(int id = 1; id <= 500; id++){
+			long start = random.nextInt(200) * DAY + random.nextInt(3) * 3600L;
+			append(columns, expected, id, start, start + random.nextInt(36000));
+		}
+		assertFalse(columns.isSorted());
+		columns.sort();
+		assertTrue(columns.isSorted());
+		expected.sort(Comparator.<long[]>comparingLong(entry -> entry[1]).thenComparingLong(entry -> entry[0]));
+		check(columns, expected);
+	}
+
+	@Test
+	public void betweenFindsEveryStartInRangeOfUnsortedColumns(){
+		TimecardColumns columns = new TimecardColumns();
+		List<long[]> expected = new ArrayList<long[]>();
+		for(int id = 1; id <= 300; id++){
+			// Descending starts, so each block's first start is its latest
+			long start = (1000 - id) * DAY;
+			append(columns, expected, id, start, start + 3600L);
+		}
+		assertFalse(columns.isSorted());
+		List<long[]> inRange = new ArrayList<long[]>();
+		columns.between(800 * DAY, 900 * DAY, (id, start, end) -> inRange.add(new long[]{id, start, end}));
+		assertEquals(101, inRange.size());
+		for(long[] entry: inRange){
+			assertTrue(entry[1] >= 800 * DAY && entry[1] <= 900 * DAY);
+		}
+	}
+
+	@Test
+	public void randomAppendsRemovesAndSortsMatchAPlainList(){
+		TimecardColumns columns = new TimecardColumns();
+		List<long[]> expected = new ArrayList<long[]>();
+		Random random = new Random(7);
+		int nextId = 1;
+		for(int round = 0; round < 5000; round++){
+			int action = random.nextInt(10);
+			if(action < 6 || expected.isEmpty()){
+				long start = random.nextInt(3650) * DAY + random.nextInt(86400);
+				append(columns, expected, nextId++, start, start + random.nextInt(50000));
+			}else if(action < 9){
+				long[] entry = expected.remove(random.nextInt(expected.size()));
+				assertTrue(columns.remove((int) entry[0]));
+			}else{
+				columns.sort();
+				expected.sort(Comparator.<long[]>comparingLong(entry -> entry[1]).thenComparingLong(entry -> entry[0]));
+				check(columns, expected);
+			}
+		}
+		columns.sort();
+		expected.sort(Comparator.<long[]>comparingLong(entry -> entry[1]).thenComparingLong(entry -> entry[0]));
+		check(columns, expected);
+	}
+
+	private static void append(TimecardColumns columns, List<long[]> expected, int id, long start, long end){
+		columns.append(id, start, end);
+		expected.add(new long[]{id, start, end});
+	}
+
+	// Every way of reading the columns gives the expected entries; they must be sorted
+	private static void check(TimecardColumns columns, List<long[]> expected){
+		assertEquals(expected.size(), columns.size());
+		assertEquals(toString(expected), visited(columns));
+		int[] ids = new int[expected.size()];
+		for(int i = 0; i < ids.length; i++){
+			ids[i] = (int) expected.get(i)[0];
+		}
+		assertArrayEquals(ids, columns.ids());
+
+		long from = expected.isEmpty() ? 0L : expected.get(expected.size() / 3)[1];
+		long to = expected.isEmpty() ? 0L : expected.get(2 * expected.size() / 3)[1];
+		List<long[]> inRange = new ArrayList<long[]>();
+		for(long[] entry: expected){
+			if(entry[1] >= from && entry[1] <= to){
+				inRange.add(entry);
+			}
+		}
+		List<long[]> between = new ArrayList<long[]>();
+		columns.between(from, to, (id, start, end) -> between.add(new long[]{id, start, end}));
+		assertEquals(toString(inRange), toString(between));
+
+		// Every third id, and one which is not there
+		List<long[]> wanted = new ArrayList<long[]>();
+		for(int i = 0; i < expected.size(); i += 3){
+			wanted.add(expected.get(i));
+		}
+		int[] wantedIds = new int[wanted.size() + 1];
+		for(int i = 0; i < wanted.size(); i++){
+			wantedIds[i] = (int) wanted.get(i)[0];
+		}
+		wantedIds[wanted.size()] = Integer.MAX_VALUE;
+		Arrays.sort(wantedIds);
+		List<long[]> found = new ArrayList<long[]>();
+		columns.find(wantedIds, (id, start, end) -> found.add(new long[]{id, start, end}));
+		assertEquals(toString(wanted), toString(found));
+	}
+
+	private static List<String> visited(TimecardColumns columns){
+		List<long[]> entries = new ArrayList<long[]>();
+		columns.forEach((id, start, end) -> entries.add(new long[]{id, start, end}));
+		return toString(entries);
+	}
+
+	private static List<String> toString(List<long[]> entries){
+		List<String> strings = new ArrayList<String>(entries.size());
+		for(long[] entry: entries){
+			strings.add(Arrays.toString(entry));
+		}
+		return strings;
+	}
+}
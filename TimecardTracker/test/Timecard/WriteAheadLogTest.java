@@ -0,0 +1,231 @@
+package Timecard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * WriteAheadLogTest checks what a restart finds in the log after a crash tore its last commit, and
+ * after a commit failed part way through its write.
+ *
+ */
+
+public class WriteAheadLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayDropsATornTail() throws Exception{
+		Path file = folder.getRoot().toPath().resolve("wal.log");
+		try(WriteAheadLog log = new WriteAheadLog(file, false, record -> fail("empty log replayed"))){
+			for(int value = 1; value <= 3; value++){
+				log.record().writeInt(value);
+				log.commit();
+			}
+		}
+		long complete = Files.size(file);
+		// A header promising more bytes than the crash left behind
+		Files.write(file, new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+		List<Integer> replayed = new ArrayList<Integer>();
+		try(WriteAheadLog log = new WriteAheadLog(file, false, record -> replayed.add(record.readInt()))){
+			assertEquals(Arrays.asList(1, 2, 3), replayed);
+			assertEquals(3, log.records());
+			assertEquals(complete, Files.size(file));
+			log.record().writeInt(4);
+			log.commit();
+		}
+		assertEquals(Arrays.asList(1, 2, 3, 4), replay(file));
+	}
+
+	@Test
+	public void replayStopsAtACorruptRecord() throws Exception{
+		Path file = folder.getRoot().toPath().resolve("wal.log");
+		try(WriteAheadLog log = new WriteAheadLog(file, false, record -> {})){
+			log.record().writeInt(1);
+			log.commit();
+			log.record().writeInt(2);
+			log.commit();
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(file, bytes);
+
+		assertEquals(Arrays.asList(1), replay(file));
+	}
+
+	@Test
+	public void failedCommitIsCutOffAndNotCounted() throws Exception{
+		Path file = folder.getRoot().toPath().resolve("wal.log");
+		FailingChannel channel = new FailingChannel(FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE));
+		try(WriteAheadLog log = new WriteAheadLog(channel, true, record -> {})){
+			log.record().writeInt(1);
+			log.commit();
+			long committed = channel.size();
+
+			channel.failNextWrite = true;
+			log.record().writeInt(2);
+			log.record().writeInt(3);
+			try{
+				log.commit();
+				fail("commit should fail");
+			}
+			catch(IOException e){
+				// Expected
+			}
+			assertEquals(1, log.records());
+			assertEquals(committed, channel.size());
+
+			// The dropped records do not go out with the next commit
+			log.record().writeInt(4);
+			log.commit();
+			assertEquals(2, log.records());
+		}
+		assertEquals(Arrays.asList(1, 4), replay(file));
+	}
+
+	@Test
+	public void rolledBackRecordsAreNotCounted() throws Exception{
+		Path file = folder.getRoot().toPath().resolve("wal.log");
+		try(WriteAheadLog log = new WriteAheadLog(file, false, record -> {})){
+			log.record().writeInt(1);
+			log.record().writeInt(2);
+			assertEquals(0, log.records());
+			log.rollback();
+			log.commit();
+			assertEquals(0, log.records());
+			assertTrue(replay(file).isEmpty());
+		}
+	}
+
+	private static List<Integer> replay(Path file) throws IOException{
+		List<Integer> replayed = new ArrayList<Integer>();
+		WriteAheadLog.replay(file, record -> replayed.add(record.readInt()));
+		return replayed;
+	}
+
+	// A file channel whose next write, once armed, writes half its bytes and fails as a full disk would
+	private static final class FailingChannel extends FileChannel {
+
+		private final FileChannel file;
+		volatile boolean failNextWrite;
+
+		FailingChannel(FileChannel file){
+			this.file = file;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException{
+			if(failNextWrite){
+				failNextWrite = false;
+				ByteBuffer half = src.duplicate();
+				half.limit(half.position() + half.remaining() / 2);
+				file.write(half);
+				throw new IOException("No space left on device");
+			}
+			return file.write(src);
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException{
+			return file.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException{
+			return file.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException{
+			return file.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException{
+			return file.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException{
+			file.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException{
+			return file.size();
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException{
+			file.truncate(size);
+			return this;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException{
+			file.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException{
+			return file.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException{
+			return file.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException{
+			return file.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException{
+			return file.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException{
+			return file.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException{
+			return file.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException{
+			return file.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException{
+			file.close();
+		}
+	}
+}